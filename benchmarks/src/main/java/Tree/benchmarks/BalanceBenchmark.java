@@ -0,0 +1,100 @@
+package Tree.benchmarks;
+
+import Tree.AvlMetrics;
+import Tree.AvlNode;
+import Tree.AvlTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BalanceBenchmark {
+
+    /***********************************************************************************************************
+     Update throughput and lookup cost of each AvlTree.BalancePolicy, on the same trees as OperationsBenchmark.
+     removeAdd removes a key of the tree then puts it back, the mix where STRICT rotates the most.
+     The measured variants run the same updates with AvlMetrics on, and print the rotations and rebuilt nodes
+     per update at the end of each trial. Metrics time every operation, so only compare their timings together.
+     ***********************************************************************************************************/
+
+    @State(Scope.Thread)
+    public static class PolicyState extends KeyedState {
+
+        @Param({"STRICT", "WEAK", "RELAXED"})
+        public AvlTree.BalancePolicy policy;
+
+        AvlTree<Integer> tree;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new AvlTree<>(false);
+            tree.balancePolicy(policy);
+            for(int key : keys){
+                tree.add(key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MeasuredState extends PolicyState {
+
+        AvlMetrics metrics;
+
+        @Override
+        protected void fill(int[] keys){
+            //Building the tree isn't counted, only the measured updates
+            super.fill(keys);
+            metrics = new AvlMetrics(Long.MAX_VALUE);
+            tree.metrics(metrics);
+        }
+
+        @TearDown(Level.Trial)
+        public void report(){
+            long updates = metrics.getAdds() + metrics.getRemoves();
+            long rotations = 0;
+            for(AvlMetrics.Rotation rotation : AvlMetrics.Rotation.values()){
+                rotations += metrics.insertRotations(rotation) + metrics.deleteRotations(rotation);
+            }
+            System.out.printf("%n%s : %.4f rotations and %.2f rebuilt nodes per update, height %d%n", policy,
+                    (double) rotations / updates, (double) metrics.getRebuiltNodes() / updates, tree.height());
+        }
+    }
+
+    @Benchmark
+    public void removeAdd(PolicyState state){
+        int key = state.nextKey();
+        state.tree.remove(key);
+        state.tree.add(key);
+    }
+
+    @Benchmark
+    public void addRemove(PolicyState state){
+        int key = state.nextAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+    }
+
+    @Benchmark
+    public AvlNode<Integer> get(PolicyState state){
+        //Pays for the longer paths of WEAK and RELAXED trees
+        return state.tree.get(state.nextKey());
+    }
+
+    @Benchmark
+    public void measuredRemoveAdd(MeasuredState state){
+        int key = state.nextKey();
+        state.tree.remove(key);
+        state.tree.add(key);
+    }
+
+    @Benchmark
+    public void measuredAddRemove(MeasuredState state){
+        int key = state.nextAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+    }
+}
@@ -0,0 +1,86 @@
+package Tree.benchmarks;
+
+import Tree.AvlTree;
+import Tree.IntAvlTree;
+import Tree.KeyedAvlTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BuildBenchmark {
+
+    /***********************************************************************************************************
+     Time to fill a structure from scratch with size keys, one by one or in bulk, next to TreeMap.
+     ZIPFIAN is left out : it only changes lookups, and would build the same tree as RANDOM.
+     ***********************************************************************************************************/
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    public KeyDistribution distribution;
+
+    private int[] keys;
+
+    private List<Integer> boxedKeys;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        keys = distribution.insertionOrder(size, 42);
+        boxedKeys = new ArrayList<>(size);
+        for(int key : keys){
+            boxedKeys.add(key);
+        }
+    }
+
+    @Benchmark
+    public AvlTree<Integer> avlAdd(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(Integer key : boxedKeys){
+            tree.add(key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public AvlTree<Integer> avlBulkLoad(){
+        return AvlTree.bulkLoad(boxedKeys, false);
+    }
+
+    @Benchmark
+    public IntAvlTree intAvlAdd(){
+        IntAvlTree tree = new IntAvlTree(size);
+        for(int key : keys){
+            tree.add(key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public KeyedAvlTree<Long, Integer> keyedLongAdd(){
+        //64-bit keys compared with equals, versus the int hashcode IDs of avlAdd
+        KeyedAvlTree<Long, Integer> tree = KeyedAvlTree.longKeyed(key -> (long) key);
+        for(Integer key : boxedKeys){
+            tree.add(key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public TreeMap<Integer, Integer> treeMapPut(){
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        for(Integer key : boxedKeys){
+            map.put(key, key);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,328 @@
+package Tree.benchmarks;
+
+import Tree.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FeaturesBenchmark {
+
+    /***********************************************************************************************************
+     Order statistics, snapshots, diff, split/join & set operations, cursors, parallel scans, the primitive IntAvlTree,
+     keyed trees, the concurrent wrapper and the sharded tree.
+     Compare parallel scans with -t 1 and different -jvmArgs -Djava.util.concurrent.ForkJoinPool.common.parallelism=N.
+     Run concurrentMix with -t 1, 4, 16, 64 : all threads share one ConcurrentAvlTree, and each one does writePercent
+     writes (an add and a remove of an absent key) for every 100 operations, the rest being lookups.
+     Run shardedAddRemove with -t 1, 2, 4... up to the core count : all threads write to the same ShardedAvlTree,
+     shards=1 behaves like one ConcurrentAvlTree while more shards let the writers run in parallel.
+     ***********************************************************************************************************/
+
+    @State(Scope.Thread)
+    public static class DiffState extends KeyedState {
+
+        AvlTree<Integer> tree;
+
+        AvlTree<Integer> snapshot;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new AvlTree<>(false);
+            for(int key : keys){
+                tree.add(key);
+            }
+            //Two trees sharing every node but one path
+            snapshot = tree.snapshot();
+            tree.add(nextAbsentKey());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class IntState extends KeyedState {
+
+        IntAvlTree tree;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new IntAvlTree(keys.length);
+            for(int key : keys){
+                tree.add(key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KeyedTreeState extends KeyedState {
+
+        KeyedAvlTree<Long, Long> tree;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = KeyedAvlTree.longKeyed(Long::longValue);
+            for(int key : keys){
+                tree.add((long) key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SetState extends KeyedState {
+
+        AvlTree<Integer> tree;
+
+        AvlTree<Integer> other;
+        //One node for every 10 of tree : half of them on tree IDs, half on absent odd IDs
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new AvlTree<>(false);
+            other = new AvlTree<>(false);
+            for(int i = 0; i < keys.length; i++){
+                tree.add(keys[i]);
+                if(i % 10 == 0){
+                    other.add(keys[i] + (i % 20 == 0 ? 0 : 1));
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CursorState extends KeyedState {
+
+        AvlTree<Integer> tree;
+
+        AvlCursor<Integer> cursor;
+
+        int key = 0;
+        //Walks every key in ascending order, wrapping around at the end
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new AvlTree<>(false);
+            for(int key : keys){
+                tree.add(key);
+            }
+            cursor = tree.cursor();
+        }
+
+        int nextSequentialKey(){
+            key = key + 2 < 2 * size ? key + 2 : 0;
+            return key;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ConcurrentState extends KeyedState {
+
+        @Param({"5", "50"})
+        public int writePercent;
+
+        ConcurrentAvlTree<Integer> tree;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new ConcurrentAvlTree<>(false);
+            for(int key : keys){
+                tree.add(key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadCursor {
+
+        int next = ThreadLocalRandom.current().nextInt(1 << 16);
+        //Position of this thread in the shared lookup stream, so threads never touch the same counter
+
+        int operation = 0;
+        //Counts operations up to 100, to spread the writes evenly
+    }
+
+    @State(Scope.Benchmark)
+    public static class ShardedState extends KeyedState {
+
+        @Param({"1", "8", "32"})
+        public int shards;
+
+        ShardedAvlTree<Integer> tree;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new ShardedAvlTree<>(shards, false);
+            for(int key : keys){
+                tree.add(key);
+            }
+        }
+
+        int randomAbsentKey(){
+            //Shared by every thread, so keys come from a thread-local generator rather than the lookup stream
+            return 2 * ThreadLocalRandom.current().nextInt(size) + 1;
+        }
+    }
+
+    /***************************
+     Order statistics
+     ***************************/
+
+    @Benchmark
+    public int rank(OperationsBenchmark.AvlState state){
+        return state.tree.rank(state.nextKey());
+    }
+
+    @Benchmark
+    public AvlNode<Integer> select(OperationsBenchmark.AvlState state){
+        return state.tree.select(state.nextKey() / 2);
+    }
+
+    @Benchmark
+    public int countBetween(OperationsBenchmark.AvlState state){
+        int key = state.nextKey();
+        return state.tree.countBetween(key, key + 2000);
+    }
+
+    /***************************
+     Snapshots & diff
+     ***************************/
+
+    @Benchmark
+    public AvlTree<Integer> snapshotAddRemove(OperationsBenchmark.AvlState state){
+        //Worst case for path copying : a new snapshot before every write
+        AvlTree<Integer> snapshot = state.tree.snapshot();
+        int key = state.nextAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+        return snapshot;
+    }
+
+    @Benchmark
+    public List<AvlNode<Integer>> diffOneChange(DiffState state){
+        return state.tree.diff(state.snapshot);
+    }
+
+    /***************************
+     Split, join & set operations
+     ***************************/
+
+    @Benchmark
+    public AvlTree<Integer> splitJoin(OperationsBenchmark.AvlState state){
+        AvlTree<Integer> higher = state.tree.split(state.nextKey());
+        AvlTree<Integer> joined = AvlTree.join(state.tree, higher);
+        state.tree = joined;
+        return higher;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AvlTree<Integer> union(SetState state){
+        return state.tree.union(state.other);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AvlTree<Integer> unionByAdd(SetState state){
+        //What union() replaces : one contains() and add() per node, into a copy sharing the nodes of tree
+        AvlTree<Integer> result = state.tree.union(new AvlTree<>());
+        for(AvlNode<Integer> node : state.other){
+            if(!result.contains(node)){
+                result.add(node.data());
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AvlTree<Integer> difference(SetState state){
+        return state.tree.difference(state.other);
+    }
+
+    /***************************
+     Cursor
+     ***************************/
+
+    @Benchmark
+    public AvlNode<Integer> sequentialGet(CursorState state){
+        return state.tree.get(state.nextSequentialKey());
+    }
+
+    @Benchmark
+    public AvlNode<Integer> sequentialCursorSeek(CursorState state){
+        //Same keys as sequentialGet, found from the previous position instead of the root
+        state.cursor.seek(state.nextSequentialKey());
+        return state.cursor.node();
+    }
+
+    @Benchmark
+    public AvlNode<Integer> cursorNext(CursorState state){
+        return state.cursor.next();
+    }
+
+    /***************************
+     Parallel scans
+     ***************************/
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long streamSum(OperationsBenchmark.AvlState state){
+        return state.tree.stream().mapToLong(AvlNode::id).sum();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long parallelStreamSum(OperationsBenchmark.AvlState state){
+        return state.tree.parallelStream().mapToLong(AvlNode::id).sum();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Long parallelReduceSum(OperationsBenchmark.AvlState state){
+        //Boxes one Long per node, like the equivalent Stream.reduce()
+        return state.tree.reduce(0L, (sum, node) -> sum + node.id(), Long::sum);
+    }
+
+    /***************************
+     Other trees
+     ***************************/
+
+    @Benchmark
+    public boolean intAvlContains(IntState state){
+        return state.tree.contains(state.nextKey());
+    }
+
+    @Benchmark
+    public boolean intAvlAddRemove(IntState state){
+        int key = state.nextAbsentKey();
+        state.tree.add(key);
+        return state.tree.remove(key);
+    }
+
+    @Benchmark
+    public Long keyedGet(KeyedTreeState state){
+        return state.tree.get((long) state.nextKey());
+    }
+
+    @Benchmark
+    public AvlNode<Integer> concurrentMix(ConcurrentState state, ThreadCursor cursor){
+        int key = state.key(cursor.next++);
+        cursor.operation = cursor.operation == 99 ? 0 : cursor.operation + 1;
+        if(cursor.operation < state.writePercent){
+            state.tree.add(key + 1);
+            state.tree.remove(key + 1);
+            return null;
+        }
+        return state.tree.get(key);
+    }
+
+    @Benchmark
+    public void shardedAddRemove(ShardedState state){
+        int key = state.randomAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+    }
+}
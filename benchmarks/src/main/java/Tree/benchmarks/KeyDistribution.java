@@ -0,0 +1,95 @@
+package Tree.benchmarks;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+public enum KeyDistribution {
+
+    /***********************************************************************************************************
+     Key streams used by the benchmarks. Trees are always filled with the keys 0 .. size-1,
+     the distribution decides the insertion order and which keys the lookups hit :
+       - SEQUENTIAL : ascending keys, the worst case for rotations and the best one for caches.
+       - RANDOM : uniform keys, inserted in a shuffled order.
+       - ZIPFIAN : skewed lookups (theta 0.99, like YCSB) where a few hot keys take most hits.
+         Hot keys are scrambled over the key range so they don't all sit in the same subtree.
+     ***********************************************************************************************************/
+
+    SEQUENTIAL,
+    RANDOM,
+    ZIPFIAN;
+
+    private static final double THETA = 0.99;
+
+    public int[] insertionOrder(int size, long seed){
+        //Every key of 0 .. size-1 exactly once
+        int[] keys = new int[size];
+        for(int i = 0; i < size; i++){
+            keys[i] = i;
+        }
+        if(this != SEQUENTIAL){
+            Random rand = new Random(seed);
+            for(int i = size - 1; i > 0; i--){
+                int j = rand.nextInt(i + 1);
+                int temp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = temp;
+            }
+        }
+        return keys;
+    }
+
+    public int[] lookups(int size, int count, long seed){
+        //count keys of 0 .. size-1 drawn from this distribution
+        int[] keys = new int[count];
+        SplittableRandom rand = new SplittableRandom(seed);
+        switch(this){
+            case SEQUENTIAL:
+                for(int i = 0; i < count; i++){
+                    keys[i] = i % size;
+                }
+                break;
+            case RANDOM:
+                for(int i = 0; i < count; i++){
+                    keys[i] = rand.nextInt(size);
+                }
+                break;
+            case ZIPFIAN:
+                double zetan = zeta(size);
+                double zeta2 = zeta(2);
+                double alpha = 1 / (1 - THETA);
+                double eta = (1 - Math.pow(2.0 / size, 1 - THETA)) / (1 - zeta2 / zetan);
+                for(int i = 0; i < count; i++){
+                    double u = rand.nextDouble();
+                    double uz = u * zetan;
+                    long rank;
+                    if(uz < 1){
+                        rank = 0;
+                    }else if(uz < 1 + Math.pow(0.5, THETA)){
+                        rank = 1;
+                    }else{
+                        rank = (long) (size * Math.pow(eta * u - eta + 1, alpha));
+                    }
+                    keys[i] = scramble(Math.min(rank, size - 1), size);
+                }
+                break;
+        }
+        return keys;
+    }
+
+    private static double zeta(long n){
+        double sum = 0;
+        for(long i = 1; i <= n; i++){
+            sum += 1 / Math.pow(i, THETA);
+        }
+        return sum;
+    }
+
+    private static int scramble(long rank, int size){
+        //SplitMix64 finalizer, so that popular ranks land anywhere in the key range
+        long z = rank + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z = z ^ (z >>> 31);
+        return (int) Math.floorMod(z, (long) size);
+    }
+}
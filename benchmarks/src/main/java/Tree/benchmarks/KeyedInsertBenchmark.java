@@ -0,0 +1,96 @@
+package Tree.benchmarks;
+
+import Tree.AvlTree;
+import Tree.KeyedAvlTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms32g", "-Xmx32g", "-XX:+AlwaysPreTouch"})
+public class KeyedInsertBenchmark {
+
+    /***********************************************************************************************************
+     Insert latency of random 64-bit keys (database IDs) in trees of up to 10^8 entries :
+     AvlTree<Long> with its int hashcode IDs next to KeyedAvlTree.longKeyed(), which compares the full long.
+     Each operation adds an absent key then removes it, so the tree keeps its size. SampleTime reports the
+     percentiles, the p99 and above show the GC and cache misses that the average hides.
+     The 10^8 trees need about 9 GB (AvlTree) and 8 GB (KeyedAvlTree) of heap, hence the 32 GB fork.
+     With int IDs, about size^2 / 2^33 keys collide at fill time (over a million at 10^8) and are dropped,
+     since duplicates are disallowed : the keyed tree has none.
+     ***********************************************************************************************************/
+
+    private static final int ABSENT = 1 << 16;
+
+    @State(Scope.Thread)
+    public abstract static class LongKeys {
+
+        @Param({"1000000", "10000000", "100000000"})
+        public int size;
+
+        private Long[] absent;
+        //Boxed ahead of time, so that the measure only counts the tree itself
+
+        private int next = 0;
+
+        @Setup(Level.Trial)
+        public void setUp(){
+            SplittableRandom random = new SplittableRandom(42);
+            for(int i = 0; i < size; i++){
+                fill(random.nextLong());
+            }
+            //Another seed : a clash with the 10^8 keys of the tree is a 1 in 10^11 event
+            SplittableRandom other = new SplittableRandom(43);
+            absent = new Long[ABSENT];
+            for(int i = 0; i < ABSENT; i++){
+                absent[i] = other.nextLong();
+            }
+        }
+
+        protected abstract void fill(long key);
+
+        Long nextAbsentKey(){
+            Long key = absent[next];
+            next = (next + 1) & (ABSENT - 1);
+            return key;
+        }
+    }
+
+    public static class IntIdState extends LongKeys {
+
+        AvlTree<Long> tree = new AvlTree<>(false);
+
+        @Override
+        protected void fill(long key){
+            tree.add(key);
+        }
+    }
+
+    public static class KeyedTreeState extends LongKeys {
+
+        KeyedAvlTree<Long, Long> tree = KeyedAvlTree.longKeyed(Long::longValue);
+
+        @Override
+        protected void fill(long key){
+            tree.add(key);
+        }
+    }
+
+    @Benchmark
+    public void intIdAddRemove(IntIdState state){
+        Long key = state.nextAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+    }
+
+    @Benchmark
+    public Long keyedAddRemove(KeyedTreeState state){
+        Long key = state.nextAbsentKey();
+        state.tree.add(key);
+        return state.tree.remove(key);
+    }
+}
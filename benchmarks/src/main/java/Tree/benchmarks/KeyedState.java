@@ -0,0 +1,54 @@
+package Tree.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+public abstract class KeyedState {
+
+    /***********************************************************************************************************
+     Parameters shared by the benchmark states : tree size and key distribution.
+     Subclasses build their structure in fill(). Trees hold the even keys 0, 2 .. 2*(size-1), so that odd keys
+     are absent but still spread among them. Lookups cycle through a precomputed stream of keys
+     so that generating keys is never part of the measure.
+     ***********************************************************************************************************/
+
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private int[] lookups;
+
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        lookups = distribution.lookups(size, LOOKUPS, 42);
+        int[] keys = distribution.insertionOrder(size, 42);
+        for(int i = 0; i < size; i++){
+            keys[i] *= 2;
+        }
+        fill(keys);
+    }
+
+    protected abstract void fill(int[] keys) throws Exception;
+
+    public int nextKey(){
+        //Next key of the lookup stream, always in the tree
+        int key = key(next);
+        next = (next + 1) & (LOOKUPS - 1);
+        return key;
+    }
+
+    public int key(int index){
+        //Key at any position of the lookup stream, for states shared by threads that each keep their own position
+        return lookups[index & (LOOKUPS - 1)] * 2;
+    }
+
+    public int nextAbsentKey(){
+        //Key that is never in the tree, right next to one that is
+        return nextKey() + 1;
+    }
+}
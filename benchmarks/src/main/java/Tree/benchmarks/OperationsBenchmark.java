@@ -0,0 +1,245 @@
+package Tree.benchmarks;
+
+import Tree.AvlNode;
+import Tree.AvlTree;
+import Tree.FrozenAvlTree;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OperationsBenchmark {
+
+    /***********************************************************************************************************
+     Everyday operations of AvlTree, each one next to the same operation on java.util.TreeMap as a baseline.
+     Run with -prof gc to get the allocation rate of each operation.
+     addRemove adds an absent key then removes it, so the tree keeps its size during the whole measure.
+     avlAddRemoveRecycled does the same with node recycling on (AvlTree.recycleNodes()), compare their allocation rates.
+     avlRemoveAddLazy runs avlRemoveAdd with lazy deletes on (AvlTree.lazyDeletes()), compactions included.
+     Full walks (iterate, toArrayList, hashCode) are reported per walk, not per node.
+     Lookups also run on the frozen, array-based copy of the same tree (AvlTree.freeze()).
+     ***********************************************************************************************************/
+
+    @State(Scope.Thread)
+    public static class AvlState extends KeyedState {
+
+        AvlTree<Integer> tree;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new AvlTree<>(false);
+            for(int key : keys){
+                tree.add(key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RecyclingState extends KeyedState {
+
+        AvlTree<Integer> tree;
+
+        Integer[] absent;
+        //Boxed ahead of time, so that the measure only counts the allocations of the tree itself
+
+        int next = 0;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new AvlTree<>(false);
+            tree.recycleNodes(64);
+            for(int key : keys){
+                tree.add(key);
+            }
+            absent = new Integer[1 << 16];
+            for(int i = 0; i < absent.length; i++){
+                absent[i] = nextAbsentKey();
+            }
+        }
+
+        Integer nextBoxedAbsentKey(){
+            Integer key = absent[next];
+            next = (next + 1) & (absent.length - 1);
+            return key;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LazyState extends KeyedState {
+
+        AvlTree<Integer> tree;
+
+        @Override
+        protected void fill(int[] keys){
+            tree = new AvlTree<>(false);
+            tree.lazyDeletes(0.25);
+            for(int key : keys){
+                tree.add(key);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FrozenState extends KeyedState {
+
+        FrozenAvlTree<Integer> tree;
+
+        @Override
+        protected void fill(int[] keys){
+            AvlTree<Integer> source = new AvlTree<>(false);
+            for(int key : keys){
+                source.add(key);
+            }
+            tree = source.freeze();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TreeMapState extends KeyedState {
+
+        TreeMap<Integer, Integer> map;
+
+        @Override
+        protected void fill(int[] keys){
+            map = new TreeMap<>();
+            for(int key : keys){
+                map.put(key, key);
+            }
+        }
+    }
+
+    /***************************
+     Lookups
+     ***************************/
+
+    @Benchmark
+    public AvlNode<Integer> avlGet(AvlState state){
+        return state.tree.get(state.nextKey());
+    }
+
+    @Benchmark
+    public Integer treeMapGet(TreeMapState state){
+        return state.map.get(state.nextKey());
+    }
+
+    @Benchmark
+    public AvlNode<Integer> frozenGet(FrozenState state){
+        return state.tree.get(state.nextKey());
+    }
+
+    @Benchmark
+    public boolean avlContainsAbsent(AvlState state){
+        return state.tree.contains(state.nextAbsentKey());
+    }
+
+    @Benchmark
+    public boolean treeMapContainsAbsent(TreeMapState state){
+        return state.map.containsKey(state.nextAbsentKey());
+    }
+
+    @Benchmark
+    public boolean frozenContainsAbsent(FrozenState state){
+        return state.tree.contains(state.nextAbsentKey());
+    }
+
+    /***************************
+     Updates
+     ***************************/
+
+    @Benchmark
+    public void avlAddRemove(AvlState state){
+        int key = state.nextAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+    }
+
+    @Benchmark
+    public void avlRemoveAdd(AvlState state){
+        //Removes a key that is in the tree, often an inner node replaced by its successor, then puts it back
+        int key = state.nextKey();
+        state.tree.remove(key);
+        state.tree.add(key);
+    }
+
+    @Benchmark
+    public void avlRemoveAddLazy(LazyState state){
+        //Removing only marks the node. Adding it back links a new node next to the tombstone, which stays until the next compaction.
+        int key = state.nextKey();
+        state.tree.remove(key);
+        state.tree.add(key);
+    }
+
+    @Benchmark
+    public Integer treeMapRemovePut(TreeMapState state){
+        int key = state.nextKey();
+        state.map.remove(key);
+        return state.map.put(key, key);
+    }
+
+    @Benchmark
+    public void avlAddRemoveRecycled(RecyclingState state){
+        //Run with -prof gc : gc.alloc.rate.norm drops to about 0, versus one AvlNode (and a boxed key) for avlAddRemove
+        Integer key = state.nextBoxedAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+    }
+
+    @Benchmark
+    public Integer treeMapPutRemove(TreeMapState state){
+        int key = state.nextAbsentKey();
+        state.map.put(key, key);
+        return state.map.remove(key);
+    }
+
+    /***************************
+     Full walks
+     ***************************/
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void avlIterate(AvlState state, Blackhole hole){
+        for(AvlNode<Integer> node : state.tree){
+            hole.consume(node);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void treeMapIterate(TreeMapState state, Blackhole hole){
+        for(Map.Entry<Integer, Integer> entry : state.map.entrySet()){
+            hole.consume(entry);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<AvlNode<Integer>> avlToArrayList(AvlState state){
+        return state.tree.toArrayList();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Integer> treeMapToArrayList(TreeMapState state){
+        return new ArrayList<>(state.map.values());
+    }
+
+    @Benchmark
+    public int avlHashCode(AvlState state){
+        return state.tree.hashCode();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int treeMapHashCode(TreeMapState state){
+        return state.map.hashCode();
+    }
+}
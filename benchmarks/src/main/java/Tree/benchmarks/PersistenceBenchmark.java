@@ -0,0 +1,152 @@
+package Tree.benchmarks;
+
+import Tree.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PersistenceBenchmark {
+
+    /***********************************************************************************************************
+     save() / load() with the binary format and each kind of codec, memory mapping, and journal appends.
+     Files go to a temporary directory deleted after each trial.
+     ***********************************************************************************************************/
+
+    @State(Scope.Thread)
+    public static class FileState extends KeyedState {
+
+        AvlTree<Integer> tree;
+
+        Path directory;
+
+        String binaryPath;
+
+        String standardPath;
+
+        String serializablePath;
+
+        @Override
+        protected void fill(int[] keys) throws IOException {
+            tree = new AvlTree<>(false);
+            for(int key : keys){
+                tree.add(key);
+            }
+            directory = Files.createTempDirectory("avl-bench");
+            binaryPath = directory.resolve("binary.avl").toString();
+            standardPath = directory.resolve("standard.avl").toString();
+            serializablePath = directory.resolve("serializable.avl").toString();
+            tree.codec(AvlCodec.integers());
+            tree.save(binaryPath);
+            tree.codec(AvlCodec.standard());
+            tree.save(standardPath);
+            tree.codec(AvlCodec.serializable());
+            tree.save(serializablePath);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            deleteAll(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class JournalState extends KeyedState {
+
+        @Param({"1", "100", "0"})
+        public int syncEvery;
+        //Journal fsync batching, see AvlJournal. 0 never syncs, giving the cost of the log writes alone.
+
+        AvlTree<Integer> tree;
+
+        AvlJournal<Integer> journal;
+
+        Path directory;
+
+        @Override
+        protected void fill(int[] keys) throws IOException {
+            directory = Files.createTempDirectory("avl-journal-bench");
+            journal = new AvlJournal<>(directory.toString(), AvlCodec.integers(), syncEvery, 0);
+            tree = journal.recover(new AvlTree<>(false));
+            for(int key : keys){
+                tree.add(key);
+            }
+            journal.checkpoint(tree);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            journal.close();
+            deleteAll(directory);
+        }
+    }
+
+    private static void deleteAll(Path directory) throws IOException {
+        try(Stream<Path> files = Files.walk(directory)){
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean saveBinary(FileState state){
+        state.tree.codec(AvlCodec.integers());
+        return state.tree.save(state.binaryPath);
+    }
+
+    @Benchmark
+    public boolean saveStandardCodec(FileState state){
+        state.tree.codec(AvlCodec.standard());
+        return state.tree.save(state.standardPath);
+    }
+
+    @Benchmark
+    public boolean saveSerializableCodec(FileState state){
+        state.tree.codec(AvlCodec.serializable());
+        return state.tree.save(state.serializablePath);
+    }
+
+    @Benchmark
+    public AvlTree<Integer> loadBinary(FileState state){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.codec(AvlCodec.integers());
+        tree.load(state.binaryPath);
+        return tree;
+    }
+
+    @Benchmark
+    public AvlTree<Integer> loadStandardCodec(FileState state){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.load(state.standardPath);
+        return tree;
+    }
+
+    @Benchmark
+    public AvlTree<Integer> loadSerializableCodec(FileState state){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.codec(AvlCodec.serializable());
+        tree.load(state.serializablePath);
+        return tree;
+    }
+
+    @Benchmark
+    public MappedAvlTree<Integer> mappedOpen(FileState state) throws IOException {
+        return new MappedAvlTree<>(state.binaryPath, AvlCodec.integers());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void journalAddRemove(JournalState state){
+        int key = state.nextAbsentKey();
+        state.tree.add(key);
+        state.tree.remove(key);
+    }
+}
@@ -0,0 +1,161 @@
+package Tree;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+public interface AvlCodec <T> {
+
+    /***********************************************************************************************************
+     Turns node data into bytes and back for AvlTree.save() and AvlTree.load().
+     Data may be null : encode() is never called with null, the file format handles it.
+     Use a dedicated codec for your data type when you can, it is much smaller and faster than serializable().
+     ***********************************************************************************************************/
+
+    byte TAG_INTEGER = 0;
+    byte TAG_LONG = 1;
+    byte TAG_DOUBLE = 2;
+    byte TAG_STRING = 3;
+    byte TAG_SERIALIZED = 4;
+    //Type tags written by standard() ahead of each payload
+
+    void encode(T data, DataOutput out) throws IOException;
+
+    T decode(DataInput in) throws IOException;
+
+    static <T> AvlCodec<T> standard(){
+        //Default codec : a type tag, then Integer, Long, Double and String data written directly, in a few bytes.
+        //Anything else goes through serializable(), so data of other types must implement Serializable.
+        AvlCodec<Object> fallback = serializable();
+        return new AvlCodec<T>() {
+            @Override
+            public void encode(T data, DataOutput out) throws IOException {
+                if(data instanceof Integer){
+                    out.writeByte(TAG_INTEGER);
+                    out.writeInt((Integer) data);
+                }else if(data instanceof Long){
+                    out.writeByte(TAG_LONG);
+                    out.writeLong((Long) data);
+                }else if(data instanceof Double){
+                    out.writeByte(TAG_DOUBLE);
+                    out.writeDouble((Double) data);
+                }else if(data instanceof String){
+                    //Plain UTF-8 with an int length, since writeUTF() stops at 65535 bytes
+                    byte[] bytes = ((String) data).getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(TAG_STRING);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }else{
+                    out.writeByte(TAG_SERIALIZED);
+                    fallback.encode(data, out);
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T decode(DataInput in) throws IOException {
+                byte tag = in.readByte();
+                switch(tag){
+                    case TAG_INTEGER:
+                        return (T) Integer.valueOf(in.readInt());
+                    case TAG_LONG:
+                        return (T) Long.valueOf(in.readLong());
+                    case TAG_DOUBLE:
+                        return (T) Double.valueOf(in.readDouble());
+                    case TAG_STRING:{
+                        int length = in.readInt();
+                        if(length < 0){
+                            throw new StreamCorruptedException("Negative string length " + length);
+                        }
+                        byte[] bytes = new byte[length];
+                        in.readFully(bytes);
+                        return (T) new String(bytes, StandardCharsets.UTF_8);
+                    }
+                    case TAG_SERIALIZED:
+                        return (T) fallback.decode(in);
+                    default:
+                        throw new StreamCorruptedException("Unknown data tag " + tag);
+                }
+            }
+        };
+    }
+
+    static <T> AvlCodec<T> serializable(){
+        //Standard Java serialization of each data object, for any Serializable data. Each payload gets its own
+        //object stream, which costs about as much as the data itself for small objects : prefer standard().
+        //The object stream is written as is : save files and journal records already prefix it with its length.
+        return new AvlCodec<T>() {
+            @Override
+            public void encode(T data, DataOutput out) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                oos.writeObject(data);
+                oos.close();
+                out.write(bytes.toByteArray());
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T decode(DataInput in) throws IOException {
+                //Not closed, since that would close the caller's stream. Reads the object and nothing past it.
+                ObjectInputStream ois = new ObjectInputStream(in instanceof InputStream ? (InputStream) in : new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        try{
+                            return in.readUnsignedByte();
+                        }catch (EOFException e){
+                            return -1;
+                        }
+                    }
+                });
+                try{
+                    return (T) ois.readObject();
+                }catch (ClassNotFoundException e){
+                    throw new InvalidClassException(e.getMessage());
+                }
+            }
+        };
+    }
+
+    static AvlCodec<String> strings(){
+        //Modified UTF-8, limited to 65535 bytes per string
+        return new AvlCodec<String>() {
+            @Override
+            public void encode(String data, DataOutput out) throws IOException {
+                out.writeUTF(data);
+            }
+
+            @Override
+            public String decode(DataInput in) throws IOException {
+                return in.readUTF();
+            }
+        };
+    }
+
+    static AvlCodec<Integer> integers(){
+        return new AvlCodec<Integer>() {
+            @Override
+            public void encode(Integer data, DataOutput out) throws IOException {
+                out.writeInt(data);
+            }
+
+            @Override
+            public Integer decode(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+    }
+
+    static AvlCodec<Long> longs(){
+        return new AvlCodec<Long>() {
+            @Override
+            public void encode(Long data, DataOutput out) throws IOException {
+                out.writeLong(data);
+            }
+
+            @Override
+            public Long decode(DataInput in) throws IOException {
+                return in.readLong();
+            }
+        };
+    }
+}
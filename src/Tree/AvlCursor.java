@@ -0,0 +1,341 @@
+package Tree;
+
+import java.util.Arrays;
+
+public class AvlCursor <T> {
+
+    /***********************************************************************************************************
+     Stateful position in an AvlTree, created with tree.cursor(). Handy when access is sequential or nearly
+     sequential by ID (time-ordered IDs, scans that update their neighbours) : the cursor keeps the path from the
+     root to its node, so it doesn't start over from the root on every call.
+       - next() and prev() cost amortized O(1), like an iterator.
+       - seek(id) climbs the path only as far as the closest ancestor whose subtree can hold id, then walks down
+         from there. Short seeks usually stop a few levels up, and a sweep of increasing (or decreasing) seeks
+         costs amortized O(1) per seek, like next(). A single seek still costs the height of the ancestor it
+         climbs to, which can be the root when seeking across the middle of the tree, whatever the distance.
+       - insert() and remove() are finger updates : the cursor walks to the spot from its own path, and the tree
+         only does the way back up, refreshing the size and digest every ancestor caches and balancing. That way
+         up stays O(log n), but there is no search from the root. The cursor then keeps the part of its path that
+         the rotations didn't touch. Both are journaled and counted by metrics like tree.add() and tree.remove().
+     When the tree changes by any other way, the cursor finds its node again on its next call, or the node
+     following it if that one was removed. Tombstones left by lazy deletes are stepped over.
+     The cursor sits either on a node or off the tree. Off the tree, next() starts over at the first node and
+     prev() at the last one. Not thread-safe, like the tree itself.
+     ***********************************************************************************************************/
+
+    private static final int INITIAL_DEPTH = 64;
+    //Enough for any balanced tree. The arrays below grow for deeper trees, set by hand with root() for instance.
+
+    private final AvlTree<T> tree;
+
+    private AvlNode<T>[] path = AvlNode.newArray(INITIAL_DEPTH);
+    //path[0] is the root and path[depth - 1] the current node. depth is 0 off the tree.
+
+    private int[] lower = new int[INITIAL_DEPTH];
+    //Index in path of the closest ancestor ordered before path[i], or -1. It is the predecessor of path[i]
+    //when path[i] has no left child, and bounds its subtree from below.
+
+    private int[] upper = new int[INITIAL_DEPTH];
+    //Same for the closest ancestor ordered after path[i]
+
+    private int depth = 0;
+
+    private int markId;
+    private int markSeq;
+    //Position of the current node, kept apart since a removed node may be recycled by the tree. See refresh().
+
+    private int modCount;
+
+    private long descended;
+    //Nodes pushed on the path so far, to check in tests how far each move walks
+
+    /***************************
+     Constructors
+     ***************************/
+
+    AvlCursor(AvlTree<T> tree){
+        this.tree = tree;
+        this.modCount = tree.modCount();
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    long descended(){
+        return descended;
+    }
+
+    /***************************
+     Getters & Setters
+     ***************************/
+
+    public AvlTree<T> tree(){
+        return tree;
+    }
+
+    public AvlNode<T> node(){
+        //Current node, or null when off the tree
+        refresh();
+        if(depth == 0){
+            return null;
+        }
+        mark();
+        return path[depth - 1];
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    private static int compare(AvlNode<?> node, int id, long seq){
+        //Compares node with the (id, seq) position. Seeking an ID uses seq -1, which comes before its first copy.
+        int cmp = Integer.compare(node.id(), id);
+        return cmp != 0 ? cmp : Long.compare(node.seq(), seq);
+    }
+
+    private void refresh(){
+        //After a change the path may be wrong : walk down again from the root to the same position
+        if(modCount == tree.modCount()){
+            return;
+        }
+        modCount = tree.modCount();
+        if(depth == 0){
+            return;
+        }
+        depth = 0;
+        locate(markId, markSeq);
+    }
+
+    private void mark(){
+        markId = path[depth - 1].id();
+        markSeq = path[depth - 1].seq();
+    }
+
+    private void push(AvlNode<T> node, boolean isLeftChild){
+        //Appends a child of the current node, or the root when depth is 0, to the path
+        if(depth == path.length){
+            path = Arrays.copyOf(path, 2 * depth);
+            lower = Arrays.copyOf(lower, 2 * depth);
+            upper = Arrays.copyOf(upper, 2 * depth);
+        }
+        if(depth == 0){
+            lower[0] = -1;
+            upper[0] = -1;
+        }else if(isLeftChild){
+            lower[depth] = lower[depth - 1];
+            upper[depth] = depth - 1;
+        }else{
+            lower[depth] = depth - 1;
+            upper[depth] = upper[depth - 1];
+        }
+        path[depth++] = node;
+        descended++;
+    }
+
+    private boolean covers(int level, int id, long seq){
+        //Whether the first node at or after (id, seq) is in the subtree of path[level], or is its upper bound
+        return (lower[level] < 0 || compare(path[lower[level]], id, seq) < 0)
+                && (upper[level] < 0 || compare(path[upper[level]], id, seq) >= 0);
+    }
+
+    private int walk(int id, long seq){
+        //Finger search : climbs to the closest ancestor whose subtree range covers (id, seq), then walks down
+        //from there to a leaf. Returns the level of the first node at or after (id, seq), or -1 if there is none.
+        while(depth > 0 && !covers(depth - 1, id, seq)){
+            depth--;
+        }
+        if(depth == 0){
+            if(tree.root() == null){
+                return -1;
+            }
+            push(tree.root(), false);
+        }
+        //The answer is the last node met that isn't before the target, or the upper bound of the start subtree
+        int found = upper[depth - 1];
+        while(true){
+            AvlNode<T> node = path[depth - 1];
+            AvlNode<T> child;
+            boolean isLeftChild = compare(node, id, seq) >= 0;
+            if(isLeftChild){
+                found = depth - 1;
+                child = node.left();
+            }else{
+                child = node.right();
+            }
+            if(child == null){
+                break;
+            }
+            push(child, isLeftChild);
+        }
+        return found;
+    }
+
+    private void locate(int id, long seq){
+        //Moves to the first node at or after (id, seq), or off the tree if there is none
+        depth = walk(id, seq) + 1;
+        skipTombstones(true);
+        if(depth > 0){
+            mark();
+        }
+    }
+
+    private void revalidate(){
+        //After a write, keeps the part of the path still linked from the root. Rotations and path copying
+        //only replace nodes from some level down, so the path above it is still right.
+        int valid = 0;
+        while(valid < depth){
+            AvlNode<T> expected;
+            if(valid == 0){
+                expected = tree.root();
+            }else{
+                expected = upper[valid] == valid - 1 ? path[valid - 1].left() : path[valid - 1].right();
+            }
+            if(path[valid] != expected){
+                break;
+            }
+            valid++;
+        }
+        depth = valid;
+    }
+
+    private void forward(){
+        //Moves to the in-order successor, or off the tree
+        AvlNode<T> node = path[depth - 1];
+        if(node.right() != null){
+            push(node.right(), false);
+            while(path[depth - 1].left() != null){
+                push(path[depth - 1].left(), true);
+            }
+        }else{
+            depth = upper[depth - 1] + 1;
+        }
+    }
+
+    private void backward(){
+        //Moves to the in-order predecessor, or off the tree
+        AvlNode<T> node = path[depth - 1];
+        if(node.left() != null){
+            push(node.left(), true);
+            while(path[depth - 1].right() != null){
+                push(path[depth - 1].right(), false);
+            }
+        }else{
+            depth = lower[depth - 1] + 1;
+        }
+    }
+
+    private void skipTombstones(boolean isForward){
+        //Lazily deleted nodes are still linked in the tree, the cursor steps over them
+        while(depth > 0 && path[depth - 1].deleted()){
+            if(isForward){
+                forward();
+            }else{
+                backward();
+            }
+        }
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public boolean seek(int id){
+        //Moves to the first copy of id and returns true, or to the first node after id and returns false.
+        //Off the tree when every ID is lower than id.
+        refresh();
+        locate(id, -1);
+        return depth > 0 && path[depth - 1].id() == id;
+    }
+
+    public AvlNode<T> first(){
+        //Moves to the first node, in O(log n)
+        refresh();
+        depth = 0;
+        if(tree.root() != null){
+            push(tree.root(), false);
+            while(path[depth - 1].left() != null){
+                push(path[depth - 1].left(), true);
+            }
+        }
+        skipTombstones(true);
+        return node();
+    }
+
+    public AvlNode<T> last(){
+        //Moves to the last node, in O(log n)
+        refresh();
+        depth = 0;
+        if(tree.root() != null){
+            push(tree.root(), false);
+            while(path[depth - 1].right() != null){
+                push(path[depth - 1].right(), false);
+            }
+        }
+        skipTombstones(false);
+        return node();
+    }
+
+    public AvlNode<T> next(){
+        //Moves to the following node and returns it, or null when moving off the tree
+        refresh();
+        if(depth == 0){
+            return first();
+        }
+        forward();
+        skipTombstones(true);
+        return node();
+    }
+
+    public AvlNode<T> prev(){
+        //Moves to the preceding node and returns it, or null when moving off the tree
+        refresh();
+        if(depth == 0){
+            return last();
+        }
+        backward();
+        skipTombstones(false);
+        return node();
+    }
+
+    public AvlNode<T> insert(T data){
+        //Adds data to the tree and moves to its node. Returns null, without moving, when the tree rejects it as a duplicate.
+        return insert(new AvlNode<>(data));
+    }
+
+    public AvlNode<T> insert(AvlNode<T> node){
+        //Same as tree.add(node), then moves to node
+        refresh();
+        boolean isOff = depth == 0;
+        //Walks to the leaf node goes under, after every copy of its ID
+        walk(node.id(), Long.MAX_VALUE);
+        boolean isAdded = tree.addBelow(path, depth, node);
+        modCount = tree.modCount();
+        revalidate();
+        if(!isAdded){
+            //Back to where the cursor was
+            if(isOff){
+                depth = 0;
+            }else{
+                locate(markId, markSeq);
+            }
+            return null;
+        }
+        locate(node.id(), node.seq());
+        return node();
+    }
+
+    public AvlNode<T> remove(){
+        //Removes the current node from the tree and moves to the following one. Returns the removed node, or null off the tree.
+        AvlNode<T> node = node();
+        if(node == null){
+            return null;
+        }
+        tree.removeAt(path, depth);
+        modCount = tree.modCount();
+        revalidate();
+        //Nothing is left at the removed position, so this lands on the following node
+        locate(markId, markSeq);
+        return node;
+    }
+}
@@ -0,0 +1,86 @@
+package Tree;
+
+import jdk.jfr.*;
+
+final class AvlEvents implements AvlMetrics.Events {
+
+    /***********************************************************************************************************
+     JFR events emitted by AvlMetrics. Kept apart so that AvlMetrics, and every tree using it, loads on JDKs
+     without jdk.jfr (JDK 8 before 8u262) : AvlMetrics only creates this class by reflection, once it found
+     jdk.jfr.Event. Left out of builds against the JDK 8 API (mvn -P release8), AvlMetrics then emits nothing.
+     ***********************************************************************************************************/
+
+    AvlEvents(){
+        //Called by AvlMetrics through reflection
+    }
+
+    @Name("Tree.SlowOperation")
+    @Label("AVL Tree Slow Operation")
+    @Category("AVL Tree")
+    @StackTrace(false)
+    static class SlowOperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("ID")
+        int id;
+
+        @Label("Path Length")
+        int pathLength;
+
+        @Label("Tree Size")
+        int size;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+        //Measured by the tree, since the event is only created once the operation is known to be slow
+    }
+
+    @Name("Tree.Persistence")
+    @Label("AVL Tree Save/Load")
+    @Category("AVL Tree")
+    static class PersistenceEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Path")
+        String path;
+
+        @Label("Nodes")
+        int nodes;
+
+        @Label("Success")
+        boolean success;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Override
+    public void slowOperation(String operation, int id, int pathLength, int size, long elapsed){
+        SlowOperationEvent event = new SlowOperationEvent();
+        if(event.isEnabled()){
+            event.operation = operation;
+            event.id = id;
+            event.pathLength = pathLength;
+            event.size = size;
+            event.elapsed = elapsed;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void persistence(String operation, String path, int nodes, boolean success, long elapsed){
+        PersistenceEvent event = new PersistenceEvent();
+        if(event.isEnabled()){
+            event.operation = operation;
+            event.path = path;
+            event.nodes = nodes;
+            event.success = success;
+            event.elapsed = elapsed;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package Tree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class AvlFileFormat {
+
+    /***********************************************************************************************************
+     Binary file format used by AvlTree.save() and AvlTree.load(). Big endian, version 2 :
+       int    magic ('AVLT')
+       int    version
+       int    node count
+       long   position of the offset table
+       int[]  node IDs, in ascending order
+       then for each node, in the same order : int payload length (-1 for null data), then the payload bytes
+         (since version 2, the bytes of AvlCodec.serializable() are no longer prefixed with a second length)
+       long[] absolute position of each payload record (offset table)
+     Nodes are written in sorted order by an iterative walk, so saving never recurses, whatever the tree depth.
+     Loading reads IDs and payloads sequentially and links a balanced tree in linear time (see AvlTree.buildBalanced).
+     The offset table is not needed to load : it lets MappedAvlTree decode a single payload in place.
+     ***********************************************************************************************************/
+
+    static final int MAGIC = 0x41564C54;
+
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 20;
+
+    static final int OFFSETS_POSITION = 12;
+    //Position of the offset table position in the header, patched once every payload is written
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private AvlFileFormat(){
+    }
+
+    static <T> void write(AvlTree<T> tree, Path path, AvlCodec<T> codec) throws IOException {
+        write(tree, path, codec, false);
+    }
+
+    static <T> void write(AvlTree<T> tree, Path path, AvlCodec<T> codec, boolean force) throws IOException {
+        //force makes the file durable before returning, for AvlJournal checkpoints
+        int count = tree.size();
+        long[] offsets = new long[count];
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeLong(0);
+            for(AvlNode<T> node : tree){
+                out.writeInt(node.id());
+            }
+
+            //Payloads are encoded in a reusable scratch buffer first, to write their length ahead of them
+            long position = HEADER_SIZE + 4L * count;
+            ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+            DataOutputStream scratchOut = new DataOutputStream(scratch);
+            int i = 0;
+            for(AvlNode<T> node : tree){
+                offsets[i++] = position;
+                if(node.data() == null){
+                    out.writeInt(-1);
+                    position += 4;
+                    continue;
+                }
+                scratch.reset();
+                codec.encode(node.data(), scratchOut);
+                scratchOut.flush();
+                out.writeInt(scratch.size());
+                scratch.writeTo(out);
+                position += 4 + scratch.size();
+            }
+
+            for(long offset : offsets){
+                out.writeLong(offset);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putLong(0, position);
+            channel.write(header, OFFSETS_POSITION);
+            if(force){
+                channel.force(true);
+            }
+        }
+    }
+
+    static <T> AvlNode<T>[] read(Path path, AvlCodec<T> codec) throws IOException {
+        //Returns the saved nodes, unlinked and sorted by ID. Copies of an ID get seq 0, 1, 2... in saved order.
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            int count = readHeader(in, channel.size());
+            in.readLong();
+            AvlNode<T>[] nodes = AvlNode.newArray(count);
+            for(int i = 0; i < count; i++){
+                nodes[i] = new AvlNode<>(null, in.readInt());
+                if(i > 0 && nodes[i - 1].id() == nodes[i].id()){
+                    nodes[i].seq(nodes[i - 1].seq() + 1);
+                }
+            }
+            //Each codec reads through a view limited to its payload, like MappedAvlTree does, so a codec that
+            //reads too little or too much can't shift the records that follow
+            BoundedInputStream payload = new BoundedInputStream(in);
+            DataInputStream payloadIn = new DataInputStream(payload);
+            for(int i = 0; i < count; i++){
+                int length = in.readInt();
+                if(length == -1){
+                    continue;
+                }
+                if(length < 0){
+                    throw new StreamCorruptedException("Negative payload length " + length + " for node " + i);
+                }
+                payload.limit(length);
+                try{
+                    nodes[i].data(codec.decode(payloadIn));
+                }catch (EOFException e){
+                    throw new StreamCorruptedException("Codec read past the " + length + " bytes payload of node " + i);
+                }
+                payload.skipRest();
+            }
+            return nodes;
+        }
+    }
+
+    static int readHeader(DataInput in, long fileSize) throws IOException {
+        //Checks magic & version, returns the node count.
+        //Every node takes at least 16 bytes (ID, payload length and offset), so a count the file can't hold is
+        //rejected before anything is allocated for it.
+        if(in.readInt() != MAGIC){
+            throw new StreamCorruptedException("Not an AvlTree save file");
+        }
+        int version = in.readInt();
+        if(version != VERSION){
+            throw new StreamCorruptedException("Unsupported AvlTree save file version " + version);
+        }
+        int count = in.readInt();
+        if(count < 0 || HEADER_SIZE + 16L * count > fileSize){
+            throw new StreamCorruptedException("Node count " + count + " doesn't fit in a save file of " + fileSize + " bytes");
+        }
+        return count;
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+        //Bytes left before the limit : the stream ends there, as if the file stopped
+
+        BoundedInputStream(InputStream in){
+            super(in);
+        }
+
+        void limit(long length){
+            remaining = length;
+        }
+
+        void skipRest() throws IOException {
+            //Moves to the end of the limit, whatever the codec left unread
+            while(remaining > 0){
+                long skipped = in.skip(remaining);
+                if(skipped <= 0){
+                    if(in.read() < 0){
+                        throw new EOFException();
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(remaining == 0){
+                return -1;
+            }
+            int b = in.read();
+            if(b >= 0){
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0){
+                return 0;
+            }
+            if(remaining == 0){
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if(n > 0){
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported(){
+            return false;
+        }
+
+        @Override
+        public void close(){
+            //The file stream is closed by read()
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package Tree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+public class AvlJournal <T> implements Closeable {
+
+    /***********************************************************************************************************
+     Write-ahead log for AvlTree, giving durability between two full saves.
+     Once attached with tree.journal(journal), every add, remove, replace and clear of the tree is appended to the
+     log as a small checksummed record. Records are buffered, then written and fsynced in groups :
+       - sync() makes every record appended so far durable. Threads calling it at the same time share one fsync.
+       - syncEvery makes appends call sync() by themselves every N records (1 = every record, 0 = never).
+       - syncIntervalMillis starts a background thread calling sync() periodically (0 = no thread).
+     Files, all in one directory :
+       - journal-N.log : log segments, replayed in order.
+       - checkpoint-N.avl : full save (AvlTree.save() format) of the tree as it was before segment N.
+     recover() loads the last checkpoint and replays the segments written after it, stopping at the first torn record.
+     checkpoint() and compactAsync() fold the log into a fresh checkpoint using an O(1) snapshot of the tree,
+     then delete older segments. load(), root(), split() and allowDuplicates() are not journaled : checkpoint after them.
+     ***********************************************************************************************************/
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final Pattern SEGMENT = Pattern.compile("journal-(\\d+)\\.log");
+    private static final Pattern CHECKPOINT = Pattern.compile("checkpoint-(\\d+)\\.avl");
+
+    private final Path directory;
+
+    private final AvlCodec<T> codec;
+
+    private final int syncEvery;
+
+    private FileChannel channel;
+
+    private long segment;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private ByteBuffer record = ByteBuffer.allocate(256);
+    //Scratch space for one record, grown when a payload doesn't fit
+
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private final CRC32 crc = new CRC32();
+
+    private long appended = 0;
+    //Number of records appended so far. Guarded by this.
+
+    private long durable = 0;
+    //Number of records known to be on disk. Guarded by syncLock.
+
+    private final Object syncLock = new Object();
+
+    private final ScheduledExecutorService background;
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public AvlJournal(String directory, AvlCodec<T> codec) throws IOException {
+        //Fsyncs every record. Safest, slowest.
+        this(directory, codec, 1, 0);
+    }
+
+    public AvlJournal(String directory, AvlCodec<T> codec, int syncEvery, long syncIntervalMillis) throws IOException {
+        this.directory = Paths.get(directory);
+        this.codec = codec;
+        this.syncEvery = syncEvery;
+        Files.createDirectories(this.directory);
+        //Appends always go to a new segment, so a torn tail left by a crash is never followed by valid records
+        List<Long> segments = numbers(SEGMENT);
+        openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1);
+
+        //Runs the periodic syncs and the background compactions
+        background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "avl-journal-" + directory);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(syncIntervalMillis > 0){
+            background.scheduleWithFixedDelay(() -> {
+                try{
+                    sync();
+                }catch (IOException e){
+                    e.printStackTrace();
+                }
+            }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    private Path segmentPath(long number){
+        return directory.resolve("journal-" + number + ".log");
+    }
+
+    private Path checkpointPath(long number){
+        return directory.resolve("checkpoint-" + number + ".avl");
+    }
+
+    private List<Long> numbers(Pattern pattern) throws IOException {
+        //Numbers of the files matching pattern, ascending
+        List<Long> numbers = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)){
+            for(Path file : files){
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if(matcher.matches()){
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private void openSegment(long number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void flushBuffer() throws IOException {
+        //Hands buffered records to the OS. Caller holds this.
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void append(byte type, int id, int position, T data){
+        //Record : type (byte), id (int), then for ADD the payload length (int, -1 for null) and bytes,
+        //for REMOVE the position of the copy (int), and last a CRC32 of all that
+        long count;
+        synchronized(this){
+            try{
+                payload.reset();
+                if(type == ADD && data != null){
+                    codec.encode(data, payloadOut);
+                    payloadOut.flush();
+                }
+                int length = 1 + 4 + (type == ADD ? 4 + payload.size() : type == REMOVE ? 4 : 0);
+                if(record.capacity() < length + 4){
+                    record = ByteBuffer.allocate(Math.max(length + 4, record.capacity() * 2));
+                }
+                record.clear();
+                record.put(type).putInt(id);
+                if(type == ADD){
+                    record.putInt(data == null ? -1 : payload.size());
+                    record.put(payload.toByteArray());
+                }else if(type == REMOVE){
+                    record.putInt(position);
+                }
+                crc.reset();
+                crc.update(record.array(), 0, length);
+                record.putInt((int) crc.getValue());
+                record.flip();
+
+                if(buffer.remaining() < record.remaining()){
+                    flushBuffer();
+                }
+                if(record.remaining() > buffer.capacity()){
+                    //Oversized record, written directly
+                    while(record.hasRemaining()){
+                        channel.write(record);
+                    }
+                }else{
+                    buffer.put(record);
+                }
+            }catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+            count = ++appended;
+        }
+        if(syncEvery > 0 && count % syncEvery == 0){
+            try{
+                sync();
+            }catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void replay(Path segmentFile, AvlTree<T> tree) throws IOException {
+        //Applies every intact record of a segment. A torn or corrupted record ends the segment.
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentFile), BUFFER_SIZE))){
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream recordOut = new DataOutputStream(record);
+            CRC32 crc = new CRC32();
+            while(true){
+                record.reset();
+                T data = null;
+                byte type;
+                int id;
+                int position = 0;
+                try{
+                    type = in.readByte();
+                    id = in.readInt();
+                    recordOut.writeByte(type);
+                    recordOut.writeInt(id);
+                    if(type == ADD){
+                        int length = in.readInt();
+                        recordOut.writeInt(length);
+                        if(length >= 0){
+                            byte[] payload = new byte[length];
+                            in.readFully(payload);
+                            recordOut.write(payload);
+                            data = codec.decode(new DataInputStream(new ByteArrayInputStream(payload)));
+                        }
+                    }else if(type == REMOVE){
+                        position = in.readInt();
+                        recordOut.writeInt(position);
+                    }else if(type != CLEAR){
+                        return;
+                    }
+                    crc.reset();
+                    crc.update(record.toByteArray(), 0, record.size());
+                    if(in.readInt() != (int) crc.getValue()){
+                        return;
+                    }
+                }catch (EOFException e){
+                    return;
+                }
+                if(type == ADD){
+                    tree.add(new AvlNode<>(data, id));
+                }else if(type == REMOVE){
+                    int index = tree.rank(id) + position;
+                    if(index < tree.size() && tree.select(index).id() == id){
+                        tree.remove(tree.select(index));
+                    }
+                }else{
+                    tree.clear();
+                }
+            }
+        }
+    }
+
+    private Rotation<T> rotate(AvlTree<T> tree) throws IOException {
+        //Snapshots tree and starts a new segment. Every record of older segments is made durable first.
+        //Both happen under the append lock, so every record lands either before the snapshot in an old segment,
+        //or after it in the new one.
+        synchronized(syncLock){
+            synchronized(this){
+                AvlTree<T> snapshot = tree.snapshot();
+                flushBuffer();
+                channel.force(false);
+                durable = appended;
+                channel.close();
+                openSegment(segment + 1);
+                return new Rotation<>(snapshot, segment);
+            }
+        }
+    }
+
+    private void writeCheckpoint(AvlTree<T> snapshot, long number) throws IOException {
+        //The checkpoint only counts once fully written : it is written aside, then atomically renamed.
+        Path temporary = directory.resolve("checkpoint-" + number + ".avl.tmp");
+        AvlFileFormat.write(snapshot, temporary, codec, true);
+        Files.move(temporary, checkpointPath(number), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        for(long old : numbers(CHECKPOINT)){
+            if(old < number){
+                Files.deleteIfExists(checkpointPath(old));
+            }
+        }
+        for(long old : numbers(SEGMENT)){
+            if(old < number){
+                Files.deleteIfExists(segmentPath(old));
+            }
+        }
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    void logAdd(AvlNode<T> node){
+        append(ADD, node.id(), 0, node.data());
+    }
+
+    void logRemove(int id, int position){
+        //position : index of the removed copy among the copies of id, 0 without duplicates
+        append(REMOVE, id, position, null);
+    }
+
+    void logClear(){
+        append(CLEAR, 0, 0, null);
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public AvlTree<T> recover(AvlTree<T> tree) throws IOException {
+        //Rebuilds tree from the last checkpoint and the log written after it, then attaches this journal to it.
+        //Call it before any write, on an empty tree configured like the original one (duplicates, codec...).
+        tree.journal(null);
+        List<Long> checkpoints = numbers(CHECKPOINT);
+        long first = 0;
+        if(!checkpoints.isEmpty()){
+            first = checkpoints.get(checkpoints.size() - 1);
+            tree.replaceContent(AvlFileFormat.read(checkpointPath(first), codec));
+        }else{
+            tree.clear();
+        }
+        for(long number : numbers(SEGMENT)){
+            if(number >= first && number != segment){
+                replay(segmentPath(number), tree);
+            }
+        }
+        tree.journal(this);
+        return tree;
+    }
+
+    public void sync() throws IOException {
+        //Group commit : makes every record appended so far durable. If another thread is already syncing,
+        //this waits for it, and its fsync usually covers our records too.
+        long target;
+        synchronized(this){
+            target = appended;
+        }
+        synchronized(syncLock){
+            if(durable >= target){
+                return;
+            }
+            long upTo;
+            FileChannel current;
+            synchronized(this){
+                flushBuffer();
+                upTo = appended;
+                current = channel;
+            }
+            current.force(false);
+            durable = upTo;
+        }
+    }
+
+    public void checkpoint(AvlTree<T> tree) throws IOException {
+        //Folds the log into a fresh checkpoint and deletes the older files. Blocks until the checkpoint is on disk.
+        //The tree logs each change right after making it, so no change may be in between when this is called :
+        //call it from the thread writing the tree, or use ConcurrentAvlTree.checkpoint() which holds the write lock.
+        Rotation<T> rotation = rotate(tree);
+        writeCheckpoint(rotation.snapshot, rotation.number);
+    }
+
+    public Future<?> compactAsync(AvlTree<T> tree) throws IOException {
+        //Same as checkpoint(), but only the O(1) snapshot and the segment switch happen in the calling thread.
+        //The checkpoint is written in the background while the tree keeps taking writes.
+        //Same rule for writers as checkpoint(), see ConcurrentAvlTree.compactAsync().
+        Rotation<T> rotation = rotate(tree);
+        return background.submit(() -> {
+            writeCheckpoint(rotation.snapshot, rotation.number);
+            return null;
+        });
+    }
+
+    private static class Rotation<T> {
+
+        //Snapshot taken by rotate(), and the number of the first segment written after it
+        private final AvlTree<T> snapshot;
+        private final long number;
+
+        Rotation(AvlTree<T> snapshot, long number){
+            this.snapshot = snapshot;
+            this.number = number;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try{
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        synchronized(this){
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,1018 @@
+package Tree;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+public class AvlMap <K, V> extends AbstractMap<K, V> implements NavigableMap<K, V>, Serializable {
+
+    /***********************************************************************************************************
+     AVL tree ordered by key instead of hashcode IDs, implementing NavigableMap.
+     Keys are ordered by the given Comparator, or by their natural ordering (Comparable) when there is none.
+     Keys are exact : two keys are the same only if they compare equal, hashcodes are never used.
+     Range views (subMap, headMap, tailMap, descendingMap, navigableKeySet...) are lazy : they don't copy anything,
+     they only hold their bounds and walk the live tree. Reaching the first key of a range costs O(log n),
+     then each following key costs amortized O(1), so a range scan of k keys runs in O(log n + k).
+     Iterators are fail-fast. See AvlSet for the NavigableSet counterpart.
+     Serialization streams the comparator, the size and then each key and value in order, like TreeMap, and
+     rebuilds a balanced tree when read back. Keys, values and the comparator must then be serializable.
+     ***********************************************************************************************************/
+
+    private static final long serialVersionUID = 1L;
+
+    private transient Node<K, V> root;
+
+    private transient int size = 0;
+
+    private transient int modCount = 0;
+
+    private final Comparator<? super K> comparator;
+
+    private transient View all;
+    //Full range view, backs entrySet() and the range view factories.
+
+    private transient V previousValue;
+    //Value replaced by the last put(), since the recursive methods return the new subtree root.
+
+    private transient boolean onlyIfAbsent;
+    //Set by putIfAbsent() : insert() keeps the value already mapped, unless it is null
+
+    private transient Node<K, V> removedEntry;
+    //Entry removed by the last remove(), same reason
+
+    static final class Node <K, V> implements Map.Entry<K, V> {
+
+        K key;
+        V value;
+        Node<K, V> left;
+        Node<K, V> right;
+        int height = 1;
+
+        Node(K key, V value){
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey(){
+            return key;
+        }
+
+        @Override
+        public V getValue(){
+            return value;
+        }
+
+        @Override
+        public V setValue(V value){
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Map.Entry)){
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode(){
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString(){
+            return key + "=" + value;
+        }
+    }
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public AvlMap(){
+        this.comparator = null;
+    }
+
+    public AvlMap(Comparator<? super K> comparator){
+        this.comparator = comparator;
+    }
+
+    public AvlMap(Map<? extends K, ? extends V> m){
+        this.comparator = null;
+        putAll(m);
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b){
+        return comparator == null ? ((Comparable<Object>) a).compareTo(b) : comparator.compare((K) a, (K) b);
+    }
+
+    private static int height(Node<?, ?> node){
+        return node == null ? 0 : node.height;
+    }
+
+    private static void updateHeight(Node<?, ?> node){
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    private Node<K, V> leftRotation(Node<K, V> node){
+        //Keeps the tree balanced. Don't modify it unless you know what you're doing.
+        Node<K, V> temp = node.right;
+        node.right = temp.left;
+        temp.left = node;
+        updateHeight(node);
+        updateHeight(temp);
+        return temp;
+    }
+
+    private Node<K, V> rightRotation(Node<K, V> node){
+        //Keeps the tree balanced. Don't modify it unless you know what you're doing.
+        Node<K, V> temp = node.left;
+        node.left = temp.right;
+        temp.right = node;
+        updateHeight(node);
+        updateHeight(temp);
+        return temp;
+    }
+
+    private Node<K, V> balance(Node<K, V> node){
+        //Same four cases as AvlTree, written once for both insertion and deletion.
+        updateHeight(node);
+        int balance = height(node.left) - height(node.right);
+        if(balance > 1){
+            if(height(node.left.left) < height(node.left.right)){
+                node.left = leftRotation(node.left);
+            }
+            return rightRotation(node);
+        }
+        if(balance < -1){
+            if(height(node.right.right) < height(node.right.left)){
+                node.right = rightRotation(node.right);
+            }
+            return leftRotation(node);
+        }
+        return node;
+    }
+
+    private Node<K, V> insert(Node<K, V> node, K key, V value){
+        if(node == null){
+            size++;
+            modCount++;
+            return new Node<>(key, value);
+        }
+        int c = compare(key, node.key);
+        if(c < 0){
+            node.left = insert(node.left, key, value);
+        }else if(c > 0){
+            node.right = insert(node.right, key, value);
+        }else{
+            previousValue = node.value;
+            if(!onlyIfAbsent || node.value == null){
+                node.setValue(value);
+            }
+            return node;
+        }
+        return balance(node);
+    }
+
+    private Node<K, V> delete(Node<K, V> node, Object key){
+        if(node == null){
+            return null;
+        }
+        int c = compare(key, node.key);
+        if(c < 0){
+            node.left = delete(node.left, key);
+        }else if(c > 0){
+            node.right = delete(node.right, key);
+        }else{
+            removedEntry = node;
+            size--;
+            modCount++;
+            if(node.left == null || node.right == null){
+                return node.left == null ? node.right : node.left;
+            }
+            //The in-order successor takes the removed entry's place, so entries held by callers stay valid.
+            Node<K, V> successor = node.right;
+            while(successor.left != null){
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return balance(node);
+    }
+
+    private Node<K, V> deleteMin(Node<K, V> node){
+        if(node.left == null){
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    final Node<K, V> getEntry(Object key){
+        Node<K, V> node = root;
+        while(node != null){
+            int c = compare(key, node.key);
+            if(c == 0){
+                return node;
+            }
+            node = c < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    final Node<K, V> firstNode(){
+        Node<K, V> node = root;
+        if(node != null){
+            while(node.left != null){
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+    final Node<K, V> lastNode(){
+        Node<K, V> node = root;
+        if(node != null){
+            while(node.right != null){
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    final Node<K, V> ceilingNode(Object key, boolean inclusive){
+        //Smallest entry above key (or equal to it when inclusive)
+        Node<K, V> best = null;
+        Node<K, V> node = root;
+        while(node != null){
+            int c = compare(key, node.key);
+            if(c == 0 && inclusive){
+                return node;
+            }
+            if(c < 0){
+                best = node;
+                node = node.left;
+            }else{
+                node = node.right;
+            }
+        }
+        return best;
+    }
+
+    final Node<K, V> floorNode(Object key, boolean inclusive){
+        //Greatest entry below key (or equal to it when inclusive)
+        Node<K, V> best = null;
+        Node<K, V> node = root;
+        while(node != null){
+            int c = compare(key, node.key);
+            if(c == 0 && inclusive){
+                return node;
+            }
+            if(c > 0){
+                best = node;
+                node = node.right;
+            }else{
+                node = node.left;
+            }
+        }
+        return best;
+    }
+
+    private View all(){
+        if(all == null){
+            all = new View(true, null, true, true, null, true, false);
+        }
+        return all;
+    }
+
+    static <K, V> Map.Entry<K, V> exportEntry(Map.Entry<K, V> e){
+        //Navigation methods return immutable copies, like TreeMap
+        return e == null ? null : new AbstractMap.SimpleImmutableEntry<>(e);
+    }
+
+    static <K> K keyOrNull(Map.Entry<K, ?> e){
+        return e == null ? null : e.getKey();
+    }
+
+    static <K> K key(Map.Entry<K, ?> e){
+        if(e == null){
+            throw new NoSuchElementException();
+        }
+        return e.getKey();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException{
+        //Comparator, size, then every key and value in order
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for(Map.Entry<K, V> e : entrySet()){
+            out.writeObject(e.getKey());
+            out.writeObject(e.getValue());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        int count = in.readInt();
+        if(count < 0){
+            throw new InvalidObjectException("Negative size : " + count);
+        }
+        root = buildFromSorted(in, count, true, null);
+        size = count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> buildFromSorted(ObjectInputStream in, int count, boolean readValues, V value) throws IOException, ClassNotFoundException{
+        //Keys come in order, so the middle one of each run is the root of its subtree : heights differ by 1 at most.
+        //Without readValues, only keys are in the stream and they all get value.
+        if(count == 0){
+            return null;
+        }
+        Node<K, V> left = buildFromSorted(in, count / 2, readValues, value);
+        K key = (K) in.readObject();
+        Node<K, V> node = new Node<>(key, readValues ? (V) in.readObject() : value);
+        node.left = left;
+        node.right = buildFromSorted(in, count - count / 2 - 1, readValues, value);
+        updateHeight(node);
+        return node;
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    void readSortedKeys(ObjectInputStream in, int count, V value) throws IOException, ClassNotFoundException{
+        //Fills this empty map in O(n) from count keys streamed in ascending order, used by AvlSet
+        root = buildFromSorted(in, count, false, value);
+        size = count;
+        modCount++;
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    @Override
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return root == null;
+    }
+
+    public int height(){
+        return height(root);
+    }
+
+    @Override
+    public Comparator<? super K> comparator(){
+        return comparator;
+    }
+
+    @Override
+    public boolean containsKey(Object key){
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public V get(Object key){
+        Node<K, V> e = getEntry(key);
+        return e == null ? null : e.value;
+    }
+
+    @Override
+    public V put(K key, V value){
+        if(key == null && comparator == null){
+            throw new NullPointerException();
+        }
+        if(root == null){
+            //Type check like TreeMap : a key that can't be compared fails now, not on the next put
+            compare(key, key);
+        }
+        previousValue = null;
+        root = insert(root, key, value);
+        V old = previousValue;
+        previousValue = null;
+        return old;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value){
+        //One descent, where the default method would search for the key and then put it
+        onlyIfAbsent = true;
+        try{
+            return put(key, value);
+        }finally{
+            onlyIfAbsent = false;
+        }
+    }
+
+    @Override
+    public V remove(Object key){
+        removedEntry = null;
+        root = delete(root, key);
+        Node<K, V> removed = removedEntry;
+        removedEntry = null;
+        return removed == null ? null : removed.value;
+    }
+
+    @Override
+    public void clear(){
+        modCount++;
+        size = 0;
+        root = null;
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry(){
+        return exportEntry(firstNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry(){
+        return exportEntry(lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry(){
+        Map.Entry<K, V> e = firstEntry();
+        if(e != null){
+            remove(e.getKey());
+        }
+        return e;
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry(){
+        Map.Entry<K, V> e = lastEntry();
+        if(e != null){
+            remove(e.getKey());
+        }
+        return e;
+    }
+
+    @Override
+    public K firstKey(){
+        return key(firstNode());
+    }
+
+    @Override
+    public K lastKey(){
+        return key(lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key){
+        return exportEntry(floorNode(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key){
+        return keyOrNull(floorNode(key, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key){
+        return exportEntry(floorNode(key, true));
+    }
+
+    @Override
+    public K floorKey(K key){
+        return keyOrNull(floorNode(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key){
+        return exportEntry(ceilingNode(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key){
+        return keyOrNull(ceilingNode(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key){
+        return exportEntry(ceilingNode(key, false));
+    }
+
+    @Override
+    public K higherKey(K key){
+        return keyOrNull(ceilingNode(key, false));
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet(){
+        return all().entrySet();
+    }
+
+    @Override
+    public Set<K> keySet(){
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet(){
+        return new AvlSet<>(this, true);
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet(){
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap(){
+        return all().descendingMap();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive){
+        return all().subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive){
+        return all().headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive){
+        return all().tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey){
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey){
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey){
+        return tailMap(fromKey, true);
+    }
+
+    /***************************
+     Range views
+     ***************************/
+
+    private final class View extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+        //Bounds are absolute, meaning in ascending key order, even for descending views.
+        private final boolean fromStart;
+        private final K lo;
+        private final boolean loInclusive;
+        private final boolean toEnd;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        View(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive, boolean descending){
+            if(!fromStart && !toEnd && compare(lo, hi) > 0){
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        boolean tooLow(Object key){
+            if(fromStart){
+                return false;
+            }
+            int c = compare(key, lo);
+            return c < 0 || (c == 0 && !loInclusive);
+        }
+
+        boolean tooHigh(Object key){
+            if(toEnd){
+                return false;
+            }
+            int c = compare(key, hi);
+            return c > 0 || (c == 0 && !hiInclusive);
+        }
+
+        boolean inRange(Object key){
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private boolean inClosedRange(Object key){
+            return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(hi, key) >= 0);
+        }
+
+        private boolean inRange(Object key, boolean inclusive){
+            //Checks a bound given to subMap/headMap/tailMap
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        //Absolute navigation, in ascending key order and restricted to the bounds
+
+        Node<K, V> absLowest(){
+            Node<K, V> e = fromStart ? firstNode() : ceilingNode(lo, loInclusive);
+            return e == null || tooHigh(e.key) ? null : e;
+        }
+
+        Node<K, V> absHighest(){
+            Node<K, V> e = toEnd ? lastNode() : floorNode(hi, hiInclusive);
+            return e == null || tooLow(e.key) ? null : e;
+        }
+
+        private Node<K, V> absCeiling(Object key, boolean inclusive){
+            if(tooLow(key)){
+                return absLowest();
+            }
+            Node<K, V> e = ceilingNode(key, inclusive);
+            return e == null || tooHigh(e.key) ? null : e;
+        }
+
+        private Node<K, V> absFloor(Object key, boolean inclusive){
+            if(tooHigh(key)){
+                return absHighest();
+            }
+            Node<K, V> e = floorNode(key, inclusive);
+            return e == null || tooLow(e.key) ? null : e;
+        }
+
+        //View navigation, descending views swap directions
+
+        private Node<K, V> first(){
+            return descending ? absHighest() : absLowest();
+        }
+
+        private Node<K, V> last(){
+            return descending ? absLowest() : absHighest();
+        }
+
+        private Node<K, V> lower(Object key, boolean inclusive){
+            return descending ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+        }
+
+        private Node<K, V> higher(Object key, boolean inclusive){
+            return descending ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+        }
+
+        @Override
+        public int size(){
+            //Counting a bounded range walks it. The full map knows its size.
+            if(fromStart && toEnd){
+                return size;
+            }
+            int count = 0;
+            Iterator<Map.Entry<K, V>> it = new EntryIterator(this);
+            while(it.hasNext()){
+                it.next();
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty(){
+            return absLowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key){
+            return inRange(key) && AvlMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key){
+            return inRange(key) ? AvlMap.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value){
+            if(!inRange(key)){
+                throw new IllegalArgumentException("key out of range");
+            }
+            return AvlMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key){
+            return inRange(key) ? AvlMap.this.remove(key) : null;
+        }
+
+        @Override
+        public Comparator<? super K> comparator(){
+            return descending ? Collections.reverseOrder(AvlMap.this.comparator) : AvlMap.this.comparator;
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry(){
+            return exportEntry(first());
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry(){
+            return exportEntry(last());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry(){
+            Map.Entry<K, V> e = firstEntry();
+            if(e != null){
+                AvlMap.this.remove(e.getKey());
+            }
+            return e;
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry(){
+            Map.Entry<K, V> e = lastEntry();
+            if(e != null){
+                AvlMap.this.remove(e.getKey());
+            }
+            return e;
+        }
+
+        @Override
+        public K firstKey(){
+            return key(first());
+        }
+
+        @Override
+        public K lastKey(){
+            return key(last());
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key){
+            return exportEntry(lower(key, false));
+        }
+
+        @Override
+        public K lowerKey(K key){
+            return keyOrNull(lower(key, false));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key){
+            return exportEntry(lower(key, true));
+        }
+
+        @Override
+        public K floorKey(K key){
+            return keyOrNull(lower(key, true));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key){
+            return exportEntry(higher(key, true));
+        }
+
+        @Override
+        public K ceilingKey(K key){
+            return keyOrNull(higher(key, true));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key){
+            return exportEntry(higher(key, false));
+        }
+
+        @Override
+        public K higherKey(K key){
+            return keyOrNull(higher(key, false));
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet(){
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator(){
+                    return new EntryIterator(View.this);
+                }
+
+                @Override
+                public int size(){
+                    return View.this.size();
+                }
+
+                @Override
+                public boolean isEmpty(){
+                    return View.this.isEmpty();
+                }
+
+                @Override
+                public boolean contains(Object o){
+                    if(!(o instanceof Map.Entry)){
+                        return false;
+                    }
+                    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                    if(!inRange(e.getKey())){
+                        return false;
+                    }
+                    Node<K, V> node = getEntry(e.getKey());
+                    return node != null && Objects.equals(node.value, e.getValue());
+                }
+
+                @Override
+                public boolean remove(Object o){
+                    if(!contains(o)){
+                        return false;
+                    }
+                    AvlMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public Set<K> keySet(){
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet(){
+            return new AvlSet<>(this, true);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet(){
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap(){
+            return new View(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive){
+            if(!inRange(fromKey, fromInclusive) || !inRange(toKey, toInclusive)){
+                throw new IllegalArgumentException("key out of range");
+            }
+            if(descending){
+                return new View(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+            }
+            return new View(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive){
+            if(!inRange(toKey, inclusive)){
+                throw new IllegalArgumentException("key out of range");
+            }
+            if(descending){
+                return new View(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+            }
+            return new View(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive){
+            if(!inRange(fromKey, inclusive)){
+                throw new IllegalArgumentException("key out of range");
+            }
+            if(descending){
+                return new View(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+            }
+            return new View(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey){
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey){
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey){
+            return tailMap(fromKey, true);
+        }
+    }
+
+    /***************************
+     Iterators
+     ***************************/
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        //Stack of pending entries : the top is the next one, the others still have their far subtree to visit.
+        private final ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        private final View view;
+        private Node<K, V> lastReturned;
+        private int expectedModCount = modCount;
+
+        EntryIterator(View view){
+            this.view = view;
+            if(view.descending){
+                seekDescending(view.toEnd ? null : view.hi, view.hiInclusive);
+            }else{
+                seekAscending(view.fromStart ? null : view.lo, view.loInclusive);
+            }
+        }
+
+        private void seekAscending(Object from, boolean inclusive){
+            //Pushes the path to the first entry at or above from. O(log n).
+            stack.clear();
+            Node<K, V> node = root;
+            while(node != null){
+                int c = from == null ? 1 : compare(node.key, from);
+                if(c > 0 || (c == 0 && inclusive)){
+                    stack.push(node);
+                    node = node.left;
+                }else{
+                    node = node.right;
+                }
+            }
+        }
+
+        private void seekDescending(Object from, boolean inclusive){
+            //Pushes the path to the last entry at or below from. O(log n).
+            stack.clear();
+            Node<K, V> node = root;
+            while(node != null){
+                int c = from == null ? -1 : compare(node.key, from);
+                if(c < 0 || (c == 0 && inclusive)){
+                    stack.push(node);
+                    node = node.right;
+                }else{
+                    node = node.left;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            if(stack.isEmpty()){
+                return false;
+            }
+            Object key = stack.peek().key;
+            return view.descending ? !view.tooLow(key) : !view.tooHigh(key);
+        }
+
+        @Override
+        public Map.Entry<K, V> next(){
+            if(modCount != expectedModCount){
+                throw new ConcurrentModificationException();
+            }
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            Node<K, V> node = stack.pop();
+            if(view.descending){
+                for(Node<K, V> child = node.left; child != null; child = child.right){
+                    stack.push(child);
+                }
+            }else{
+                for(Node<K, V> child = node.right; child != null; child = child.left){
+                    stack.push(child);
+                }
+            }
+            lastReturned = node;
+            return node;
+        }
+
+        @Override
+        public void remove(){
+            if(lastReturned == null){
+                throw new IllegalStateException();
+            }
+            if(modCount != expectedModCount){
+                throw new ConcurrentModificationException();
+            }
+            K key = lastReturned.key;
+            AvlMap.this.remove(key);
+            lastReturned = null;
+            expectedModCount = modCount;
+            //Rotations may have moved the pending entries, so the path is rebuilt right after the removed key
+            if(view.descending){
+                seekDescending(key, false);
+            }else{
+                seekAscending(key, false);
+            }
+        }
+    }
+}
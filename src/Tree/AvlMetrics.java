@@ -0,0 +1,312 @@
+package Tree;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AvlMetrics implements AvlMetricsMXBean {
+
+    /***********************************************************************************************************
+     Opt-in instrumentation of an AvlTree : tree.metrics(new AvlMetrics()).
+     A tree without metrics only pays a null check per operation.
+     Counts, per tree :
+       - adds, removes and lookups, with the length of their search path as a histogram (one bucket per level).
+         The path length is also the number of key comparisons.
+       - rotations by case (LL, LR, RR, RL), separately after insertions and after deletions.
+       - duplicates stored under an existing ID, and duplicates rejected when they aren't allowed.
+       - subtree rebuilds of RELAXED trees and rebalance() calls, with the number of nodes they relinked.
+     Emits JFR events (jdk.jfr, JDK 8u262 and later) when a recording is running :
+       - Tree.SlowOperation for adds, removes & lookups slower than slowThresholdNanos.
+       - Tree.Persistence for every save() and load().
+     The events live in AvlEvents, only loaded when jdk.jfr is there : without it, metrics are counted all the same.
+     Counters are LongAdders, so one AvlMetrics can be shared by trees used from several threads.
+     Use register() to export it through JMX.
+     ***********************************************************************************************************/
+
+    public enum Operation { ADD, REMOVE, LOOKUP }
+
+    public enum Rotation { LL, LR, RR, RL }
+
+    private static final int HISTOGRAM_SIZE = 64;
+    //An AVL tree of 2^31 nodes is at most 45 levels deep, longer paths share the last bucket
+
+    private final LongAdder[] operations = newAdders(Operation.values().length);
+
+    private final LongAdder[] insertRotations = newAdders(Rotation.values().length);
+
+    private final LongAdder[] deleteRotations = newAdders(Rotation.values().length);
+
+    private final LongAdder[] pathLengths = newAdders(HISTOGRAM_SIZE);
+
+    private final LongAdder comparisons = new LongAdder();
+
+    private final LongAdder duplicates = new LongAdder();
+
+    private final LongAdder rejectedDuplicates = new LongAdder();
+
+    private final LongAdder slowOperations = new LongAdder();
+
+    private final LongAdder rebuilds = new LongAdder();
+
+    private final LongAdder rebuiltNodes = new LongAdder();
+
+    private volatile long slowThresholdNanos;
+
+    private ObjectName objectName;
+
+    private static final Events EVENTS = events();
+    //Null on JDKs without jdk.jfr, or when AvlEvents was left out of a build against the JDK 8 API
+
+    interface Events {
+        //Implemented by AvlEvents, which is only reached through reflection so that nothing here refers to jdk.jfr
+
+        void slowOperation(String operation, int id, int pathLength, int size, long elapsed);
+
+        void persistence(String operation, String path, int nodes, boolean success, long elapsed);
+    }
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public AvlMetrics(){
+        //Operations slower than 1ms are reported to JFR
+        this(1_000_000);
+    }
+
+    public AvlMetrics(long slowThresholdNanos){
+        this.slowThresholdNanos = slowThresholdNanos;
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    private static Events events(){
+        //Loads AvlEvents only if jdk.jfr is there, rather than failing on the first event
+        try{
+            Class.forName("jdk.jfr.Event");
+            return (Events) Class.forName("Tree.AvlEvents").getDeclaredConstructor().newInstance();
+        }catch (ReflectiveOperationException | LinkageError e){
+            return null;
+        }
+    }
+
+    private static LongAdder[] newAdders(int count){
+        LongAdder[] adders = new LongAdder[count];
+        for(int i = 0; i < count; i++){
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    void operation(Operation operation, int id, int pathLength, long startNanos, int size){
+        //Called by the tree at the end of each operation, startNanos being System.nanoTime() at its start
+        long duration = System.nanoTime() - startNanos;
+        operations[operation.ordinal()].increment();
+        pathLengths[Math.min(pathLength, HISTOGRAM_SIZE - 1)].increment();
+        comparisons.add(pathLength);
+        if(duration >= slowThresholdNanos){
+            slowOperations.increment();
+            if(EVENTS != null){
+                EVENTS.slowOperation(operation.name(), id, pathLength, size, duration);
+            }
+        }
+    }
+
+    void rotation(boolean afterInsertion, Rotation rotation){
+        (afterInsertion ? insertRotations : deleteRotations)[rotation.ordinal()].increment();
+    }
+
+    void rebuild(int nodes){
+        rebuilds.increment();
+        rebuiltNodes.add(nodes);
+    }
+
+    void duplicate(){
+        duplicates.increment();
+    }
+
+    void rejectedDuplicate(){
+        rejectedDuplicates.increment();
+    }
+
+    void persistence(String operation, String path, int nodes, long startNanos, boolean success){
+        if(EVENTS != null){
+            EVENTS.persistence(operation, path, nodes, success, System.nanoTime() - startNanos);
+        }
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public long operations(Operation operation){
+        return operations[operation.ordinal()].sum();
+    }
+
+    public long insertRotations(Rotation rotation){
+        return insertRotations[rotation.ordinal()].sum();
+    }
+
+    public long deleteRotations(Rotation rotation){
+        return deleteRotations[rotation.ordinal()].sum();
+    }
+
+    public ObjectName register(String name) throws Exception {
+        //Exports these metrics as Tree:type=AvlMetrics,name=<name> on the platform MBean server
+        objectName = new ObjectName("Tree:type=AvlMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void unregister() throws Exception {
+        if(objectName != null){
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getAdds(){
+        return operations(Operation.ADD);
+    }
+
+    @Override
+    public long getRemoves(){
+        return operations(Operation.REMOVE);
+    }
+
+    @Override
+    public long getLookups(){
+        return operations(Operation.LOOKUP);
+    }
+
+    @Override
+    public long getComparisons(){
+        return comparisons.sum();
+    }
+
+    @Override
+    public double getMeanPathLength(){
+        long count = getAdds() + getRemoves() + getLookups();
+        return count == 0 ? 0 : (double) getComparisons() / count;
+    }
+
+    @Override
+    public long[] getPathLengthHistogram(){
+        //Index i holds the number of operations that walked i nodes
+        long[] histogram = new long[HISTOGRAM_SIZE];
+        for(int i = 0; i < HISTOGRAM_SIZE; i++){
+            histogram[i] = pathLengths[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public long getInsertRotationsLL(){
+        return insertRotations(Rotation.LL);
+    }
+
+    @Override
+    public long getInsertRotationsLR(){
+        return insertRotations(Rotation.LR);
+    }
+
+    @Override
+    public long getInsertRotationsRR(){
+        return insertRotations(Rotation.RR);
+    }
+
+    @Override
+    public long getInsertRotationsRL(){
+        return insertRotations(Rotation.RL);
+    }
+
+    @Override
+    public long getDeleteRotationsLL(){
+        return deleteRotations(Rotation.LL);
+    }
+
+    @Override
+    public long getDeleteRotationsLR(){
+        return deleteRotations(Rotation.LR);
+    }
+
+    @Override
+    public long getDeleteRotationsRR(){
+        return deleteRotations(Rotation.RR);
+    }
+
+    @Override
+    public long getDeleteRotationsRL(){
+        return deleteRotations(Rotation.RL);
+    }
+
+    @Override
+    public long getDuplicates(){
+        return duplicates.sum();
+    }
+
+    @Override
+    public long getRejectedDuplicates(){
+        return rejectedDuplicates.sum();
+    }
+
+    @Override
+    public long getRebuilds(){
+        return rebuilds.sum();
+    }
+
+    @Override
+    public long getRebuiltNodes(){
+        return rebuiltNodes.sum();
+    }
+
+    @Override
+    public long getSlowOperations(){
+        return slowOperations.sum();
+    }
+
+    @Override
+    public long getSlowThresholdNanos(){
+        return slowThresholdNanos;
+    }
+
+    @Override
+    public void setSlowThresholdNanos(long slowThresholdNanos){
+        this.slowThresholdNanos = slowThresholdNanos;
+    }
+
+    @Override
+    public void reset(){
+        for(LongAdder[] adders : new LongAdder[][]{operations, insertRotations, deleteRotations, pathLengths}){
+            for(LongAdder adder : adders){
+                adder.reset();
+            }
+        }
+        comparisons.reset();
+        duplicates.reset();
+        rejectedDuplicates.reset();
+        rebuilds.reset();
+        rebuiltNodes.reset();
+        slowOperations.reset();
+    }
+
+    @Override
+    public String toString(){
+        return "adds=" + getAdds() + " removes=" + getRemoves() + " lookups=" + getLookups()
+                + " meanPath=" + String.format("%.2f", getMeanPathLength())
+                + " insertRotations[LL=" + getInsertRotationsLL() + " LR=" + getInsertRotationsLR()
+                + " RR=" + getInsertRotationsRR() + " RL=" + getInsertRotationsRL() + "]"
+                + " deleteRotations[LL=" + getDeleteRotationsLL() + " LR=" + getDeleteRotationsLR()
+                + " RR=" + getDeleteRotationsRR() + " RL=" + getDeleteRotationsRL() + "]"
+                + " duplicates=" + getDuplicates() + " rejected=" + getRejectedDuplicates()
+                + " rebuilds=" + getRebuilds() + "(" + getRebuiltNodes() + " nodes)"
+                + " slow=" + getSlowOperations();
+    }
+}
@@ -0,0 +1,53 @@
+package Tree;
+
+public interface AvlMetricsMXBean {
+
+    /***********************************************************************************************************
+     JMX view of an AvlMetrics, registered with AvlMetrics.register(). Every value is cumulative since the
+     last reset().
+     ***********************************************************************************************************/
+
+    long getAdds();
+
+    long getRemoves();
+
+    long getLookups();
+
+    long getComparisons();
+
+    double getMeanPathLength();
+
+    long[] getPathLengthHistogram();
+
+    long getInsertRotationsLL();
+
+    long getInsertRotationsLR();
+
+    long getInsertRotationsRR();
+
+    long getInsertRotationsRL();
+
+    long getDeleteRotationsLL();
+
+    long getDeleteRotationsLR();
+
+    long getDeleteRotationsRR();
+
+    long getDeleteRotationsRL();
+
+    long getDuplicates();
+
+    long getRejectedDuplicates();
+
+    long getRebuilds();
+
+    long getRebuiltNodes();
+
+    long getSlowOperations();
+
+    long getSlowThresholdNanos();
+
+    void setSlowThresholdNanos(long slowThresholdNanos);
+
+    void reset();
+}
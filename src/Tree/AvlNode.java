@@ -17,12 +17,42 @@ import java.io.Serializable;
 
 public class AvlNode <T> implements Serializable {
 
+    private static final long serialVersionUID = -8859768158742083048L;
+    //Value computed for the first version of the class, so saves written with Java serialization still load
+
     private AvlNode <T> left;
     private AvlNode <T> right;
     private int id;
+    private int seq;
+    //Tells apart duplicates sharing the same ID, in insertion order. Set by the tree, 0 for the first copy.
     private T data;
     //Data must be serializable if you intend to save the tree
 
+    private int height = 1;
+    //Cached subtree height, kept up to date by the setters below. A leaf has height 1.
+
+    private int rank = 1;
+    //Rank of the node in a weak AVL tree, managed by the tree itself and left alone by the setters below.
+    //Only meaningful under AvlTree.BalancePolicy.WEAK.
+
+    private int size = 1;
+    //Cached subtree node count, kept up to date by the setters below. Used for rank & select in AvlTree.
+    //Tombstones are not counted, so size, rank & select only see live nodes.
+
+    private boolean deleted;
+    //Tombstone left by a lazy delete : the node keeps its place in the tree but is invisible. See AvlTree.lazyDeletes().
+
+    private int tombstones;
+    //Cached number of tombstones in the subtree
+
+    private long digest;
+    //Cached 64-bit digest of the whole subtree, kept up to date by the setters below.
+    //It is the sum of every live node's mixed (id, data hash) pair, so it doesn't depend on the tree shape.
+
+    private transient int epoch;
+    //Tree epoch this node was created in. A tree only modifies in place the nodes of its current epoch
+    //and copies the others, which may be shared with a snapshot. See AvlTree.snapshot().
+
     /***************************
      Constructors
      ***************************/
@@ -33,6 +63,7 @@ public class AvlNode <T> implements Serializable {
         this.id = id;
         this.left = left;
         this.right = right;
+        update();
     }
 
     public AvlNode (T data, AvlNode <T> left, AvlNode <T> right){
@@ -41,6 +72,7 @@ public class AvlNode <T> implements Serializable {
         this.id = data.hashCode();
         this.left = left;
         this.right = right;
+        update();
     }
 
     public AvlNode (T data, int id){
@@ -49,6 +81,7 @@ public class AvlNode <T> implements Serializable {
         this.id = id;
         this.left = null;
         this.right = null;
+        update();
     }
 
     public AvlNode (T data){
@@ -57,6 +90,7 @@ public class AvlNode <T> implements Serializable {
         this.id = data.hashCode();
         this.left = null;
         this.right = null;
+        update();
     }
 
     public AvlNode (){
@@ -65,6 +99,7 @@ public class AvlNode <T> implements Serializable {
         this.id = 0;
         this.left = null;
         this.right = null;
+        update();
     }
 
     /***************************
@@ -77,6 +112,7 @@ public class AvlNode <T> implements Serializable {
 
     public void left(AvlNode <T> left) {
         this.left = left;
+        update();
     }
 
     public AvlNode <T> right() {
@@ -85,6 +121,7 @@ public class AvlNode <T> implements Serializable {
 
     public void right(AvlNode <T> right) {
         this.right = right;
+        update();
     }
 
     public int id() {
@@ -93,6 +130,11 @@ public class AvlNode <T> implements Serializable {
 
     public void id(int id) {
         this.id = id;
+        update();
+    }
+
+    public int seq() {
+        return seq;
     }
 
     public T data() {
@@ -100,7 +142,122 @@ public class AvlNode <T> implements Serializable {
     }
 
     public void data(T data) {
+        //Data hashcode is part of the digest. Ancestors of a node already in a tree aren't refreshed, use tree.replace() for that.
         this.data = data;
+        update();
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int size() {
+        //Number of live nodes in this subtree, this node included unless it is a tombstone
+        return size;
+    }
+
+    public long digest() {
+        return digest;
+    }
+
+    public boolean deleted() {
+        return deleted;
+    }
+
+    public int tombstones() {
+        return tombstones;
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    AvlNode <T> copy(int epoch){
+        //Used for path copying. Cached values are copied as is since children are the same.
+        AvlNode <T> node = new AvlNode<>();
+        node.data = data;
+        node.id = id;
+        node.seq = seq;
+        node.left = left;
+        node.right = right;
+        node.height = height;
+        node.rank = rank;
+        node.size = size;
+        node.digest = digest;
+        node.deleted = deleted;
+        node.tombstones = tombstones;
+        node.epoch = epoch;
+        return node;
+    }
+
+    void seq(int seq){
+        this.seq = seq;
+    }
+
+    void reset(T data, int id){
+        //Turns a recycled node into a fresh leaf holding data
+        this.data = data;
+        this.id = id;
+        this.seq = 0;
+        this.deleted = false;
+        this.rank = 1;
+        this.left = null;
+        this.right = null;
+        update();
+    }
+
+    void deleted(boolean deleted){
+        this.deleted = deleted;
+        update();
+    }
+
+    int rank(){
+        return rank;
+    }
+
+    void rank(int rank){
+        this.rank = rank;
+    }
+
+    int epoch(){
+        return epoch;
+    }
+
+    void epoch(int epoch){
+        this.epoch = epoch;
+    }
+
+    void update(){
+        //Recomputes cached values from the direct children only, so it runs in O(1).
+        //Children must already be up to date, which is the case when the tree is rebuilt bottom-up.
+        int leftHeight = left == null ? 0 : left.height;
+        int rightHeight = right == null ? 0 : right.height;
+        height = 1 + Math.max(leftHeight, rightHeight);
+        size = (deleted ? 0 : 1) + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
+        tombstones = (deleted ? 1 : 0) + (left == null ? 0 : left.tombstones) + (right == null ? 0 : right.tombstones);
+        digest = deleted ? 0 : ownDigest();
+        if(left != null){
+            digest += left.digest;
+        }
+        if(right != null){
+            digest += right.digest;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> AvlNode<T>[] newArray(int length){
+        //Java can't create an AvlNode<T>[] directly. The cast is safe : the array is only ever filled with AvlNode<T>.
+        return (AvlNode<T>[]) new AvlNode<?>[length];
+    }
+
+    long ownDigest(){
+        //Digest of this node alone. SplitMix64 over the (id, data hash) pair : the golden gamma is added first,
+        //since the finalizer alone maps 0 to 0 and a (0, 0) node would vanish from every digest sum.
+        long z = ((long) id << 32) | ((data == null ? 0 : data.hashCode()) & 0xffffffffL);
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     /***************************
@@ -109,7 +266,8 @@ public class AvlNode <T> implements Serializable {
 
     @Override
     public boolean equals(Object o){
-        //Note that if data is of Integer type, a tree that contains 5 10 and 15 will be equal to a tree that contains 3 7 20, as we're just comparing data values.
+        //Compares whole subtrees through their cached sizes & digests, so this runs in O(1).
+        //Two subtrees holding the same (id, data) pairs are equal whatever their shape.
 
         if(o == this){
             return true;
@@ -119,26 +277,13 @@ public class AvlNode <T> implements Serializable {
             return false;
         }
         AvlNode <T> node = (AvlNode<T>)o;
-        return this.hashCode() == node.hashCode();
+        return this.size() == node.size() && this.digest() == node.digest();
     }
 
     @Override
     public int hashCode(){
-        int hash = 17 + id;
-
-        if(data != null){
-            hash += data.hashCode();
-        }
-
-        if(left != null){
-            hash += left.hashCode();
-        }
-
-        if(right != null){
-            hash += right.hashCode();
-        }
-
-        return hash;
+        long digest = digest();
+        return (int) (digest ^ (digest >>> 32));
     }
 
     @Override
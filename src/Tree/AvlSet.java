@@ -0,0 +1,226 @@
+package Tree;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+public class AvlSet <E> extends AbstractSet<E> implements NavigableSet<E>, Serializable {
+
+    /***********************************************************************************************************
+     NavigableSet backed by an AvlMap, ordered by a Comparator or by natural ordering.
+     Also used for the key views of AvlMap (navigableKeySet(), descendingKeySet()) : those support removal
+     but not add(), like the key views of TreeMap.
+     Range views (subSet, headSet, tailSet, descendingSet) are lazy, see AvlMap.
+     Serialization streams the comparator and the elements in order, like TreeSet. Views are read back as plain
+     sets holding a copy of their elements, since the map behind them isn't written.
+     ***********************************************************************************************************/
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Object PRESENT = new Object();
+
+    private transient NavigableMap<E, Object> m;
+
+    private transient boolean keyView;
+    //True when this set is a view over the keys of a map with its own values : add() is then unsupported.
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public AvlSet(){
+        this(new AvlMap<E, Object>(), false);
+    }
+
+    public AvlSet(Comparator<? super E> comparator){
+        this(new AvlMap<E, Object>(comparator), false);
+    }
+
+    public AvlSet(Collection<? extends E> c){
+        this();
+        addAll(c);
+    }
+
+    @SuppressWarnings("unchecked")
+    AvlSet(NavigableMap<E, ?> m, boolean keyView){
+        this.m = (NavigableMap<E, Object>) m;
+        this.keyView = keyView;
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    @Override
+    public int size(){
+        return m.size();
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return m.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o){
+        return m.containsKey(o);
+    }
+
+    @Override
+    public boolean add(E e){
+        if(keyView){
+            throw new UnsupportedOperationException();
+        }
+        return m.put(e, PRESENT) == null;
+    }
+
+    @Override
+    public boolean remove(Object o){
+        if(!m.containsKey(o)){
+            return false;
+        }
+        m.remove(o);
+        return true;
+    }
+
+    @Override
+    public void clear(){
+        m.clear();
+    }
+
+    @Override
+    public Iterator<E> iterator(){
+        return keyIterator(m.entrySet().iterator());
+    }
+
+    @Override
+    public Iterator<E> descendingIterator(){
+        return keyIterator(m.descendingMap().entrySet().iterator());
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException{
+        //Comparator, size, then every element in order
+        out.defaultWriteObject();
+        out.writeObject(m.comparator());
+        out.writeInt(m.size());
+        for(E e : this){
+            out.writeObject(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        AvlMap<E, Object> map = new AvlMap<>((Comparator<? super E>) in.readObject());
+        keyView = false;
+        int count = in.readInt();
+        if(count < 0){
+            throw new InvalidObjectException("Negative size : " + count);
+        }
+        //Elements were written in order : linear rebuild, like AvlMap
+        map.readSortedKeys(in, count, PRESENT);
+        m = map;
+    }
+
+    private static <E> Iterator<E> keyIterator(Iterator<? extends Map.Entry<E, ?>> entries){
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext(){
+                return entries.hasNext();
+            }
+
+            @Override
+            public E next(){
+                return entries.next().getKey();
+            }
+
+            @Override
+            public void remove(){
+                entries.remove();
+            }
+        };
+    }
+
+    @Override
+    public Comparator<? super E> comparator(){
+        return m.comparator();
+    }
+
+    @Override
+    public E first(){
+        return m.firstKey();
+    }
+
+    @Override
+    public E last(){
+        return m.lastKey();
+    }
+
+    @Override
+    public E lower(E e){
+        return m.lowerKey(e);
+    }
+
+    @Override
+    public E floor(E e){
+        return m.floorKey(e);
+    }
+
+    @Override
+    public E ceiling(E e){
+        return m.ceilingKey(e);
+    }
+
+    @Override
+    public E higher(E e){
+        return m.higherKey(e);
+    }
+
+    @Override
+    public E pollFirst(){
+        return AvlMap.keyOrNull(m.pollFirstEntry());
+    }
+
+    @Override
+    public E pollLast(){
+        return AvlMap.keyOrNull(m.pollLastEntry());
+    }
+
+    @Override
+    public NavigableSet<E> descendingSet(){
+        return new AvlSet<>(m.descendingMap(), keyView);
+    }
+
+    @Override
+    public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive){
+        return new AvlSet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive), keyView);
+    }
+
+    @Override
+    public NavigableSet<E> headSet(E toElement, boolean inclusive){
+        return new AvlSet<>(m.headMap(toElement, inclusive), keyView);
+    }
+
+    @Override
+    public NavigableSet<E> tailSet(E fromElement, boolean inclusive){
+        return new AvlSet<>(m.tailMap(fromElement, inclusive), keyView);
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement){
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement){
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement){
+        return tailSet(fromElement, true);
+    }
+}
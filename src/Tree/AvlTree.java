@@ -2,10 +2,20 @@ package Tree;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-
-public class AvlTree <T> implements Serializable {
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class AvlTree <T> implements Serializable, Iterable<AvlNode<T>> {
 
     /***********************************************************************************************************
      Done for Java 8
@@ -15,20 +25,90 @@ public class AvlTree <T> implements Serializable {
      Constructors & most methods tend to be overloaded. Delve into the code to see what's available.
      IDs are handled safely & automatically.
      You can still edit them or declare them. See AvlNode class for more details.
+     Duplicates keep their hashcode ID and are told apart by a sequence number (AvlNode.seq()) in insertion order,
+     so get(data), getAll(data), count(data) and remove(data) always find them.
+     When int hashcodes collide too often, use KeyedAvlTree to key the data by a long or by any key of your own.
+     snapshot() returns an immutable view of the tree in O(1). After a snapshot, add & remove copy the O(log n) nodes
+     on their path instead of modifying them, so the snapshot never changes. Nodes returned by get() may be shared
+     with snapshots : change them through the tree (replace()) rather than through their setters.
+     split(), join(), union(), intersection() and difference() work on whole trees in O(log n) to O(m log(n/m + 1)),
+     sharing nodes between their inputs and results the same way.
+     lazyDeletes(ratio) turns remove() into an O(log n) mark : the node stays linked as a tombstone, skipped by
+     lookups and iterators, until tombstones outnumber ratio of all linked nodes and the tree compacts itself in O(n).
+     balancePolicy() picks how add & remove keep the tree balanced, see BalancePolicy below.
      ***********************************************************************************************************/
 
+    public enum BalancePolicy {
+        STRICT,
+        //Classic AVL : subtree heights differ by 1 at most. Shortest paths, but a remove may rotate at every level.
+        WEAK,
+        //Weak AVL (rank-balanced) : same as STRICT as long as nothing is removed. A remove does 2 rotations at most,
+        //plus O(1) amortized rank updates, for a height of 2 log n at worst instead of 1.44 log n.
+        RELAXED
+        //No rotation at all : an add that lands deeper than 2 log n rebuilds the smallest unbalanced subtree above it,
+        //in O(log n) amortized. Paths drift longer in between, call rebalance() during quiet times to fix them.
+    }
+
+    private static final long serialVersionUID = 1L;
+
     private AvlNode <T> root;
 
-    private final Random rand = new Random();
+    private static final Comparator<AvlNode<?>> ID_ORDER = AvlTree::compare;
+
+    private static final AtomicInteger EPOCHS = new AtomicInteger();
+    //Source of fresh epochs. Trees that never took a snapshot all stay at epoch 0.
 
-    private int size = 0;
+    private transient int epoch = 0;
+    //Nodes of this epoch belong to this tree only and can be modified in place. See editable().
+
+    private boolean readOnly = false;
+    //Snapshots are read-only
 
     private boolean areDuplicatesAllowed = true;
     //If this is true, data with hashcode already in the tree can't be inserted.
 
+    private double maxTombstoneRatio = 0;
+    //Lazy deletes when above 0 : removed nodes stay as tombstones until they make up this share of the nodes. See lazyDeletes().
+
+    private BalancePolicy balancePolicy = BalancePolicy.STRICT;
+
+    private transient boolean ranked;
+    //Whether node ranks are valid for BalancePolicy.WEAK. Height-based operations (split, join...) don't maintain
+    //them, so the next add or remove of a weak tree rebuilds it first.
+
+    private transient boolean tooDeep;
+    //Set by a RELAXED add whose new node is too deep, until the subtree to rebuild is found on the way back up
+
     private String savePath = "C:/Users/" + System.getProperty("user.name") + "/Documents/Ares/avl/saved_root.ser";
     //Base save path can be changed when calling load or save method
 
+    private transient AvlCodec<T> codec = AvlCodec.standard();
+    //Turns data into bytes for save and load. AvlCodec.standard() by default, see AvlCodec for the others.
+
+    private transient AvlJournal<T> journal;
+    //Optional write-ahead log of every add & remove. See AvlJournal.
+
+    private transient AvlMetrics metrics;
+    //Optional instrumentation. Every hook is behind a null check, so trees without metrics don't pay for it.
+
+    private transient int pathLength;
+    //Nodes walked by the current add or remove, only counted when metrics are on
+
+    private transient int modCount;
+    //Bumped by every change of the tree content, so that cursors notice when their path is stale. See AvlCursor.
+
+    private transient AvlNode <T>[] pool;
+    //Removed nodes waiting to be reused by add(T), when recycling is on. See recycleNodes().
+
+    private transient int pooled;
+
+    private transient boolean isWrapped;
+    //Set by ConcurrentAvlTree : other threads may hold any removed node, so none can be recycled
+
+    private transient AvlNode <T>[] path;
+    private transient boolean[] turns;
+    //Path stack reused by every add & remove : the nodes walked down, and whether each step went left
+
     /***************************
      Constructors
      ***************************/
@@ -44,24 +124,33 @@ public class AvlTree <T> implements Serializable {
 
     public AvlTree(T data){
         this.root = new AvlNode<>(data);
-        size++;
     }
 
     public AvlTree(T data, boolean areDuplicatesAllowed){
         this.areDuplicatesAllowed = areDuplicatesAllowed;
         this.root = new AvlNode<>(data);
-        size++;
     }
 
     public AvlTree(AvlNode <T> root){
         this.root = root;
-        size++;
     }
 
     public AvlTree(AvlNode <T> root, boolean areDuplicatesAllowed){
         this.areDuplicatesAllowed = areDuplicatesAllowed;
         this.root = root;
-        size++;
+    }
+
+    public static <T> AvlTree<T> bulkLoad(Collection <? extends T> c){
+        return bulkLoad(c, true);
+    }
+
+    public static <T> AvlTree<T> bulkLoad(Collection <? extends T> c, boolean areDuplicatesAllowed){
+        //Builds a perfectly balanced tree in one go : sort by ID once, then link nodes without a single rotation.
+        //Much faster than addAllData() for large batches, see rebuild() for how ID collisions are handled.
+        AvlTree<T> tree = new AvlTree<>(areDuplicatesAllowed);
+        AvlNode<T>[] nodes = sortedNodes(c, tree.epoch);
+        tree.rebuild(nodes, nodes.length);
+        return tree;
     }
 
     /***************************
@@ -74,18 +163,24 @@ public class AvlTree <T> implements Serializable {
 
     public void root(AvlNode <T> root) {
         //No need to set the root manually to initialize the tree. Use add() instead.
-        if(size == 0){
-            size++;
-        }
+        //Size is read from the root, so it stays right whatever subtree is set here.
+        checkWritable();
         this.root = root;
+        ranked = false;
+        modCount++;
     }
 
     public boolean areDuplicatesAllowed(){
         return areDuplicatesAllowed;
     }
 
+    public boolean isReadOnly(){
+        return readOnly;
+    }
+
     public int size(){
-        return size;
+        //Node count cached in the root, so this is always exact and runs in O(1)
+        return root == null ? 0 : root.size();
     }
 
     public String savePath(){
@@ -96,13 +191,140 @@ public class AvlTree <T> implements Serializable {
         this.savePath = savePath;
     }
 
+    public AvlCodec<T> codec(){
+        return codec;
+    }
+
+    public void codec(AvlCodec<T> codec){
+        this.codec = codec;
+    }
+
+    public AvlJournal<T> journal(){
+        return journal;
+    }
+
+    public void journal(AvlJournal<T> journal){
+        //From now on, every add & remove is logged to journal. Use AvlJournal.recover() to attach it after a restart.
+        this.journal = journal;
+    }
+
+    public AvlMetrics metrics(){
+        return metrics;
+    }
+
+    public void metrics(AvlMetrics metrics){
+        //Starts counting operations, rotations & path lengths into metrics. null turns instrumentation off.
+        this.metrics = metrics;
+    }
+
+    public void recycleNodes(int capacity){
+        //Opt-in node recycling for high-churn trees : removed nodes are kept, up to capacity, and reused by add(T)
+        //and replace(target, data), so a steady flow of adds & removes stops allocating nodes. 0 turns it off.
+        //Only nodes owned by this tree alone are recycled, never ones shared with a snapshot, a frozen copy or a
+        //set operation result. A removed node stays readable until an add reuses it : don't keep it longer.
+        //Not available once the tree is wrapped by ConcurrentAvlTree (or ShardedAvlTree), whose readers may
+        //still hold a node, or walk through it, after it was removed.
+        checkWritable();
+        if(isWrapped && capacity > 0){
+            throw new IllegalStateException("Node recycling is off for trees wrapped by ConcurrentAvlTree");
+        }
+        pool = capacity > 0 ? AvlNode.newArray(capacity) : null;
+        pooled = 0;
+    }
+
+    public int pooledNodes(){
+        //Number of removed nodes currently waiting for reuse
+        return pooled;
+    }
+
+    public double lazyDeletes(){
+        return maxTombstoneRatio;
+    }
+
+    public void lazyDeletes(double maxTombstoneRatio){
+        //Opt-in lazy deletes for delete-heavy bursts : remove() only marks the node as a tombstone in O(log n),
+        //without any rotation. Lookups, iterators, size, rank & digest skip tombstones, and the tree is rebuilt
+        //without them in one O(n) pass once they make up more than maxTombstoneRatio of its nodes.
+        //1 never compacts by itself, see compact(). 0 turns lazy deletes off and compacts right away.
+        if(maxTombstoneRatio < 0 || maxTombstoneRatio > 1){
+            throw new IllegalArgumentException("maxTombstoneRatio must be between 0 and 1, got " + maxTombstoneRatio);
+        }
+        checkWritable();
+        this.maxTombstoneRatio = maxTombstoneRatio;
+        if(maxTombstoneRatio == 0){
+            compact();
+        }
+    }
+
+    public int tombstones(){
+        //Number of lazily deleted nodes still linked in the tree
+        return root == null ? 0 : root.tombstones();
+    }
+
+    public BalancePolicy balancePolicy(){
+        return balancePolicy;
+    }
+
+    public void balancePolicy(BalancePolicy balancePolicy){
+        //Switching policy rebuilds the tree balanced in O(n), since each policy relies on its own invariants
+        checkWritable();
+        if(balancePolicy != this.balancePolicy){
+            this.balancePolicy = balancePolicy;
+            rebalance();
+        }
+    }
+
     /***************************
      Private methods
      ***************************/
 
+    private void checkWritable(){
+        if(readOnly){
+            throw new UnsupportedOperationException("This tree is a read-only snapshot");
+        }
+    }
+
+    private AvlNode <T> editable(AvlNode <T> node){
+        //Path copying : returns the node itself if it belongs to the current epoch, or a copy of it otherwise.
+        //Nodes of older epochs may be shared with a snapshot and must never be modified.
+        if(node.epoch() == epoch){
+            return node;
+        }
+        return node.copy(epoch);
+    }
+
+    private AvlNode <T> newNode(T data){
+        //Takes a node from the pool when recycling is on and one is available
+        if(pooled == 0){
+            return new AvlNode<>(data);
+        }
+        AvlNode <T> node = pool[--pooled];
+        pool[pooled] = null;
+        node.reset(data, data.hashCode());
+        return node;
+    }
+
+    private void recycle(AvlNode <T> node){
+        //Nodes of older epochs may be shared with a snapshot and must never be reused
+        if(pool != null && pooled < pool.length && node.epoch() == epoch){
+            //Unlinked so that it doesn't keep removed subtrees alive
+            node.left(null);
+            node.right(null);
+            pool[pooled++] = node;
+        }
+    }
+
+    private static int compare(AvlNode <?> a, AvlNode <?> b){
+        //Tree order : by ID, then by seq among duplicates
+        int cmp = Integer.compare(a.id(), b.id());
+        return cmp != 0 ? cmp : Integer.compare(a.seq(), b.seq());
+    }
+
     private AvlNode <T> leftRotation(AvlNode <T> node){
         //Keeps the tree balanced. Don't modify it unless you know what you're doing.
-        AvlNode <T> temp = node.right();
+        //Heights are refreshed by the child setters : node first, then its new parent temp.
+        node = editable(node);
+        AvlNode <T> temp = editable(node.right());
         node.right(temp.left());
         temp.left(node);
         return temp;
@@ -110,7 +332,8 @@ public class AvlTree <T> implements Serializable {
 
     private AvlNode <T> rightRotation(AvlNode <T> node) {
         //Keeps the tree balanced. Don't modify it unless you know what you're doing.
-        AvlNode<T> temp = node.left();
+        node = editable(node);
+        AvlNode<T> temp = editable(node.left());
         node.left(temp.right());
         temp.right(node);
         return temp;
@@ -121,73 +344,335 @@ public class AvlTree <T> implements Serializable {
         return height(node.left()) - height(node.right());
     }
 
-    private AvlNode <T> uniqueId(AvlNode <T> node){
-        //Everytime a node is inserted into the tree, this method is called.
-        //It will change current node ID if another node has the same ID.
-        //This method becomes slow if your node count approaches 2^31-1.
-        //If you reach that point, consider reworking this tree ID system to String IDs.
-        if(contains(node.id())){
-            return uniqueId(randomId(node));
+    private static <T> AvlNode<T>[] sortedNodes(Collection <? extends T> c, int epoch){
+        //Wraps every data object into a node and sorts them by ID. The sort is stable, so equal IDs keep collection order.
+        AvlNode<T>[] nodes = AvlNode.newArray(c.size());
+        int i = 0;
+        for(T data : c){
+            nodes[i] = new AvlNode<>(data);
+            nodes[i++].epoch(epoch);
         }
-        return node;
+        Arrays.sort(nodes, ID_ORDER);
+        return nodes;
     }
 
-    private AvlNode <T> randomId(AvlNode <T> node){
-        //Changes a node ID to another random ID.
-        node.id((rand.nextInt(Integer.MAX_VALUE)));
-        return node;
+    static <T> AvlNode<T> buildBalanced(AvlNode<T>[] sorted, int count){
+        //Links the first count nodes of an array sorted by ID into a perfectly balanced tree in O(n), without recursion.
+        //Ranges are split top-down in breadth-first order, then linked bottom-up by walking that order backwards,
+        //so children always have their cached values ready before their parent is refreshed.
+        if(count == 0){
+            return null;
+        }
+        int[] from = new int[count];
+        int[] to = new int[count];
+        to[0] = count - 1;
+        int tail = 1;
+        for(int head = 0; head < tail; head++){
+            int mid = (from[head] + to[head]) >>> 1;
+            if(from[head] < mid){
+                from[tail] = from[head];
+                to[tail++] = mid - 1;
+            }
+            if(mid < to[head]){
+                from[tail] = mid + 1;
+                to[tail++] = to[head];
+            }
+        }
+        for(int range = count - 1; range >= 0; range--){
+            int mid = (from[range] + to[range]) >>> 1;
+            AvlNode<T> node = sorted[mid];
+            node.left(from[range] < mid ? sorted[(from[range] + mid - 1) >>> 1] : null);
+            node.right(mid < to[range] ? sorted[(mid + 1 + to[range]) >>> 1] : null);
+            //A balanced tree is a valid weak AVL tree with ranks equal to heights
+            node.rank(node.height());
+        }
+        return sorted[(count - 1) >>> 1];
+    }
+
+    private void rebuild(AvlNode<T>[] sorted, int count){
+        //Replaces the tree content with the first count nodes of an array sorted by ID.
+        //ID collisions are resolved in a single pass : when duplicates are allowed, each copy gets the seq
+        //following the previous copy's, otherwise only the first node of each ID is kept.
+        int unique = 0;
+        for(int i = 0; i < count; i++){
+            AvlNode<T> previous = unique > 0 ? sorted[unique - 1] : null;
+            if(previous != null && previous.id() == sorted[i].id()){
+                if(!areDuplicatesAllowed){
+                    continue;
+                }
+                if(sorted[i].seq() <= previous.seq()){
+                    sorted[i].seq(previous.seq() + 1);
+                }
+            }
+            sorted[unique++] = sorted[i];
+        }
+        this.root = buildBalanced(sorted, unique);
+        modCount++;
     }
 
     private int height(AvlNode <T> node){
-        //Returns tree height
+        //Returns tree height. Heights are cached in the nodes, so this runs in O(1).
         if(node == null)
             return 0;
         else
-            return 1 + Math.max(height(node.left()), height(node.right()));
+            return node.height();
     }
 
-    private AvlNode <T> balancedInsertion(AvlNode <T> root, AvlNode <T> insertedNode){
+    private int push(int depth, AvlNode <T> node, boolean isLeft){
+        //Appends node to the path stack shared by add & remove, growing it for trees set by hand with root().
+        //Balanced trees never need more than the initial 64 levels.
+        if(path == null || depth == path.length){
+            int length = path == null ? 64 : 2 * path.length;
+            path = path == null ? AvlNode.newArray(length) : Arrays.copyOf(path, length);
+            turns = turns == null ? new boolean[length] : Arrays.copyOf(turns, length);
+        }
+        path[depth] = node;
+        turns[depth] = isLeft;
+        return depth + 1;
+    }
 
-        //This method takes care of adding nodes while keeping the tree balanced.
+    private AvlNode <T> relink(int depth, int bottom, AvlNode <T> subtree, AvlNode <T> insertedNode){
+        //Walks the path stack back up from depth to bottom, hanging subtree under each node and balancing it,
+        //exactly like the unwinding of a recursive insertion (insertedNode != null) or deletion (insertedNode == null)
+        while(depth > bottom){
+            AvlNode <T> node = editable(path[--depth]);
+            path[depth] = null;
+            if(turns[depth]){
+                node.left(subtree);
+            }else{
+                node.right(subtree);
+            }
+            subtree = balanced(node, turns[depth], insertedNode);
+        }
+        return subtree;
+    }
 
-        //Adding part
-        if (root == null && (areDuplicatesAllowed || !contains(insertedNode.data().hashCode()))){
-            size++;
-            root = insertedNode;
-        }else if(root != null){
+    private AvlNode <T> balanced(AvlNode <T> node, boolean isLeft, AvlNode <T> insertedNode){
+        //One balancing step of the current policy, on a node whose isLeft child was just replaced.
+        //Returns the new root of that subtree.
+        if(balancePolicy == BalancePolicy.WEAK){
+            return insertedNode != null ? weakAfterInsertion(node, isLeft) : weakAfterDeletion(node, isLeft);
+        }
+        if(balancePolicy == BalancePolicy.RELAXED){
+            if(tooDeep && isScapegoat(node, isLeft)){
+                tooDeep = false;
+                return rebuilt(node);
+            }
+            return node;
+        }
+        return insertedNode != null ? balanceAfterInsertion(node, insertedNode) : rebalanced(node);
+    }
+
+    private static int rank(AvlNode <?> node){
+        //Missing children have rank 0, leaves rank 1
+        return node == null ? 0 : node.rank();
+    }
+
+    private AvlNode <T> weakAfterInsertion(AvlNode <T> node, boolean isLeft){
+        //Weak AVL rules : the rank difference between a node and each child is 1 or 2, and leaves have rank 1.
+        //An insertion only breaks them when the child catches up with node (difference 0). Promoting node
+        //fixes it when the sibling is a 1-child, and pushes the problem one level up. Otherwise 1 or 2 rotations end it.
+        AvlNode <T> child = isLeft ? node.left() : node.right();
+        if(rank(node) != rank(child)){
+            return node;
+        }
+        AvlNode <T> sibling = isLeft ? node.right() : node.left();
+        if(rank(node) - rank(sibling) == 1){
+            node.rank(node.rank() + 1);
+            return node;
+        }
+        //child was just promoted, so one of its children is a 1-child and the other a 2-child
+        AvlNode <T> inner = isLeft ? child.right() : child.left();
+        AvlNode <T> newRoot;
+        if(rank(child) - rank(inner) == 2){
+            //Single rotation, node goes down one rank
+            if (metrics != null) metrics.rotation(true, isLeft ? AvlMetrics.Rotation.LL : AvlMetrics.Rotation.RR);
+            newRoot = isLeft ? rightRotation(node) : leftRotation(node);
+            AvlNode <T> lowered = isLeft ? newRoot.right() : newRoot.left();
+            lowered.rank(lowered.rank() - 1);
+            return newRoot;
+        }
+        //Double rotation, inner goes up one rank while child and node go down one
+        if(isLeft){
+            if (metrics != null) metrics.rotation(true, AvlMetrics.Rotation.LR);
+            node.left(leftRotation(child));
+            newRoot = rightRotation(node);
+        }else{
+            if (metrics != null) metrics.rotation(true, AvlMetrics.Rotation.RL);
+            node.right(rightRotation(child));
+            newRoot = leftRotation(node);
+        }
+        newRoot.rank(newRoot.rank() + 1);
+        newRoot.left().rank(newRoot.left().rank() - 1);
+        newRoot.right().rank(newRoot.right().rank() - 1);
+        return newRoot;
+    }
 
-            if (insertedNode.id() < root.id()){
-                root.left(balancedInsertion(root.left(), insertedNode));
+    private AvlNode <T> weakAfterDeletion(AvlNode <T> node, boolean isLeft){
+        //A deletion breaks the weak AVL rules when node became a leaf of rank 2, or when the child fell 3 ranks below node.
+        //Demotions fix it and push the problem one level up. Otherwise 1 or 2 rotations end it.
+        if(node.left() == null && node.right() == null){
+            node.rank(1);
+            return node;
+        }
+        AvlNode <T> child = isLeft ? node.left() : node.right();
+        if(rank(node) - rank(child) < 3){
+            return node;
+        }
+        AvlNode <T> sibling = isLeft ? node.right() : node.left();
+        if(rank(node) - rank(sibling) == 2){
+            node.rank(node.rank() - 1);
+            return node;
+        }
+        AvlNode <T> outer = isLeft ? sibling.right() : sibling.left();
+        AvlNode <T> inner = isLeft ? sibling.left() : sibling.right();
+        if(rank(sibling) - rank(outer) == 2 && rank(sibling) - rank(inner) == 2){
+            //Both node and its sibling go down one rank
+            sibling = editable(sibling);
+            sibling.rank(sibling.rank() - 1);
+            if(isLeft){
+                node.right(sibling);
             }else{
-                root.right(balancedInsertion(root.right(), insertedNode));
+                node.left(sibling);
             }
+            node.rank(node.rank() - 1);
+            return node;
         }
+        AvlNode <T> newRoot;
+        if(rank(sibling) - rank(outer) == 1){
+            //Single rotation : sibling goes up one rank, node down one, or down to 1 if it ends up a leaf
+            if (metrics != null) metrics.rotation(false, isLeft ? AvlMetrics.Rotation.RR : AvlMetrics.Rotation.LL);
+            newRoot = isLeft ? leftRotation(node) : rightRotation(node);
+            newRoot.rank(newRoot.rank() + 1);
+            AvlNode <T> lowered = isLeft ? newRoot.left() : newRoot.right();
+            lowered.rank(lowered.left() == null && lowered.right() == null ? 1 : lowered.rank() - 1);
+            return newRoot;
+        }
+        //Double rotation : inner goes up two ranks, sibling down one and node down two
+        if(isLeft){
+            if (metrics != null) metrics.rotation(false, AvlMetrics.Rotation.RL);
+            node.right(rightRotation(sibling));
+            newRoot = leftRotation(node);
+        }else{
+            if (metrics != null) metrics.rotation(false, AvlMetrics.Rotation.LR);
+            node.left(leftRotation(sibling));
+            newRoot = rightRotation(node);
+        }
+        newRoot.rank(newRoot.rank() + 2);
+        AvlNode <T> lowered = isLeft ? newRoot.left() : newRoot.right();
+        AvlNode <T> raised = isLeft ? newRoot.right() : newRoot.left();
+        lowered.rank(lowered.rank() - 2);
+        raised.rank(raised.rank() - 1);
+        return newRoot;
+    }
+
+    private static int weight(AvlNode <?> node){
+        //Linked nodes in a subtree, tombstones included
+        return node == null ? 0 : node.size() + node.tombstones();
+    }
 
+    private static int maxRelaxedDepth(int weight){
+        //2 log2(weight), rounded up. At most 62 levels, which keeps the optimistic reads of ConcurrentAvlTree bounded.
+        return 2 * (32 - Integer.numberOfLeadingZeros(weight));
+    }
+
+    private static boolean isScapegoat(AvlNode <?> node, boolean isLeft){
+        //Whether the isLeft child holds more than 1/sqrt(2) of node's weight. A node deeper than maxRelaxedDepth()
+        //always has such an ancestor, and rebuilding it balanced brings the node back up.
+        long child = weight(isLeft ? node.left() : node.right());
+        long total = weight(node);
+        return 2 * child * child > total * total;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AvlNode <T> rebuilt(AvlNode <T> root){
+        //Relinks every node of root, tombstones included, into a perfectly balanced subtree in O(n)
         if(root == null){
             return null;
         }
+        AvlNode<T>[] sorted = AvlNode.newArray(weight(root));
+        int count = 0;
+        Iterator<AvlNode<T>> it = new InOrderIterator<>(root);
+        while(it.hasNext()){
+            //Every node gets relinked, so nodes shared with a snapshot are copied first
+            sorted[count++] = editable(it.next());
+        }
+        if(metrics != null){
+            metrics.rebuild(count);
+        }
+        return buildBalanced(sorted, count);
+    }
+
+    private AvlNode <T> balancedInsertion(AvlNode <T> root, AvlNode <T> insertedNode){
+
+        //This method takes care of adding nodes while keeping the tree balanced.
+        //A duplicate goes right of every copy of its ID, so the last copy met on the way down has the highest seq.
+        //Iterative : the way down is recorded in the path stack, then relink() balances on the way back up.
+
+        //Adding part
+        if (balancePolicy == BalancePolicy.WEAK && !ranked) {
+            root = rebuilt(root);
+            ranked = true;
+        }
+        if (!areDuplicatesAllowed && root != null && root.tombstones() > 0 && getById(root, insertedNode.id()) != null){
+            //A live copy may hide behind a tombstone of the same ID, off the path below
+            return root;
+        }
+        int depth = 0;
+        AvlNode <T> node = root;
+        while (node != null){
+            if (metrics != null){
+                pathLength++;
+            }
+            if (insertedNode.id() == node.id() && !areDuplicatesAllowed && !node.deleted()){
+                //Rejected, nothing changes
+                while (depth > 0){
+                    path[--depth] = null;
+                }
+                return root;
+            }
+            boolean isLeft = insertedNode.id() < node.id();
+            if (!isLeft && insertedNode.id() == node.id()){
+                insertedNode.seq(node.seq() + 1);
+            }
+            depth = push(depth, node, isLeft);
+            node = isLeft ? node.left() : node.right();
+        }
 
         //Balancing part
-        root = balanceAfterInsertion(root, insertedNode);
+        return hang(depth, root, insertedNode);
+    }
+
+    private AvlNode <T> hang(int depth, AvlNode <T> root, AvlNode <T> insertedNode){
+        //Hangs insertedNode under the last node of the path stack, then balances the way back up to root
+        tooDeep = balancePolicy == BalancePolicy.RELAXED && depth + 1 > maxRelaxedDepth(weight(root) + 1);
+        root = relink(depth, 0, insertedNode, insertedNode);
+        tooDeep = false;
         return root;
     }
 
     private AvlNode<T> balanceAfterInsertion(AvlNode<T> root, AvlNode<T> insertedNode) {
         if (getBalance(root) > 1) {
-            if (insertedNode.id() < root.left().id()) {
+            if (compare(insertedNode, root.left()) < 0) {
                 // Unbalanced tree, case left-left
+                if (metrics != null) metrics.rotation(true, AvlMetrics.Rotation.LL);
                 root = rightRotation(root);
             } else {
                 // Unbalanced tree, case left-right
+                if (metrics != null) metrics.rotation(true, AvlMetrics.Rotation.LR);
+                root = editable(root);
                 root.left(leftRotation(root.left()));
                 root = rightRotation(root);
             }
         } else if (getBalance(root) < -1) {
-            if (insertedNode.id() > root.right().id()) {
+            if (compare(insertedNode, root.right()) > 0) {
                 // Unbalanced tree, case right-right
+                if (metrics != null) metrics.rotation(true, AvlMetrics.Rotation.RR);
                 root = leftRotation(root);
             } else {
                 // Unbalanced tree, case right-left
+                if (metrics != null) metrics.rotation(true, AvlMetrics.Rotation.RL);
+                root = editable(root);
                 root.right(rightRotation(root.right()));
                 root = leftRotation(root);
             }
@@ -196,16 +681,165 @@ public class AvlTree <T> implements Serializable {
     }
 
     private AvlNode <T> getById(AvlNode <T> root, int id){
-        //Returns the node with the given ID or null
-        if (root == null) {
-            return null;
-        } else if (root.id() == id) {
-            return root;
-        } else if (id < root.id()) {
-            return getById(root.left(), id);
+        //Returns the first copy (lowest seq) of the node with the given ID or null
+        if(root != null && root.tombstones() > 0){
+            //Tombstones may sit anywhere among the copies : find the first live node at or after id by rank instead
+            int rank = countBelow(id);
+            AvlNode <T> node = rank < size() ? select(rank) : null;
+            return node != null && node.id() == id ? node : null;
+        }
+        AvlNode <T> found = null;
+        while (root != null) {
+            if (id < root.id()) {
+                root = root.left();
+            } else if (id > root.id()) {
+                root = root.right();
+            } else {
+                found = root;
+                root = root.left();
+            }
+        }
+        return found;
+    }
+
+    private AvlNode <T> measuredGet(int id){
+        //Same walk as getById(), counting its length. The count stays local since readers may run concurrently.
+        long start = System.nanoTime();
+        AvlNode <T> node = this.root;
+        AvlNode <T> found = null;
+        int steps = 0;
+        while (node != null) {
+            steps++;
+            if (id < node.id()) {
+                node = node.left();
+            } else if (id > node.id()) {
+                node = node.right();
+            } else {
+                found = node;
+                node = node.left();
+            }
+        }
+        if(found != null && this.root.tombstones() > 0){
+            found = getById(this.root, id);
+        }
+        metrics.operation(AvlMetrics.Operation.LOOKUP, id, steps, start, size());
+        return found;
+    }
+
+    private AvlNode <T> find(AvlNode <T> target){
+        //Returns the node with the same ID and seq as target or null
+        AvlNode <T> node = this.root;
+        while (node != null) {
+            int cmp = compare(target, node);
+            if (cmp == 0) {
+                return node.deleted() ? null : node;
+            }
+            node = cmp < 0 ? node.left() : node.right();
+        }
+        return null;
+    }
+
+    private void collectId(AvlNode <T> node, int id, List<AvlNode<T>> result){
+        //Adds every copy of the given ID to result, by ascending seq, in O(log n + copies)
+        if (node == null) {
+            return;
+        }
+        if (id < node.id()) {
+            collectId(node.left(), id, result);
+        } else if (id > node.id()) {
+            collectId(node.right(), id, result);
         } else {
-            return getById(root.right(), id);
+            collectId(node.left(), id, result);
+            if (!node.deleted()) {
+                result.add(node);
+            }
+            collectId(node.right(), id, result);
+        }
+    }
+
+    private int size(AvlNode <T> node){
+        return node == null ? 0 : node.size();
+    }
+
+    private static int own(AvlNode <?> node){
+        //1 for a live node, 0 for a tombstone
+        return node.deleted() ? 0 : 1;
+    }
+
+    private int countBelow(long bound){
+        //Number of nodes with an ID strictly lower than bound, in O(log n), thanks to cached subtree sizes.
+        int count = 0;
+        AvlNode <T> node = this.root;
+        while(node != null){
+            if(node.id() < bound){
+                count += size(node.left()) + own(node);
+                node = node.right();
+            }else{
+                node = node.left();
+            }
         }
+        return count;
+    }
+
+    private int countBefore(AvlNode <T> target){
+        //Number of nodes ordered before target (lower ID, or same ID and lower seq), in O(log n)
+        int count = 0;
+        AvlNode <T> node = this.root;
+        while(node != null){
+            if(compare(node, target) < 0){
+                count += size(node.left()) + own(node);
+                node = node.right();
+            }else{
+                node = node.left();
+            }
+        }
+        return count;
+    }
+
+    private long digestBelow(AvlNode <T> node, long bound){
+        //Digest of every node with an ID strictly lower than bound, in O(log n).
+        //Works because a subtree digest is the plain sum of its nodes digests.
+        long digest = 0;
+        while(node != null){
+            if(node.id() < bound){
+                digest += node.digest() - (node.right() == null ? 0 : node.right().digest());
+                node = node.right();
+            }else{
+                node = node.left();
+            }
+        }
+        return digest;
+    }
+
+    private long digestBetween(long lowerBound, long upperBound){
+        //Digest of every node with lowerBound < ID < upperBound
+        return digestBelow(this.root, upperBound) - digestBelow(this.root, lowerBound + 1);
+    }
+
+    private int countBetween(long lowerBound, long upperBound){
+        //Number of nodes with lowerBound < ID < upperBound
+        return countBelow(upperBound) - countBelow(lowerBound + 1);
+    }
+
+    private void collectDiff(AvlNode <T> node, long lowerBound, long upperBound, AvlTree <T> other, List<AvlNode<T>> result){
+        //Adds to result every node of this subtree with no identical (id, data) node in the other tree.
+        //The subtree holds exactly this tree's IDs between both bounds, so a matching size & digest on the same range
+        //in the other tree means there is nothing to report below this node.
+        if(node == null || (node.size() == other.countBetween(lowerBound, upperBound)
+                && node.digest() == other.digestBetween(lowerBound, upperBound))){
+            return;
+        }
+        List<AvlNode<T>> copies = new ArrayList<>();
+        other.collectId(other.root, node.id(), copies);
+        boolean matched = false;
+        for(AvlNode<T> copy : copies){
+            matched |= copy.ownDigest() == node.ownDigest();
+        }
+        if(!matched && !node.deleted()){
+            result.add(node);
+        }
+        collectDiff(node.left(), lowerBound, node.id(), other, result);
+        collectDiff(node.right(), node.id(), upperBound, other, result);
     }
 
     private AvlNode <T> getMinValue(AvlNode <T> node) {
@@ -219,66 +853,365 @@ public class AvlTree <T> implements Serializable {
     private AvlNode <T> remove(AvlNode <T> root, AvlNode <T> target){
 
         //Takes care of removing the target node while keeping the tree balanced.
+        //Iterative, with the same steps and rotations as a recursive removal. See relink().
 
-        if (root == null) {
-            return null;
+        //Deletion part
+        if (balancePolicy == BalancePolicy.WEAK && !ranked) {
+            root = rebuilt(root);
+            ranked = true;
         }
+        int depth = 0;
+        AvlNode <T> node = root;
+        int cmp;
+        while (node != null && (cmp = compare(target, node)) != 0) {
+            if (metrics != null) {
+                pathLength++;
+            }
+            depth = push(depth, node, cmp < 0);
+            node = cmp < 0 ? node.left() : node.right();
+        }
+        if (node == null) {
+            //Not found, nothing changes
+            while (depth > 0) {
+                path[--depth] = null;
+            }
+            return root;
+        }
+        if (metrics != null) {
+            pathLength++;
+        }
+        return unlink(depth, node);
+    }
 
-        //Deletion part
-        if (target.id() < root.id()) {
-            root.left(remove(root.left(), target));
-        } else if (target.id() > root.id()) {
-            root.right(remove(root.right(), target));
+    private AvlNode <T> unlink(int depth, AvlNode <T> node){
+        //Removes node, found below the path stack of the given depth, then balances the way back up to the root
+        AvlNode <T> subtree;
+        if ((node.left() == null) || (node.right() == null)) {
+            subtree = node.left() == null ? node.right() : node.left();
         } else {
-            if ((root.left() == null) || (root.right() == null)) {
-                AvlNode <T> temp;
-                size--;
-                if (root.left() == null) {
-                    temp = root.right();
-                } else {
-                    temp = root.left();
+            //The in-order successor takes the removed node's place, so nodes keep their id and data.
+            //It is unlinked first, balancing the path down to it, then relinked in place of node.
+            int top = depth;
+            AvlNode <T> successor = node.right();
+            while (successor.left() != null) {
+                if (metrics != null) {
+                    pathLength++;
                 }
-                root = temp;
-            } else {
-                AvlNode <T> temp = getMinValue(root.right());
-                root.id(temp.id());
-                root.right(remove(root.right(), target));
+                top = push(top, successor, true);
+                successor = successor.left();
             }
+            if (metrics != null) {
+                pathLength++;
+            }
+            AvlNode <T> right = relink(top, depth, successor.right(), null);
+            successor = editable(successor);
+            successor.right(right);
+            successor.left(node.left());
+            successor.rank(node.rank());
+            subtree = balanced(successor, false, null);
         }
 
-        if (root == null) {
-            return null;
+        //Balancing part
+        return relink(depth, 0, subtree, null);
+    }
+
+    private AvlNode <T> rebalanced(AvlNode <T> node){
+        AvlNode <T> newRoot = balanceAfterDeletion(node);
+        return newRoot != null ? newRoot : node;
+    }
+
+    private AvlNode <T> markDeleted(AvlNode <T> root, AvlNode <T> target){
+        //Lazy counterpart of remove() : walks down to target and turns it into a tombstone.
+        //The path is copied and refreshed like for any write, but the shape doesn't change, so there is no rotation.
+        int depth = 0;
+        AvlNode <T> node = root;
+        int cmp;
+        while (node != null && (cmp = compare(target, node)) != 0) {
+            if (metrics != null) {
+                pathLength++;
+            }
+            depth = push(depth, node, cmp < 0);
+            node = cmp < 0 ? node.left() : node.right();
+        }
+        if (node == null) {
+            while (depth > 0) {
+                path[--depth] = null;
+            }
+            return root;
         }
+        if (metrics != null) {
+            pathLength++;
+        }
+        return tombstone(depth, node);
+    }
 
-        //Balancing part
-        AvlNode<T> newRoot = balanceAfterDeletion(root);
-        if (newRoot != null) return newRoot;
-        return root;
+    private AvlNode <T> tombstone(int depth, AvlNode <T> node){
+        //Turns node, found below the path stack of the given depth, into a tombstone and refreshes the way back up
+        node = editable(node);
+        node.deleted(true);
+        return relink(depth, 0, node, null);
+    }
+
+    private AvlNode <T> withoutTombstones(AvlNode <T> root, List<AvlNode<T>> dead){
+        //Relinks the live nodes of root into a perfectly balanced tree in O(n), adding the tombstones to dead if not null
+        AvlNode<T>[] live = AvlNode.newArray(root.size());
+        int count = 0;
+        Iterator<AvlNode<T>> it = new InOrderIterator<>(root);
+        while(it.hasNext()){
+            AvlNode<T> node = it.next();
+            if(!node.deleted()){
+                //Every node gets relinked, so nodes shared with a snapshot are copied first
+                live[count++] = editable(node);
+            }else if(dead != null){
+                dead.add(node);
+            }
+        }
+        return buildBalanced(live, count);
+    }
+
+    private void added(AvlNode <T> node, int before, long start){
+        //Last step of every add : journal & metrics. The add was rejected when the size didn't change.
+        modCount++;
+        if(journal != null && size() > before){
+            journal.logAdd(node);
+        }
+        if(metrics != null){
+            if(size() == before){
+                metrics.rejectedDuplicate();
+            }else if(node.seq() > 0){
+                metrics.duplicate();
+            }
+            metrics.operation(AvlMetrics.Operation.ADD, node.id(), pathLength, start, size());
+        }
+    }
+
+    private void removed(AvlNode <T> target, int position, long start){
+        //Last step of every remove : journal & metrics, then compacts once there are too many tombstones,
+        //or recycles the unlinked node. position is the rank of target among the copies of its ID.
+        modCount++;
+        if(journal != null){
+            journal.logRemove(target.id(), position);
+        }
+        if(metrics != null){
+            metrics.operation(AvlMetrics.Operation.REMOVE, target.id(), pathLength, start, size());
+        }
+        if(maxTombstoneRatio > 0){
+            int tombstones = tombstones();
+            if(tombstones > maxTombstoneRatio * (size() + tombstones)){
+                compact();
+            }
+        }else{
+            recycle(target);
+        }
     }
 
     private AvlNode<T> balanceAfterDeletion(AvlNode<T> root) {
         int balance = getBalance(root);
 
         if (balance > 1 && getBalance(root.left()) >= 0) {
+            if (metrics != null) metrics.rotation(false, AvlMetrics.Rotation.LL);
             return rightRotation(root);
         }
 
         if (balance > 1 && getBalance(root.left()) < 0) {
+            if (metrics != null) metrics.rotation(false, AvlMetrics.Rotation.LR);
+            root = editable(root);
             root.left(leftRotation(root.left()));
             return rightRotation(root);
         }
 
         if (balance < -1 && getBalance(root.right()) <= 0) {
+            if (metrics != null) metrics.rotation(false, AvlMetrics.Rotation.RR);
             return leftRotation(root);
         }
 
         if (balance < -1 && getBalance(root.right()) > 0) {
+            if (metrics != null) metrics.rotation(false, AvlMetrics.Rotation.RL);
+            root = editable(root);
             root.right(rightRotation(root.right()));
             return leftRotation(root);
         }
         return null;
     }
 
+    private static <T> AvlNode<T>[] pair(AvlNode<T> first, AvlNode<T> second){
+        AvlNode<T>[] pair = AvlNode.newArray(2);
+        pair[0] = first;
+        pair[1] = second;
+        return pair;
+    }
+
+    private AvlNode <T> join(AvlNode <T> left, AvlNode <T> middle, AvlNode <T> right){
+        //Links left, middle and right into one balanced tree, every node of left being ordered before middle
+        //and every node of right after it. Runs in O(|height(left) - height(right)|) : the smaller tree is hung
+        //at the matching height along the spine of the taller one, then the existing rotations fix the balance.
+        middle = editable(middle);
+        if(height(left) > height(right) + 1){
+            return joinRight(left, middle, right);
+        }
+        if(height(right) > height(left) + 1){
+            return joinLeft(left, middle, right);
+        }
+        middle.left(left);
+        middle.right(right);
+        return middle;
+    }
+
+    private AvlNode <T> joinRight(AvlNode <T> left, AvlNode <T> middle, AvlNode <T> right){
+        //left is the taller tree : walk down its right spine
+        left = editable(left);
+        if(height(left.right()) <= height(right) + 1){
+            middle.left(left.right());
+            middle.right(right);
+            left.right(middle);
+            if(height(middle) > height(left.left()) + 1){
+                //Case right-left
+                left.right(rightRotation(middle));
+                return leftRotation(left);
+            }
+            return left;
+        }
+        left.right(joinRight(left.right(), middle, right));
+        return getBalance(left) < -1 ? leftRotation(left) : left;
+    }
+
+    private AvlNode <T> joinLeft(AvlNode <T> left, AvlNode <T> middle, AvlNode <T> right){
+        //Mirror of joinRight()
+        right = editable(right);
+        if(height(right.left()) <= height(left) + 1){
+            middle.left(left);
+            middle.right(right.left());
+            right.left(middle);
+            if(height(middle) > height(right.right()) + 1){
+                //Case left-right
+                right.left(leftRotation(middle));
+                return rightRotation(right);
+            }
+            return right;
+        }
+        right.left(joinLeft(left, middle, right.left()));
+        return getBalance(right) > 1 ? rightRotation(right) : right;
+    }
+
+    private AvlNode <T> join(AvlNode <T> left, AvlNode <T> right){
+        //Same as join() above without a middle node : the last node of left takes that place
+        if(left == null){
+            return right;
+        }
+        if(right == null){
+            return left;
+        }
+        AvlNode<T>[] parts = splitLast(left);
+        return join(parts[0], parts[1], right);
+    }
+
+    private AvlNode <T>[] splitLast(AvlNode <T> node){
+        //Returns {node without its last node, last node}, in O(log n)
+        if(node.right() == null){
+            return pair(node.left(), node);
+        }
+        AvlNode<T>[] parts = splitLast(node.right());
+        parts[0] = join(node.left(), node, parts[0]);
+        return parts;
+    }
+
+    private AvlNode <T>[] splitBelow(AvlNode <T> node, long bound){
+        //Returns {nodes with an ID lower than bound, nodes with an ID of at least bound}, both balanced, in O(log n).
+        //Nodes off the search path are never touched : every subtree hanging from it is joined back as a whole.
+        if(node == null){
+            return pair(null, null);
+        }
+        if(node.id() < bound){
+            AvlNode<T>[] parts = splitBelow(node.right(), bound);
+            parts[0] = join(node.left(), node, parts[0]);
+            return parts;
+        }
+        AvlNode<T>[] parts = splitBelow(node.left(), bound);
+        parts[1] = join(parts[1], node, node.right());
+        return parts;
+    }
+
+    private AvlNode <T> setOperation(SetOperation operation, AvlNode <T> a, AvlNode <T> b){
+        //Join-based union, intersection or difference of two subtrees, in O(m log(n/m + 1)) for sizes m <= n.
+        //The root ID of a splits both trees in three : lower IDs, copies of that ID, higher IDs.
+        //Lower and higher parts are independent, so large ones are computed in parallel.
+        if(a == null){
+            return operation == SetOperation.UNION ? b : null;
+        }
+        if(b == null){
+            return operation == SetOperation.INTERSECTION ? null : a;
+        }
+        int id = a.id();
+        //Other copies of the ID in a are its neighbours, only split them off when there are some
+        AvlNode<T> previous = last(a.left());
+        AvlNode<T> next = first(a.right());
+        AvlNode<T>[] aLower = previous != null && previous.id() == id ? splitBelow(a.left(), id) : pair(a.left(), null);
+        AvlNode<T>[] aHigher = next != null && next.id() == id ? splitBelow(a.right(), id + 1L) : pair(null, a.right());
+        AvlNode<T>[] bLower = splitBelow(b, id);
+        AvlNode<T>[] bHigher = splitBelow(bLower[1], id + 1L);
+
+        AvlNode<T> left;
+        AvlNode<T> right;
+        if(a.size() + b.size() > PARALLEL_THRESHOLD){
+            SetOperationTask<T> task = new SetOperationTask<>(this, operation, aLower[0], bLower[0]);
+            task.fork();
+            right = setOperation(operation, aHigher[1], bHigher[1]);
+            left = task.join();
+        }else{
+            left = setOperation(operation, aLower[0], bLower[0]);
+            right = setOperation(operation, aHigher[1], bHigher[1]);
+        }
+
+        //Copies of the ID come from a only : a wins the union, and b only tells whether the ID is there
+        boolean found = bHigher[0] != null;
+        if(operation == SetOperation.UNION || (operation == SetOperation.INTERSECTION) == found){
+            return join(join(left, aLower[1]), a, join(aHigher[0], right));
+        }
+        return join(left, right);
+    }
+
+    private AvlTree<T> setOperation(SetOperation operation, AvlTree<T> other, boolean areDuplicatesAllowed){
+        //Runs a set operation into a new tree, sharing the untouched nodes of both trees like a snapshot does
+        AvlTree<T> result = sharedWith(areDuplicatesAllowed, other);
+        //A tombstone would stand for its ID in the split & join below, so inputs with some are compacted into the result first
+        AvlNode<T> a = tombstones() == 0 ? this.root : result.withoutTombstones(this.root, null);
+        AvlNode<T> b = other.tombstones() == 0 ? other.root : result.withoutTombstones(other.root, null);
+        if(size() + other.size() > PARALLEL_THRESHOLD){
+            result.root = ForkJoinPool.commonPool().invoke(new SetOperationTask<>(result, operation, a, b));
+        }else{
+            result.root = result.setOperation(operation, a, b);
+        }
+        return result;
+    }
+
+    private AvlTree<T> sharedWith(boolean areDuplicatesAllowed, AvlTree<T> other){
+        //New empty tree meant to share nodes with this tree and other. Every tree involved moves to a fresh epoch,
+        //so none of them modifies in place a node that another one can see.
+        AvlTree<T> result = new AvlTree<>(areDuplicatesAllowed);
+        result.savePath = this.savePath;
+        result.codec = this.codec;
+        result.balancePolicy = this.balancePolicy;
+        result.epoch = EPOCHS.incrementAndGet();
+        if(!this.readOnly){
+            this.epoch = EPOCHS.incrementAndGet();
+        }
+        if(!other.readOnly && other != this){
+            other.epoch = EPOCHS.incrementAndGet();
+        }
+        return result;
+    }
+
+    private AvlNode <T> first(AvlNode <T> node){
+        return node == null ? null : getMinValue(node);
+    }
+
+    private AvlNode <T> last(AvlNode <T> node){
+        while (node != null && node.right() != null) {
+            node = node.right();
+        }
+        return node;
+    }
+
     private void print(AvlNode <T> node, int level){
         //Prints the tree in the console using IDs. Level must be zero, node can be any node.
         if(node==null){
@@ -314,7 +1247,124 @@ public class AvlTree <T> implements Serializable {
         }else{
             System.out.println(root.data());
         }
-        printData(root.left(), level+1);
+        printData(root.left(), level+1);
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    void replaceContent(AvlNode<T>[] sorted){
+        //Replaces the tree content with unlinked nodes sorted by ID, as returned by AvlFileFormat.read()
+        checkWritable();
+        for(AvlNode<T> node : sorted){
+            node.epoch(epoch);
+        }
+        this.root = buildBalanced(sorted, sorted.length);
+        modCount++;
+    }
+
+    int modCount(){
+        return modCount;
+    }
+
+    void wrapped(){
+        //Called by ConcurrentAvlTree : turns node recycling off for good, see recycleNodes()
+        isWrapped = true;
+        pool = null;
+        pooled = 0;
+    }
+
+    int nodesAfter(int id, int seq, AvlNode<T>[] batch){
+        //Fills batch with the first live nodes ordered after (id, seq) and returns how many, in O(log n + batch).
+        //seq -1 starts at the first copy of id. Used by ShardedAvlTree to read a shard a batch at a time.
+        ArrayDeque<AvlNode<T>> stack = new ArrayDeque<>();
+        AvlNode<T> node = this.root;
+        while(node != null){
+            int cmp = Integer.compare(node.id(), id);
+            if(cmp == 0){
+                cmp = Integer.compare(node.seq(), seq);
+            }
+            if(cmp > 0){
+                stack.push(node);
+                node = node.left();
+            }else{
+                node = node.right();
+            }
+        }
+        int count = 0;
+        while(count < batch.length && !stack.isEmpty()){
+            node = stack.pop();
+            if(!node.deleted()){
+                batch[count++] = node;
+            }
+            for(AvlNode<T> child = node.right(); child != null; child = child.left()){
+                stack.push(child);
+            }
+        }
+        return count;
+    }
+
+    boolean addBelow(AvlNode<T>[] ancestors, int depth, AvlNode<T> node){
+        //Finger insertion for AvlCursor : same as add(node), but the way down is already known. ancestors[0..depth)
+        //runs from the root to the node that gets node as a new child, found by the cursor without starting over
+        //from the root. Only the way back up remains, refreshing cached values and balancing.
+        //Returns false when node is rejected as a duplicate.
+        if((balancePolicy == BalancePolicy.WEAK && !ranked) || (!areDuplicatesAllowed && tombstones() > 0)){
+            //The tree gets rebuilt first, or a live copy may hide behind a tombstone off the path : regular add
+            int before = size();
+            add(node);
+            return size() > before;
+        }
+        checkWritable();
+        long start = metrics == null ? 0 : System.nanoTime();
+        pathLength = depth;
+        node.epoch(epoch);
+        node.seq(0);
+        int before = size();
+        //Copies of an ID go right of each other, so the last ancestor node goes right of is its predecessor
+        AvlNode<T> predecessor = null;
+        int top = 0;
+        for(int i = 0; i < depth; i++){
+            boolean isLeft = node.id() < ancestors[i].id();
+            if(!isLeft){
+                predecessor = ancestors[i];
+            }
+            top = push(top, ancestors[i], isLeft);
+        }
+        if(predecessor != null && predecessor.id() == node.id()){
+            if(!areDuplicatesAllowed){
+                while(top > 0){
+                    path[--top] = null;
+                }
+                added(node, before, start);
+                return false;
+            }
+            node.seq(predecessor.seq() + 1);
+        }
+        this.root = hang(top, this.root, node);
+        added(node, before, start);
+        return true;
+    }
+
+    void removeAt(AvlNode<T>[] ancestors, int depth){
+        //Finger deletion for AvlCursor : same as remove(ancestors[depth - 1]), but the way down is already known
+        AvlNode<T> target = ancestors[depth - 1];
+        if(balancePolicy == BalancePolicy.WEAK && !ranked && maxTombstoneRatio == 0){
+            //The tree gets rebuilt first : regular remove
+            remove(target);
+            return;
+        }
+        checkWritable();
+        int position = journal == null ? 0 : countBefore(target) - countBelow(target.id());
+        long start = metrics == null ? 0 : System.nanoTime();
+        pathLength = depth;
+        int top = 0;
+        for(int i = 0; i < depth - 1; i++){
+            top = push(top, ancestors[i], compare(target, ancestors[i]) < 0);
+        }
+        this.root = maxTombstoneRatio > 0 ? tombstone(top, target) : unlink(top, target);
+        removed(target, position, start);
     }
 
     /***************************
@@ -322,47 +1372,48 @@ public class AvlTree <T> implements Serializable {
      ***************************/
 
     public boolean isEmpty(){
-        return root == null;
+        return size() == 0;
     }
 
     public void clear(){
         root(null);
+        if(journal != null){
+            journal.logClear();
+        }
     }
 
     public int height(){
         return height(root());
     }
 
+    public long digest(){
+        //64-bit digest of the whole tree content. Maintained incrementally, so this runs in O(1).
+        return root == null ? 0 : root.digest();
+    }
+
     public void add(AvlNode <T> node){
         //Wrapper method. See balancedInsertion() for details.
-        if(this.root == null){
-            this.root = node;
-            size++;
-            return;
-        }
-
-        if(areDuplicatesAllowed){
-            node = uniqueId(node);
-        }
-
+        //The node joins the current epoch : don't add a node that is still part of another tree or snapshot.
+        //Its seq is set by the tree : 0, or the next one after the existing copies of its ID.
+        checkWritable();
+        long start = metrics == null ? 0 : System.nanoTime();
+        pathLength = 0;
+        node.epoch(epoch);
+        node.seq(0);
+        int before = size();
         this.root = balancedInsertion(this.root, node);
+        added(node, before, start);
     }
 
     public void add(T data){
         //Wrapper method. See balancedInsertion() for details.
-        if(this.root == null){
-            this.root = new AvlNode <>(data);
-            size++;
-            return;
+        AvlNode <T> node = newNode(data);
+        int before = size();
+        add(node);
+        if(size() == before){
+            //Rejected duplicate
+            recycle(node);
         }
-
-        AvlNode <T> node = new AvlNode <>(data);
-
-        if(areDuplicatesAllowed){
-            node = uniqueId(node);
-        }
-
-        this.root = balancedInsertion(this.root, node);
     }
 
     public void addAll(Collection <? extends AvlNode <T>> c){
@@ -377,30 +1428,83 @@ public class AvlTree <T> implements Serializable {
         }
     }
 
+    public void bulkAdd(Collection <? extends T> c){
+        //Merge mode for large batches : the batch is sorted, merged with the in-order content of the tree,
+        //and the whole tree is rebuilt balanced in O(n + m log m). Nodes already in the tree win ID collisions.
+        //For small batches, addAllData() is cheaper since it only touches O(m log n) nodes.
+        checkWritable();
+        AvlNode<T>[] batch = sortedNodes(c, epoch);
+        List<AvlNode<T>> existing = new ArrayList<>(size());
+        for(AvlNode<T> node : this){
+            //Every node gets relinked, so nodes shared with a snapshot are copied first
+            existing.add(editable(node));
+        }
+        AvlNode<T>[] merged = AvlNode.newArray(existing.size() + batch.length);
+        int count = 0;
+        int next = 0;
+        for(AvlNode<T> node : existing){
+            while(next < batch.length && batch[next].id() < node.id()){
+                merged[count++] = batch[next++];
+            }
+            merged[count++] = node;
+        }
+        while(next < batch.length){
+            merged[count++] = batch[next++];
+        }
+        rebuild(merged, count);
+        if(journal != null){
+            //Logged in ID order, so replaying them one by one gives every copy the same seq
+            for(AvlNode<T> node : batch){
+                if(areDuplicatesAllowed || get(node.id()) == node){
+                    journal.logAdd(node);
+                }
+            }
+        }
+    }
+
     public void remove(int id){
         //Wrapper method. See private remove() for details.
-        if(contains(id)){
-            this.root = remove(this.root, get(id));
+        //Removes the first copy of id
+        checkWritable();
+        AvlNode <T> target = getById(this.root, id);
+        if(target != null){
+            long start = metrics == null ? 0 : System.nanoTime();
+            pathLength = 0;
+            this.root = maxTombstoneRatio > 0 ? markDeleted(this.root, target) : remove(this.root, target);
+            removed(target, 0, start);
         }
     }
 
     public void remove(AvlNode <T> target){
         //Wrapper method. See private remove() for details.
+        //Removes the node with the same ID and seq as target
+        checkWritable();
         if(target == null){
             return;
         }
-        if(contains(target)){
-            this.root = remove(this.root, target);
+        target = find(target);
+        if(target != null){
+            //Copies are logged by position among their ID, which survives checkpoints unlike the seq itself
+            int position = journal == null ? 0 : countBefore(target) - countBelow(target.id());
+            long start = metrics == null ? 0 : System.nanoTime();
+            pathLength = 0;
+            this.root = maxTombstoneRatio > 0 ? markDeleted(this.root, target) : remove(this.root, target);
+            removed(target, position, start);
         }
     }
 
     public void remove(T data){
-        //Tries to remove data object using its hashcode. Requires data to have a proper hashcode method.
-        //Will NOT remove a duplicate. If you have "John" stored twice in your tree, only one will have a hashcode based ID (here 2314539).
-        //The other one will have a random ID and cannot be removed this way.
-        //Use remove(get(data)) instead.
+        //Removes the first copy of data. Requires data to have proper hashcode & equals methods.
+        //If you have "John" stored twice in your tree, call it twice or use removeAll(data) to remove both.
         //Use allowDuplicate() to forbid duplicates if needed.
-        remove(data.hashCode());
+        remove(get(data));
+    }
+
+    public void removeAll(T data){
+        //Removes every copy of data
+        for(AvlNode<T> node : getAll(data)){
+            remove(node);
+        }
     }
 
     public void removeAll(Collection <? extends AvlNode <T>> c){
@@ -428,7 +1532,7 @@ public class AvlTree <T> implements Serializable {
     }
 
     public boolean containsData(T data){
-        return get(data.hashCode()) != null;
+        return get(data) != null;
     }
 
     public boolean containsAll(Collection <? extends AvlNode <T>> c){
@@ -450,10 +1554,46 @@ public class AvlTree <T> implements Serializable {
     }
 
     public void allowDuplicates(boolean doWeAllowThem){
+        checkWritable();
         areDuplicatesAllowed = doWeAllowThem;
     }
 
+    public int rank(int id){
+        //Number of nodes with an ID strictly lower than id, in O(log n)
+        return countBelow(id);
+    }
+
+    public AvlNode <T> select(int k){
+        //Returns the node with the k-th smallest ID, starting at 0, in O(log n)
+        if(k < 0 || k >= size()){
+            throw new IndexOutOfBoundsException("Index: " + k + ", Size: " + size());
+        }
+        AvlNode <T> node = this.root;
+        while(true){
+            int leftSize = size(node.left());
+            if(k < leftSize){
+                node = node.left();
+            }else if(k < leftSize + own(node)){
+                return node;
+            }else{
+                k -= leftSize + own(node);
+                node = node.right();
+            }
+        }
+    }
+
+    public int countBetween(int lowestId, int highestId){
+        //Number of nodes with lowestId <= ID <= highestId, in O(log n)
+        if(lowestId > highestId){
+            return 0;
+        }
+        return countBelow((long) highestId + 1) - countBelow(lowestId);
+    }
+
     public AvlNode <T> get(int id){
+        if(metrics != null){
+            return measuredGet(id);
+        }
         return getById(this.root, id);
     }
 
@@ -462,63 +1602,584 @@ public class AvlTree <T> implements Serializable {
     }
 
     public AvlNode <T> get(T data){
-        return get(data.hashCode());
+        //Returns the first copy of data, skipping nodes that only share its hashcode
+        AvlNode <T> node = get(data.hashCode());
+        if(node == null || Objects.equals(node.data(), data)){
+            return node;
+        }
+        List<AvlNode<T>> copies = getAll(data);
+        return copies.isEmpty() ? null : copies.get(0);
+    }
+
+    public List<AvlNode<T>> getAll(T data){
+        //Returns every copy of data in insertion order, in O(log n + copies)
+        List<AvlNode<T>> copies = new ArrayList<>();
+        collectId(this.root, data.hashCode(), copies);
+        copies.removeIf(node -> !Objects.equals(node.data(), data));
+        return copies;
+    }
+
+    public int count(T data){
+        //Number of copies of data
+        return getAll(data).size();
     }
 
     public List<Integer> getIterators(){
         //returns all IDs in the tree for later iteration.
         //Iterators are returned from top to bottom, left to right.
         //Due to tree rotations, it isn't possible to predict exactly the order IDs will have.
-        List <AvlNode<T>> stack = new LinkedList<>();
-        List <AvlNode<T>> temporaryList = new ArrayList<>();
-        List <Integer> result = new ArrayList<>();
-        stack.add(this.root);
-        fillLists(stack, temporaryList);
-        for(AvlNode <T> node : temporaryList){
-            result.add(node.id());
+        List <Integer> result = new ArrayList<>(size());
+        Iterator<AvlNode<T>> it = levelOrderIterator();
+        while(it.hasNext()){
+            result.add(it.next().id());
+        }
+        return result;
+    }
+
+    public AvlTree<T> snapshot(){
+        //Returns an immutable point-in-time view of the tree in O(1), sharing every node with this tree.
+        //This tree moves to a fresh epoch, so its next add & remove copy the nodes on their path instead of
+        //modifying them in place. Handy to save() or iterate while writers keep going.
+        AvlTree<T> snapshot = new AvlTree<>(areDuplicatesAllowed);
+        snapshot.root = this.root;
+        snapshot.savePath = this.savePath;
+        snapshot.codec = this.codec;
+        snapshot.readOnly = true;
+        this.epoch = EPOCHS.incrementAndGet();
+        return snapshot;
+    }
+
+    public List<AvlNode<T>> diff(AvlTree<T> other){
+        //Returns the nodes of both trees that have no identical (id, data) counterpart in the other tree.
+        //Subtrees whose digest matches the same ID range in the other tree are skipped,
+        //so comparing two nearly identical trees costs far less than a full walk.
+        List<AvlNode<T>> result = new ArrayList<>();
+        collectDiff(this.root, Long.MIN_VALUE, Long.MAX_VALUE, other, result);
+        other.collectDiff(other.root, Long.MIN_VALUE, Long.MAX_VALUE, this, result);
+        return result;
+    }
+
+    public void rebalance(){
+        //Rebuilds the tree perfectly balanced in O(n), tombstones included. The background pass of RELAXED trees,
+        //also handy after a lot of removes with any policy.
+        checkWritable();
+        this.root = rebuilt(this.root);
+        ranked = true;
+        modCount++;
+    }
+
+    public void compact(){
+        //Rebuilds the tree without its tombstones, perfectly balanced, in O(n). Called by itself in lazy delete mode.
+        checkWritable();
+        if(tombstones() == 0){
+            return;
+        }
+        List<AvlNode<T>> dead = pool == null ? null : new ArrayList<>();
+        this.root = withoutTombstones(this.root, dead);
+        modCount++;
+        if(dead != null){
+            for(AvlNode<T> node : dead){
+                recycle(node);
+            }
+        }
+    }
+
+    public FrozenAvlTree<T> freeze(){
+        //Returns an immutable copy laid out for fast lookups, in O(n). Meant for read-mostly data, see FrozenAvlTree.
+        //The copy shares its nodes with this tree, which moves to a fresh epoch like snapshot() does.
+        FrozenAvlTree<T> frozen = new FrozenAvlTree<>(this);
+        if(!readOnly){
+            this.epoch = EPOCHS.incrementAndGet();
         }
+        return frozen;
+    }
+
+    public AvlCursor<T> cursor(){
+        //Returns a cursor keeping its position between calls, for sequential or nearly sequential access by ID.
+        //It starts off the tree : call seek(), first() or next() to position it. See AvlCursor.
+        return new AvlCursor<>(this);
+    }
+
+    public AvlTree<T> split(int id){
+        //Moves every node with an ID of at least id into the returned tree, this tree keeping the lower ones.
+        //Runs in O(log n) with the existing rotations, instead of one remove() per moved node. Not journaled.
+        checkWritable();
+        AvlNode<T>[] parts = splitBelow(this.root, id);
+        AvlTree<T> higher = new AvlTree<>(areDuplicatesAllowed);
+        higher.savePath = this.savePath;
+        higher.codec = this.codec;
+        //Both trees own disjoint nodes of the same epoch, so both can keep modifying them in place
+        higher.epoch = this.epoch;
+        higher.balancePolicy = this.balancePolicy;
+        higher.root = parts[1];
+        this.root = parts[0];
+        ranked = false;
+        modCount++;
+        return higher;
+    }
+
+    public static <T> AvlTree<T> join(AvlTree<T> left, AvlTree<T> right){
+        //Returns a tree holding the nodes of both trees, in O(log n). Every ID of left must be lower than every ID
+        //of right. Both trees are left as they are and share their nodes with the result.
+        AvlNode<T> last = left.last(left.root);
+        AvlNode<T> first = right.first(right.root);
+        if(last != null && first != null && last.id() >= first.id()){
+            throw new IllegalArgumentException("Every ID of left must be lower than every ID of right, got "
+                    + last.id() + " >= " + first.id());
+        }
+        AvlTree<T> result = left.sharedWith(left.areDuplicatesAllowed || right.areDuplicatesAllowed, right);
+        result.root = result.join(left.root, right.root);
         return result;
     }
 
+    public AvlTree<T> union(AvlTree<T> other){
+        //Returns a tree holding the nodes of this tree, plus the nodes of other whose ID isn't in this tree.
+        //Runs in O(m log(n/m + 1)) for sizes m <= n, in parallel on the common fork-join pool for large trees,
+        //instead of one contains() and add() per node. Both trees are left as they are and share their nodes with the result.
+        return setOperation(SetOperation.UNION, other, areDuplicatesAllowed || other.areDuplicatesAllowed);
+    }
+
+    public AvlTree<T> intersection(AvlTree<T> other){
+        //Returns a tree holding the nodes of this tree whose ID is also in other. Same costs as union().
+        return setOperation(SetOperation.INTERSECTION, other, areDuplicatesAllowed);
+    }
+
+    public AvlTree<T> difference(AvlTree<T> other){
+        //Returns a tree holding the nodes of this tree whose ID isn't in other. Same costs as union().
+        return setOperation(SetOperation.DIFFERENCE, other, areDuplicatesAllowed);
+    }
+
     public void replace(AvlNode<T> target, AvlNode<T> newNode){
         //Doesn't keep original position
         remove(target);
         add(newNode);
     }
 
+    public void replace(AvlNode<T> target, T data){
+        //Same as above, reusing the node of target for data when recycling is on
+        remove(target);
+        add(data);
+    }
+
     public List <AvlNode <T>> toArrayList(){
         //Turns the tree into an array from top to bottom and left to right.
-        LinkedList <AvlNode <T>> stack = new LinkedList<>();
-        ArrayList <AvlNode <T>> list = new ArrayList<>();
-        stack.add(this.root);
-        fillLists(stack, list);
+        ArrayList <AvlNode <T>> list = new ArrayList<>(size());
+        fillList(list);
         return list;
     }
 
     public List <AvlNode <T>> toLinkedList(){
         //Turns the tree into an array from top to bottom and left to right.
-        LinkedList <AvlNode <T>> stack = new LinkedList<>();
         LinkedList <AvlNode <T>> list = new LinkedList<>();
-        stack.add(this.root);
-        fillLists(stack, list);
+        fillList(list);
         return list;
     }
 
-    private void fillLists(List<AvlNode<T>> stack, List<AvlNode<T>> list) {
-        while(!stack.isEmpty()){
-            list.add(stack.get(0));
-            if(stack.get(0).left() != null){
-                stack.add(stack.get(0).left());
+    private void fillList(List<AvlNode<T>> list) {
+        Iterator<AvlNode<T>> it = levelOrderIterator();
+        while(it.hasNext()){
+            list.add(it.next());
+        }
+    }
+
+    /***************************
+     Iterators
+     ***************************/
+
+    @Override
+    public Iterator<AvlNode<T>> iterator(){
+        //Default iteration is in-order, meaning nodes come sorted by ascending ID.
+        return inOrderIterator();
+    }
+
+    public Iterator<AvlNode<T>> inOrderIterator(){
+        return live(new InOrderIterator<>(this.root));
+    }
+
+    public Iterator<AvlNode<T>> preOrderIterator(){
+        //Node first, then its left subtree, then its right subtree.
+        return live(new PreOrderIterator<>(this.root));
+    }
+
+    public Iterator<AvlNode<T>> levelOrderIterator(){
+        //Top to bottom, left to right. Same order as toArrayList().
+        return live(new LevelOrderIterator<>(this.root));
+    }
+
+    private Iterator<AvlNode<T>> live(Iterator<AvlNode<T>> it){
+        //Tombstones are skipped, at no cost for trees without any
+        return tombstones() == 0 ? it : new LiveIterator<>(it);
+    }
+
+    @Override
+    public Spliterator<AvlNode<T>> spliterator(){
+        //In-order and splittable : parallel streams split it in halves by rank, see InOrderSpliterator.
+        return new InOrderSpliterator<>(this.root, 0, size());
+    }
+
+    public Stream<AvlNode<T>> stream(){
+        //Streams nodes in-order without building an intermediate list.
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<AvlNode<T>> parallelStream(){
+        //Same as stream(), processed on the common fork-join pool. Don't modify the tree while it runs.
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public void parallelForEach(Consumer<? super AvlNode<T>> action){
+        //Calls action on every node from the common fork-join pool, one task per large subtree.
+        //Nodes come in no particular order and action must be thread-safe. Don't modify the tree while it runs.
+        if(this.root != null){
+            ForkJoinPool.commonPool().invoke(new ForEachTask<>(this.root, action));
+        }
+    }
+
+    public <U> U reduce(U identity, BiFunction<U, ? super AvlNode<T>, U> accumulator, BinaryOperator<U> combiner){
+        //Parallel fold over the nodes, with the same contract as Stream.reduce(identity, accumulator, combiner) :
+        //combiner must be associative, and results are combined in-order, so order-sensitive reductions work.
+        if(this.root == null){
+            return identity;
+        }
+        return ForkJoinPool.commonPool().invoke(new ReduceTask<>(this.root, identity, accumulator, combiner));
+    }
+
+    //All iterators below use an array-backed deque and never call equals() or hashCode() on nodes.
+    //They are not fail-fast : modifying the tree while iterating gives undefined results.
+
+    private static class InOrderIterator<T> implements Iterator<AvlNode<T>> {
+
+        private final ArrayDeque<AvlNode<T>> stack = new ArrayDeque<>();
+
+        InOrderIterator(AvlNode<T> root){
+            pushLeft(root);
+        }
+
+        private void pushLeft(AvlNode<T> node){
+            while(node != null){
+                stack.push(node);
+                node = node.left();
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public AvlNode<T> next(){
+            if(stack.isEmpty()){
+                throw new NoSuchElementException();
+            }
+            AvlNode<T> node = stack.pop();
+            pushLeft(node.right());
+            return node;
+        }
+    }
+
+    private static class LiveIterator<T> implements Iterator<AvlNode<T>> {
+
+        //Wraps one of the iterators above, skipping tombstones
+        private final Iterator<AvlNode<T>> it;
+        private AvlNode<T> next;
+
+        LiveIterator(Iterator<AvlNode<T>> it){
+            this.it = it;
+            advance();
+        }
+
+        private void advance(){
+            next = null;
+            while(next == null && it.hasNext()){
+                AvlNode<T> node = it.next();
+                if(!node.deleted()){
+                    next = node;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            return next != null;
+        }
+
+        @Override
+        public AvlNode<T> next(){
+            if(next == null){
+                throw new NoSuchElementException();
+            }
+            AvlNode<T> node = next;
+            advance();
+            return node;
+        }
+    }
+
+    private static class PreOrderIterator<T> implements Iterator<AvlNode<T>> {
+
+        private final ArrayDeque<AvlNode<T>> stack = new ArrayDeque<>();
+
+        PreOrderIterator(AvlNode<T> root){
+            if(root != null){
+                stack.push(root);
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public AvlNode<T> next(){
+            if(stack.isEmpty()){
+                throw new NoSuchElementException();
+            }
+            AvlNode<T> node = stack.pop();
+            //Right is pushed first so that left comes out first
+            if(node.right() != null){
+                stack.push(node.right());
+            }
+            if(node.left() != null){
+                stack.push(node.left());
+            }
+            return node;
+        }
+    }
+
+    private static class LevelOrderIterator<T> implements Iterator<AvlNode<T>> {
+
+        private final ArrayDeque<AvlNode<T>> queue = new ArrayDeque<>();
+
+        LevelOrderIterator(AvlNode<T> root){
+            if(root != null){
+                queue.add(root);
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public AvlNode<T> next(){
+            if(queue.isEmpty()){
+                throw new NoSuchElementException();
+            }
+            AvlNode<T> node = queue.poll();
+            if(node.left() != null){
+                queue.add(node.left());
+            }
+            if(node.right() != null){
+                queue.add(node.right());
+            }
+            return node;
+        }
+    }
+
+    private static class InOrderSpliterator<T> implements Spliterator<AvlNode<T>> {
+
+        //Covers the nodes of ranks from (included) to to (excluded). Splitting only halves the rank range,
+        //and the walk is positioned on its first node lazily, in O(log n) thanks to the cached subtree sizes.
+
+        private final AvlNode<T> root;
+        private int from;
+        private final int to;
+        private ArrayDeque<AvlNode<T>> stack;
+
+        InOrderSpliterator(AvlNode<T> root, int from, int to){
+            this.root = root;
+            this.from = from;
+            this.to = to;
+        }
+
+        private void seek(){
+            //Same stack as InOrderIterator, holding the path to the node of rank from
+            stack = new ArrayDeque<>();
+            AvlNode<T> node = root;
+            int rank = from;
+            while(node != null){
+                int leftSize = node.left() == null ? 0 : node.left().size();
+                if(rank < leftSize){
+                    stack.push(node);
+                    node = node.left();
+                }else if(rank < leftSize + own(node)){
+                    stack.push(node);
+                    return;
+                }else{
+                    rank -= leftSize + own(node);
+                    node = node.right();
+                }
+            }
+        }
+
+        private AvlNode<T> next(){
+            if(stack == null){
+                seek();
+            }
+            //Ranks only count live nodes, so tombstones met on the way are skipped
+            AvlNode<T> node;
+            do{
+                node = stack.pop();
+                for(AvlNode<T> child = node.right(); child != null; child = child.left()){
+                    stack.push(child);
+                }
+            }while(node.deleted());
+            from++;
+            return node;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super AvlNode<T>> action){
+            if(from >= to){
+                return false;
+            }
+            action.accept(next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super AvlNode<T>> action){
+            while(from < to){
+                action.accept(next());
+            }
+        }
+
+        @Override
+        public Spliterator<AvlNode<T>> trySplit(){
+            //Gives away the first half of the remaining ranks
+            int mid = (from + to) >>> 1;
+            if(mid == from){
+                return null;
             }
+            Spliterator<AvlNode<T>> prefix = new InOrderSpliterator<>(root, from, mid);
+            from = mid;
+            stack = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize(){
+            return to - from;
+        }
+
+        @Override
+        public int characteristics(){
+            return ORDERED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+        }
+    }
 
-            if(stack.get(0).right() != null){
-                stack.add(stack.get(0).right());
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+    //Subtrees smaller than this are walked sequentially by a single fork-join task
+
+    private static class ForEachTask<T> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AvlNode<T> node;
+        private final Consumer<? super AvlNode<T>> action;
+
+        ForEachTask(AvlNode<T> node, Consumer<? super AvlNode<T>> action){
+            this.node = node;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute(){
+            if(node.size() <= PARALLEL_THRESHOLD){
+                Iterator<AvlNode<T>> it = new InOrderIterator<>(node);
+                while(it.hasNext()){
+                    AvlNode<T> next = it.next();
+                    if(!next.deleted()){
+                        action.accept(next);
+                    }
+                }
+                return;
+            }
+            //Either child may be null : a RELAXED tree can hang a whole large subtree on one side
+            ForEachTask<T> left = node.left() == null ? null : new ForEachTask<>(node.left(), action);
+            if(left != null){
+                left.fork();
             }
+            if(!node.deleted()){
+                action.accept(node);
+            }
+            if(node.right() != null){
+                new ForEachTask<>(node.right(), action).compute();
+            }
+            if(left != null){
+                left.join();
+            }
+        }
+    }
+
+    private static class ReduceTask<T, U> extends RecursiveTask<U> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AvlNode<T> node;
+        private final U identity;
+        private final BiFunction<U, ? super AvlNode<T>, U> accumulator;
+        private final BinaryOperator<U> combiner;
 
-            stack.remove(stack.get(0));
+        ReduceTask(AvlNode<T> node, U identity, BiFunction<U, ? super AvlNode<T>, U> accumulator, BinaryOperator<U> combiner){
+            this.node = node;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected U compute(){
+            if(node.size() <= PARALLEL_THRESHOLD){
+                U result = identity;
+                Iterator<AvlNode<T>> it = new InOrderIterator<>(node);
+                while(it.hasNext()){
+                    AvlNode<T> next = it.next();
+                    if(!next.deleted()){
+                        result = accumulator.apply(result, next);
+                    }
+                }
+                return result;
+            }
+            //Either child may be null, see ForEachTask. A missing side folds to identity.
+            ReduceTask<T, U> left = node.left() == null ? null : new ReduceTask<>(node.left(), identity, accumulator, combiner);
+            if(left != null){
+                left.fork();
+            }
+            U right = node.right() == null ? identity : new ReduceTask<>(node.right(), identity, accumulator, combiner).compute();
+            //In-order : left subtree, then this node, then right subtree
+            U before = left == null ? identity : left.join();
+            U middle = node.deleted() ? before : accumulator.apply(before, node);
+            return node.right() == null ? middle : combiner.apply(middle, right);
         }
     }
 
+    private enum SetOperation { UNION, INTERSECTION, DIFFERENCE }
+
+    private static class SetOperationTask<T> extends RecursiveTask<AvlNode<T>> {
+
+        private static final long serialVersionUID = 1L;
+
+        //Forks itself through tree.setOperation(), which only touches nodes of its two subtrees
+        private final AvlTree<T> tree;
+        private final SetOperation operation;
+        private final AvlNode<T> a;
+        private final AvlNode<T> b;
+
+        SetOperationTask(AvlTree<T> tree, SetOperation operation, AvlNode<T> a, AvlNode<T> b){
+            this.tree = tree;
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        protected AvlNode<T> compute(){
+            return tree.setOperation(operation, a, b);
+        }
+    }
 
     /***************************
      Tree printers
@@ -545,6 +2206,16 @@ public class AvlTree <T> implements Serializable {
     }
 
     public boolean save() {
+        if(metrics == null){
+            return saveFile();
+        }
+        long start = System.nanoTime();
+        boolean saved = saveFile();
+        metrics.persistence("save", savePath, size(), start, saved);
+        return saved;
+    }
+
+    private boolean saveFile() {
         //Careful : This method always overrides and always uses the same default path.
         //To save multiple trees, use save(Path) with a different path for each tree.
         File f = new File(savePath);
@@ -566,11 +2237,8 @@ public class AvlTree <T> implements Serializable {
         }
 
         try{
-            FileOutputStream fos = new FileOutputStream(f);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(this.root);
-            oos.close();
-            fos.close();
+            //See AvlFileFormat for the file layout
+            AvlFileFormat.write(this, f.toPath(), codec);
             System.out.println("Tree saved properly");
             return true;
         }catch (Exception e){
@@ -581,11 +2249,61 @@ public class AvlTree <T> implements Serializable {
     }
 
     public boolean load(){
-        //Loads a pre-existing serialized tree stored into a file into current tree.
+        if(metrics == null){
+            return loadFile();
+        }
+        long start = System.nanoTime();
+        boolean loaded = loadFile();
+        metrics.persistence("load", savePath, size(), start, loaded);
+        return loaded;
+    }
+
+    private boolean loadFile(){
+        //Loads a pre-existing saved tree stored into a file into current tree.
+        //The tree is rebuilt balanced in linear time, without recursion. See AvlFileFormat for the file layout.
+        checkWritable();
+        Path path = Paths.get(savePath);
+        try {
+            if(isJavaSerialized(path)){
+                return loadSerialized();
+            }
+            replaceContent(AvlFileFormat.read(path, codec));
+            System.out.println("Tree loaded properly");
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Error while loading the save : File not found or corrupted");
+            return false;
+        }
+    }
+
+    private boolean isJavaSerialized(Path path) throws IOException {
+        //Saves made before the binary format start with the Java serialization magic number
+        try(DataInputStream in = new DataInputStream(Files.newInputStream(path))){
+            return in.readShort() == ObjectStreamConstants.STREAM_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private boolean loadSerialized(){
+        //Legacy loader for saves written with Java serialization of the root node
         try {
             FileInputStream fis = new FileInputStream(savePath);
             ObjectInputStream ois = new ObjectInputStream(fis);
-            this.root = (AvlNode<T>) ois.readObject();
+            AvlNode<T> legacy = (AvlNode<T>) ois.readObject();
+            //Those nodes predate the cached values and seq numbers : relink them so that they are computed
+            List<AvlNode<T>> nodes = new ArrayList<>();
+            Iterator<AvlNode<T>> it = new InOrderIterator<>(legacy);
+            while(it.hasNext()){
+                AvlNode<T> node = it.next();
+                if(!nodes.isEmpty() && nodes.get(nodes.size() - 1).id() == node.id()){
+                    node.seq(nodes.get(nodes.size() - 1).seq() + 1);
+                }
+                nodes.add(node);
+            }
+            replaceContent(nodes.toArray(AvlNode.newArray(nodes.size())));
+            ranked = false;
             fis.close();
             ois.close();
             System.out.println("Tree loaded properly");
@@ -613,6 +2331,7 @@ public class AvlTree <T> implements Serializable {
 
     @Override
     public boolean equals(Object o){
+        //Compares cached sizes & digests, so this runs in O(1). Trees holding the same (id, data) pairs are equal whatever their shape.
         if(o == this){
             return true;
         }
@@ -621,16 +2340,13 @@ public class AvlTree <T> implements Serializable {
             return false;
         }
         AvlTree <T> otherTree = (AvlTree<T>)o;
-        return this.hashCode() == otherTree.hashCode();
+        return this.size() == otherTree.size() && this.digest() == otherTree.digest();
     }
 
     @Override
     public int hashCode(){
-        int hash = 18;
-        if(root != null ){
-            hash += root.hashCode();
-        }
-        return hash;
+        long digest = digest();
+        return 18 + (int) (digest ^ (digest >>> 32));
     }
 
     @Override
@@ -641,20 +2357,10 @@ public class AvlTree <T> implements Serializable {
         }
 
         StringBuilder str = new StringBuilder();
-        LinkedList <AvlNode <T>> stack = new LinkedList<>();
-        stack.add(this.root);
-        while(!stack.isEmpty()){
+        Iterator<AvlNode<T>> it = levelOrderIterator();
+        while(it.hasNext()){
             //Change .id() to .data() in the line below to print data instead. Requires a proper toString() method on data object.
-            str.append("[").append(stack.get(0).id()).append("] ");
-            if(stack.get(0).left() != null){
-                stack.add(stack.get(0).left());
-            }
-
-            if(stack.get(0).right() != null){
-                stack.add(stack.get(0).right());
-            }
-
-            stack.remove(stack.get(0));
+            str.append("[").append(it.next().id()).append("] ");
         }
         return str.toString();
     }
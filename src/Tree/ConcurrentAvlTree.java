@@ -0,0 +1,341 @@
+package Tree;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.StampedLock;
+
+public class ConcurrentAvlTree <T> {
+
+    /***********************************************************************************************************
+     Thread-safe wrapper around AvlTree with the same add/get/contains/remove API.
+     Writers take an exclusive StampedLock write lock.
+     Readers don't block : lookups first walk the tree under an optimistic stamp and only keep the result if
+     no writer ran in the meantime. They fall back to a shared read lock only when a write raced with them.
+     Returned nodes are the live tree nodes : don't modify them, use the tree methods instead.
+     Wrapping turns node recycling off (see AvlTree.recycleNodes()), so a removed node never changes under a reader.
+     Don't use the wrapped AvlTree directly once it is wrapped.
+     ***********************************************************************************************************/
+
+    private static final int MAX_OPTIMISTIC_STEPS = 64;
+    //A tree of 2^31 nodes is at most 45 levels deep, or 62 with the WEAK and RELAXED balance policies.
+    //A longer walk means a writer is moving nodes around.
+
+    private static final AvlNode<?> RETRY = new AvlNode<>();
+
+    private final AvlTree<T> tree;
+
+    private final StampedLock lock = new StampedLock();
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public ConcurrentAvlTree(){
+        this(new AvlTree<>());
+    }
+
+    public ConcurrentAvlTree(boolean areDuplicatesAllowed){
+        this(new AvlTree<>(areDuplicatesAllowed));
+    }
+
+    public ConcurrentAvlTree(AvlTree<T> tree){
+        this.tree = tree;
+        tree.wrapped();
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    @SuppressWarnings("unchecked")
+    private AvlNode<T> optimisticGet(int id){
+        //Same walk as AvlTree.get() but bounded, since the nodes may be relinked by a writer while we read them.
+        //Returns RETRY when the result can't be trusted.
+        long stamp = lock.tryOptimisticRead();
+        if(stamp == 0){
+            return (AvlNode<T>) RETRY;
+        }
+        //Like AvlTree, keeps going left after a match to return the first copy of a duplicated ID.
+        AvlNode<T> node = tree.root();
+        if(node != null && node.tombstones() > 0){
+            //That copy may be a tombstone, leave lazy deletes to the locked path
+            return (AvlNode<T>) RETRY;
+        }
+        AvlNode<T> found = null;
+        int steps = 0;
+        while(node != null){
+            if(++steps > MAX_OPTIMISTIC_STEPS){
+                return (AvlNode<T>) RETRY;
+            }
+            if(id == node.id()){
+                found = node;
+            }
+            node = id <= node.id() ? node.left() : node.right();
+        }
+        return lock.validate(stamp) ? found : (AvlNode<T>) RETRY;
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    int nodesAfter(int id, int seq, AvlNode<T>[] batch){
+        //One batch of a ShardedAvlTree iterator, read under the read lock. See AvlTree.nodesAfter().
+        long stamp = lock.readLock();
+        try{
+            return tree.nodesAfter(id, seq, batch);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public AvlNode<T> get(int id){
+        AvlNode<T> node = optimisticGet(id);
+        if(node != RETRY){
+            return node;
+        }
+        long stamp = lock.readLock();
+        try{
+            return tree.get(id);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public AvlNode<T> get(T data){
+        //Optimistic path when the first copy of the ID holds data, which is the common case
+        AvlNode<T> node = optimisticGet(data.hashCode());
+        if(node != RETRY && (node == null || Objects.equals(node.data(), data))){
+            return node;
+        }
+        long stamp = lock.readLock();
+        try{
+            return tree.get(data);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public List<AvlNode<T>> getAll(T data){
+        long stamp = lock.readLock();
+        try{
+            return tree.getAll(data);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int count(T data){
+        long stamp = lock.readLock();
+        try{
+            return tree.count(data);
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean contains(int id){
+        return get(id) != null;
+    }
+
+    public boolean contains(AvlNode<T> node){
+        return get(node.id()) != null;
+    }
+
+    public boolean containsData(T data){
+        return get(data) != null;
+    }
+
+    public int size(){
+        long stamp = lock.tryOptimisticRead();
+        int size = tree.size();
+        if(lock.validate(stamp)){
+            return size;
+        }
+        stamp = lock.readLock();
+        try{
+            return tree.size();
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean isEmpty(){
+        return size() == 0;
+    }
+
+    public List<AvlNode<T>> toArrayList(){
+        //Consistent copy of the tree, taken under the read lock
+        long stamp = lock.readLock();
+        try{
+            return tree.toArrayList();
+        }finally{
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public AvlTree<T> snapshot(){
+        //Read-only point-in-time copy in O(1), see AvlTree.snapshot(). It can be iterated or saved without any lock.
+        //Needs the write lock for an instant since the live tree switches to path copying.
+        long stamp = lock.writeLock();
+        try{
+            return tree.snapshot();
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void add(T data){
+        long stamp = lock.writeLock();
+        try{
+            tree.add(data);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void add(AvlNode<T> node){
+        long stamp = lock.writeLock();
+        try{
+            tree.add(node);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void addAllData(Collection<? extends T> c){
+        //Takes the write lock once for the whole batch
+        long stamp = lock.writeLock();
+        try{
+            tree.addAllData(c);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(int id){
+        long stamp = lock.writeLock();
+        try{
+            tree.remove(id);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(T data){
+        long stamp = lock.writeLock();
+        try{
+            tree.remove(data);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(AvlNode<T> target){
+        long stamp = lock.writeLock();
+        try{
+            tree.remove(target);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void removeAll(T data){
+        long stamp = lock.writeLock();
+        try{
+            tree.removeAll(data);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void removeAllData(Collection<? extends T> c){
+        long stamp = lock.writeLock();
+        try{
+            tree.removeAllData(c);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void replace(AvlNode<T> target, AvlNode<T> newNode){
+        //Atomic for readers : they see either the old node or the new one, never neither.
+        long stamp = lock.writeLock();
+        try{
+            tree.replace(target, newNode);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean save(String savePath){
+        //Saves a snapshot, so writers are only blocked for an instant and not for the whole write
+        return snapshot().save(savePath);
+    }
+
+    public boolean load(String savePath){
+        //Replaces the content with the save at savePath. Writers and locked readers wait until it is loaded.
+        long stamp = lock.writeLock();
+        try{
+            return tree.load(savePath);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void checkpoint() throws IOException {
+        //Checkpoints the journal attached to the wrapped tree, see AvlJournal.checkpoint().
+        //Writers wait for the snapshot and the segment switch only, the checkpoint file is written after the unlock.
+        Future<?> done = compactAsync();
+        try{
+            done.get();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }catch (ExecutionException e){
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    public Future<?> compactAsync() throws IOException {
+        //See AvlJournal.compactAsync(). The write lock keeps every change and its record on the same side of the switch.
+        AvlJournal<T> journal = tree.journal();
+        if(journal == null){
+            throw new IllegalStateException("No journal attached to the tree");
+        }
+        long stamp = lock.writeLock();
+        try{
+            return journal.compactAsync(tree);
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void rebalance(){
+        //Background pass for trees with the RELAXED balance policy, see AvlTree.rebalance(). Blocks writers for O(n).
+        long stamp = lock.writeLock();
+        try{
+            tree.rebalance();
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear(){
+        long stamp = lock.writeLock();
+        try{
+            tree.clear();
+        }finally{
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package Tree;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class FrozenAvlTree <T> implements Iterable<AvlNode<T>> {
+
+    /***********************************************************************************************************
+     Immutable, read-optimized copy of an AvlTree, built with tree.freeze() in O(n).
+     IDs are packed in a plain int array in Eytzinger order : the implicit tree of a binary heap, where the children
+     of slot k are slots 2k and 2k + 1. A lookup reads one int per level from the same array instead of chasing
+     one AvlNode per level, the first levels share a handful of cache lines, and the comparison at each level is
+     turned into arithmetic, so the loop has no branch for the CPU to mispredict.
+     Nodes are only read once the ID is found, from a second array in the same order.
+     Returned nodes are the ones of the tree : only use their id, seq and data, not their left and right links.
+     Later changes to the tree don't show up here, freeze() it again to refresh.
+     ***********************************************************************************************************/
+
+    private final int[] ids;
+    //ids[k] is the ID of slot k, from 1 to size. Slot 0 is unused.
+
+    private final AvlNode<T>[] nodes;
+    //Same order as ids
+
+    private final int size;
+
+    private final boolean areDuplicatesAllowed;
+
+    /***************************
+     Constructors
+     ***************************/
+
+    FrozenAvlTree(AvlTree<T> tree){
+        //Walks the tree in-order while walking the slots in their in-order too, so each node lands in its slot
+        size = tree.size();
+        areDuplicatesAllowed = tree.areDuplicatesAllowed();
+        ids = new int[size + 1];
+        nodes = AvlNode.newArray(size + 1);
+        int k = first();
+        for(AvlNode<T> node : tree){
+            ids[k] = node.id();
+            nodes[k] = node;
+            k = next(k);
+        }
+    }
+
+    /***************************
+     Getters & Setters
+     ***************************/
+
+    public int size(){
+        return size;
+    }
+
+    public boolean areDuplicatesAllowed(){
+        return areDuplicatesAllowed;
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    private int first(){
+        //Slot of the lowest ID : leftmost slot of the implicit tree, or 0 when empty
+        //Slots are compared as longs : 2k overflows an int once the tree holds more than 2^30 nodes
+        int k = size == 0 ? 0 : 1;
+        while(2L * k <= size && k != 0){
+            k = 2 * k;
+        }
+        return k;
+    }
+
+    private int next(int k){
+        //Slot following k in-order, or 0 after the last one
+        if(2L * k + 1 <= size){
+            k = 2 * k + 1;
+            while(2L * k <= size){
+                k = 2 * k;
+            }
+            return k;
+        }
+        //Climb while k is a right child, then once more
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        return k;
+    }
+
+    private int lowerBound(int id){
+        //Slot of the first ID at least id, or 0 if there is none.
+        //Each step goes to 2k when ids[k] >= id and to 2k + 1 otherwise, the sign bit of a long subtraction
+        //giving that 0 or 1 without a branch. Going right means ids[k] was too low, so the answer is the slot where
+        //the walk went left for the last time : drop the trailing right moves (1 bits), then that left move.
+        //k is a long since the walk ends past the last slot, up to 2 * size + 1.
+        long k = 1;
+        while(k <= size){
+            k = 2 * k + (((long) ids[(int) k] - id) >>> 63);
+        }
+        return (int) (k >>> (Long.numberOfTrailingZeros(~k) + 1));
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public boolean contains(int id){
+        int k = lowerBound(id);
+        return k != 0 && ids[k] == id;
+    }
+
+    public boolean contains(AvlNode<T> node){
+        return contains(node.id());
+    }
+
+    public boolean containsData(T data){
+        return get(data) != null;
+    }
+
+    public AvlNode<T> get(int id){
+        //Returns the first copy (lowest seq) of the node with the given ID or null
+        int k = lowerBound(id);
+        return k != 0 && ids[k] == id ? nodes[k] : null;
+    }
+
+    public AvlNode<T> get(T data){
+        //Returns the first copy of data, skipping nodes that only share its hashcode
+        int id = data.hashCode();
+        for(int k = lowerBound(id); k != 0 && ids[k] == id; k = next(k)){
+            if(Objects.equals(nodes[k].data(), data)){
+                return nodes[k];
+            }
+        }
+        return null;
+    }
+
+    public int count(int id){
+        //Number of copies of id
+        int count = 0;
+        for(int k = lowerBound(id); k != 0 && ids[k] == id; k = next(k)){
+            count++;
+        }
+        return count;
+    }
+
+    public AvlTree<T> thaw(){
+        //Returns a new, modifiable tree holding copies of the nodes, built balanced in O(n)
+        AvlNode<T>[] sorted = AvlNode.newArray(size);
+        int i = 0;
+        for(AvlNode<T> node : this){
+            sorted[i] = new AvlNode<>(node.data(), node.id());
+            sorted[i++].seq(node.seq());
+        }
+        AvlTree<T> tree = new AvlTree<>(areDuplicatesAllowed);
+        tree.replaceContent(sorted);
+        return tree;
+    }
+
+    /***************************
+     Iterators
+     ***************************/
+
+    @Override
+    public Iterator<AvlNode<T>> iterator(){
+        //In-order, like AvlTree
+        return new Iterator<AvlNode<T>>() {
+            private int k = first();
+
+            @Override
+            public boolean hasNext(){
+                return k != 0;
+            }
+
+            @Override
+            public AvlNode<T> next(){
+                if(k == 0){
+                    throw new NoSuchElementException();
+                }
+                AvlNode<T> node = nodes[k];
+                k = FrozenAvlTree.this.next(k);
+                return node;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<AvlNode<T>> spliterator(){
+        return Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    public Stream<AvlNode<T>> stream(){
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    @Override
+    public String toString(){
+        //Returns a String formatted like AvlTree's, in-order : [id1] [id2] [id3]
+        StringBuilder str = new StringBuilder();
+        for(AvlNode<T> node : this){
+            str.append("[").append(node.id()).append("] ");
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package Tree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+public class IntAvlTree implements Serializable {
+
+    /***********************************************************************************************************
+     Primitive specialization of AvlTree for int IDs, meant for very large sets of keys.
+     Nodes are not objects : a node is a slot index in parallel int arrays (left, right, key, height).
+     Slot 0 is a sentinel standing for null, with height 0, so no null checks are needed while balancing.
+     Lookups, inserts and removes never allocate. Arrays only grow (doubling) when every slot is used,
+     and removed slots are recycled through a free list chained on the right array.
+     Memory : 16 bytes per entry (4 ints), versus about 40 bytes for an AvlNode plus its boxed data.
+     Keys are unique : adding a key already in the tree does nothing.
+     See IntObjAvlTree to attach a value to each key.
+     ***********************************************************************************************************/
+
+    private static final long serialVersionUID = 1L;
+
+    static final int NIL = 0;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    int[] left;
+    int[] right;
+    int[] key;
+    int[] height;
+
+    int root = NIL;
+
+    private int size = 0;
+
+    private int nextSlot = 1;
+    //First slot never used so far. Slot 0 is the sentinel.
+
+    private int freeSlot = NIL;
+    //Head of the free list of removed slots
+
+    int lastSlot = NIL;
+    //Slot touched by the last add() or remove(). Lets subclasses update their own arrays without a second lookup.
+
+    private boolean lastAdded;
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public IntAvlTree(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntAvlTree(int initialCapacity){
+        //Preallocate to avoid any growth while filling the tree
+        int capacity = Math.max(initialCapacity, 1) + 1;
+        left = new int[capacity];
+        right = new int[capacity];
+        key = new int[capacity];
+        height = new int[capacity];
+    }
+
+    /***************************
+     Getters & Setters
+     ***************************/
+
+    public int size(){
+        return size;
+    }
+
+    public int capacity(){
+        return key.length - 1;
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    private int leftRotation(int node){
+        //Keeps the tree balanced. Don't modify it unless you know what you're doing.
+        int temp = right[node];
+        right[node] = left[temp];
+        left[temp] = node;
+        updateHeight(node);
+        updateHeight(temp);
+        return temp;
+    }
+
+    private int rightRotation(int node){
+        //Keeps the tree balanced. Don't modify it unless you know what you're doing.
+        int temp = left[node];
+        left[node] = right[temp];
+        right[temp] = node;
+        updateHeight(node);
+        updateHeight(temp);
+        return temp;
+    }
+
+    private void updateHeight(int node){
+        height[node] = 1 + Math.max(height[left[node]], height[right[node]]);
+    }
+
+    private int getBalance(int node){
+        return height[left[node]] - height[right[node]];
+    }
+
+    private int balance(int node){
+        //Same four cases as AvlTree, written once for both insertion and deletion.
+        updateHeight(node);
+        int balance = getBalance(node);
+        if(balance > 1){
+            if(getBalance(left[node]) < 0){
+                left[node] = leftRotation(left[node]);
+            }
+            return rightRotation(node);
+        }
+        if(balance < -1){
+            if(getBalance(right[node]) > 0){
+                right[node] = rightRotation(right[node]);
+            }
+            return leftRotation(node);
+        }
+        return node;
+    }
+
+    private int newSlot(int id){
+        int slot;
+        if(freeSlot != NIL){
+            slot = freeSlot;
+            freeSlot = right[slot];
+        }else{
+            if(nextSlot == key.length){
+                grow(key.length * 2);
+            }
+            slot = nextSlot++;
+        }
+        left[slot] = NIL;
+        right[slot] = NIL;
+        key[slot] = id;
+        height[slot] = 1;
+        return slot;
+    }
+
+    private void freeSlot(int slot){
+        left[slot] = NIL;
+        right[slot] = freeSlot;
+        height[slot] = 0;
+        freeSlot = slot;
+    }
+
+    private int insert(int node, int id){
+        if(node == NIL){
+            lastAdded = true;
+            lastSlot = newSlot(id);
+            return lastSlot;
+        }
+        //The child is read into a local first : insert() may grow the arrays, and left[node] = insert(...)
+        //would evaluate the array reference before the call and write into the old array.
+        if(id < key[node]){
+            int child = insert(left[node], id);
+            left[node] = child;
+        }else if(id > key[node]){
+            int child = insert(right[node], id);
+            right[node] = child;
+        }else{
+            lastSlot = node;
+            return node;
+        }
+        return balance(node);
+    }
+
+    private int delete(int node, int id){
+        if(node == NIL){
+            return NIL;
+        }
+        if(id < key[node]){
+            left[node] = delete(left[node], id);
+        }else if(id > key[node]){
+            right[node] = delete(right[node], id);
+        }else if(left[node] == NIL || right[node] == NIL){
+            int child = left[node] == NIL ? right[node] : left[node];
+            lastSlot = node;
+            freeSlot(node);
+            return child;
+        }else{
+            //Two children : the successor's key and value move into this slot, then the successor slot is removed
+            int successor = right[node];
+            while(left[successor] != NIL){
+                successor = left[successor];
+            }
+            key[node] = key[successor];
+            moveSlot(successor, node);
+            right[node] = delete(right[node], key[successor]);
+        }
+        return balance(node);
+    }
+
+    void grow(int capacity){
+        //Subclasses holding extra arrays override this to grow them as well
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        key = Arrays.copyOf(key, capacity);
+        height = Arrays.copyOf(height, capacity);
+    }
+
+    void moveSlot(int from, int to){
+        //Called when the content of slot from is moved into slot to. Subclasses move their values here.
+    }
+
+    int find(int id){
+        //Returns the slot holding id or NIL
+        int node = root;
+        while(node != NIL){
+            int k = key[node];
+            if(id == k){
+                return node;
+            }
+            node = id < k ? left[node] : right[node];
+        }
+        return NIL;
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public boolean isEmpty(){
+        return root == NIL;
+    }
+
+    public void clear(){
+        //Keeps the arrays so that refilling the tree doesn't allocate
+        root = NIL;
+        size = 0;
+        nextSlot = 1;
+        freeSlot = NIL;
+    }
+
+    public int height(){
+        return height[root];
+    }
+
+    public boolean add(int id){
+        //Returns false if id was already in the tree
+        lastAdded = false;
+        root = insert(root, id);
+        if(lastAdded){
+            size++;
+        }
+        return lastAdded;
+    }
+
+    public boolean contains(int id){
+        return find(id) != NIL;
+    }
+
+    public boolean remove(int id){
+        //Returns false if id wasn't in the tree
+        if(find(id) == NIL){
+            return false;
+        }
+        root = delete(root, id);
+        size--;
+        return true;
+    }
+
+    public int[] toArray(){
+        //Returns every key in ascending order
+        int[] result = new int[size];
+        int[] stack = new int[height[root] + 1];
+        int depth = 0;
+        int count = 0;
+        int node = root;
+        while(node != NIL || depth > 0){
+            while(node != NIL){
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            result[count++] = key[node];
+            node = right[node];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString(){
+        //Returns a String formatted like this : [id1] [id2] [id3], in ascending order
+        StringBuilder str = new StringBuilder();
+        for(int id : toArray()){
+            str.append("[").append(id).append("] ");
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package Tree;
+
+import java.util.Arrays;
+
+public class IntObjAvlTree <T> extends IntAvlTree {
+
+    /***********************************************************************************************************
+     IntAvlTree with a value attached to each int ID, stored in a parallel Object array.
+     Memory : 20 bytes per entry with compressed references (24 without), plus the values themselves.
+     Adding an ID already in the tree replaces its value.
+     ***********************************************************************************************************/
+
+    private static final long serialVersionUID = 1L;
+
+    private Object[] values;
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public IntObjAvlTree(){
+        super();
+        values = new Object[key.length];
+    }
+
+    public IntObjAvlTree(int initialCapacity){
+        super(initialCapacity);
+        values = new Object[key.length];
+    }
+
+    /***************************
+     Package methods
+     ***************************/
+
+    @Override
+    void grow(int capacity){
+        super.grow(capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    void moveSlot(int from, int to){
+        values[to] = values[from];
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    @Override
+    public void clear(){
+        super.clear();
+        Arrays.fill(values, null);
+    }
+
+    public boolean add(int id, T data){
+        //Returns false if id was already in the tree. Its value is replaced anyway.
+        boolean added = add(id);
+        values[lastSlot] = data;
+        return added;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int id){
+        //Returns the value stored under id, or null
+        int slot = find(id);
+        return slot == NIL ? null : (T) values[slot];
+    }
+
+    @Override
+    public boolean remove(int id){
+        if(!super.remove(id)){
+            return false;
+        }
+        //lastSlot is the slot that was freed
+        values[lastSlot] = null;
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+package Tree;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+public class KeyedAvlTree <K, T> implements Iterable<T> {
+
+    /***********************************************************************************************************
+     AvlTree variant keyed by a key taken from the data itself instead of an int hashcode ID.
+     The key extractor is given once at construction, for example KeyedAvlTree<>(User::email).
+     Keys are compared with their Comparator (or natural ordering), and exact matches use equals() :
+     there are no ID collisions, no retries and no silently dropped data, whatever the number of entries.
+     Use longKeyed() for 64-bit keys such as database IDs.
+     Each key holds one data object. add() refuses a key already there, put() replaces it.
+     Backed by an AvlMap, see it for range views and ordering details.
+     ***********************************************************************************************************/
+
+    private final AvlMap<K, T> map;
+
+    private final Function<? super T, ? extends K> keyOf;
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public KeyedAvlTree(Function<? super T, ? extends K> keyOf){
+        //Keys in natural ordering, they must implement Comparable
+        this.keyOf = keyOf;
+        this.map = new AvlMap<>();
+    }
+
+    public KeyedAvlTree(Function<? super T, ? extends K> keyOf, Comparator<? super K> comparator){
+        this.keyOf = keyOf;
+        this.map = new AvlMap<>(comparator);
+    }
+
+    public static <T> KeyedAvlTree<Long, T> longKeyed(ToLongFunction<? super T> keyOf){
+        //64-bit keys, compared by value. Two data objects only clash if their long keys are equal.
+        return new KeyedAvlTree<>(data -> keyOf.applyAsLong(data), Long::compare);
+    }
+
+    /***************************
+     Getters & Setters
+     ***************************/
+
+    public int size(){
+        return map.size();
+    }
+
+    public int height(){
+        return map.height();
+    }
+
+    public Function<? super T, ? extends K> keyOf(){
+        return keyOf;
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public boolean isEmpty(){
+        return map.isEmpty();
+    }
+
+    public void clear(){
+        map.clear();
+    }
+
+    public K key(T data){
+        return keyOf.apply(data);
+    }
+
+    public boolean add(T data){
+        //Returns false, leaving the tree unchanged, if another data object already has the same key
+        //Single descent : the size only grows if the key was not there
+        int size = map.size();
+        map.putIfAbsent(keyOf.apply(data), data);
+        return map.size() != size;
+    }
+
+    public T put(T data){
+        //Adds data, or replaces the data with the same key. Returns the replaced data or null.
+        return map.put(keyOf.apply(data), data);
+    }
+
+    public void addAll(Collection <? extends T> c){
+        for(T data : c){
+            add(data);
+        }
+    }
+
+    public T get(K key){
+        return map.get(key);
+    }
+
+    public boolean containsKey(K key){
+        return map.containsKey(key);
+    }
+
+    public boolean contains(T data){
+        //True if the data stored under the key of data equals it
+        return Objects.equals(map.get(keyOf.apply(data)), data);
+    }
+
+    public T remove(K key){
+        //Returns the removed data or null
+        return map.remove(key);
+    }
+
+    public boolean removeData(T data){
+        //Removes data only if the data stored under its key equals it
+        if(!contains(data)){
+            return false;
+        }
+        map.remove(keyOf.apply(data));
+        return true;
+    }
+
+    public T first(){
+        return map.isEmpty() ? null : map.firstEntry().getValue();
+    }
+
+    public T last(){
+        return map.isEmpty() ? null : map.lastEntry().getValue();
+    }
+
+    public T floor(K key){
+        //Data with the greatest key <= key, or null
+        Map.Entry<K, T> entry = map.floorEntry(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    public T ceiling(K key){
+        //Data with the lowest key >= key, or null
+        Map.Entry<K, T> entry = map.ceilingEntry(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    public NavigableMap<K, T> asMap(){
+        //Read-only live view by key, for range queries (subMap, headMap...). Modify through the tree.
+        return Collections.unmodifiableNavigableMap(map);
+    }
+
+    public List<T> toArrayList(){
+        //Data in ascending key order
+        return new ArrayList<>(map.values());
+    }
+
+    public Stream<T> stream(){
+        return map.values().stream();
+    }
+
+    /***************************
+     Iterators
+     ***************************/
+
+    @Override
+    public Iterator<T> iterator(){
+        //Ascending key order. Supports remove().
+        return map.values().iterator();
+    }
+
+    @Override
+    public String toString(){
+        //Returns a String formatted like this : [key1] data1 [key2] data2, in ascending key order
+        StringBuilder str = new StringBuilder();
+        for(Map.Entry<K, T> entry : map.entrySet()){
+            str.append("[").append(entry.getKey()).append("] ").append(entry.getValue()).append(" ");
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,288 @@
+package Tree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+public class MappedAvlTree <T> implements Iterable<AvlNode<T>> {
+
+    /***********************************************************************************************************
+     Read-only view of a file written by AvlTree.save(), memory-mapped instead of loaded.
+     Opening is near-instant whatever the tree size : nothing is read until it is needed, and the OS page cache
+     is shared by every JVM mapping the same file.
+     The saved IDs are sorted, so a lookup is a binary search in the mapped ID array, which walks the same path as
+     the perfectly balanced tree load() would build. It never allocates anything but the returned node.
+     Returned nodes are detached (no children) and decode their data only on the first call to data().
+     A single Java mapping can't exceed 2 GB, so files are mapped in 1 GB windows, found from an offset by its top bits.
+     Safe to use from several threads.
+     ***********************************************************************************************************/
+
+    private static final int WINDOW_BITS = 30;
+
+    private static final long WINDOW_SIZE = 1L << WINDOW_BITS;
+
+    private static final int OVERLAP = 8;
+    //Each window also maps the first bytes of the next one, so an int or a long never straddles two windows
+
+    private final MappedByteBuffer[] windows;
+
+    private final long fileSize;
+
+    private final AvlCodec<T> codec;
+
+    private final int size;
+
+    private final long offsetsPosition;
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public MappedAvlTree(String savePath, AvlCodec<T> codec) throws IOException {
+        this.codec = codec;
+        try(FileChannel channel = FileChannel.open(Paths.get(savePath), StandardOpenOption.READ)){
+            this.fileSize = channel.size();
+            //The mappings stay valid once the channel is closed
+            windows = new MappedByteBuffer[(int) ((fileSize + WINDOW_SIZE - 1) >>> WINDOW_BITS)];
+            for(int i = 0; i < windows.length; i++){
+                long start = (long) i << WINDOW_BITS;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE + OVERLAP, fileSize - start));
+            }
+        }
+        this.size = AvlFileFormat.readHeader(new DataInputStream(new WindowInputStream(0, fileSize)), fileSize);
+        this.offsetsPosition = getLong(AvlFileFormat.OFFSETS_POSITION);
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    private int getInt(long position){
+        return windows[(int) (position >>> WINDOW_BITS)].getInt((int) (position & (WINDOW_SIZE - 1)));
+    }
+
+    private long getLong(long position){
+        return windows[(int) (position >>> WINDOW_BITS)].getLong((int) (position & (WINDOW_SIZE - 1)));
+    }
+
+    private int idAt(int index){
+        return getInt(AvlFileFormat.HEADER_SIZE + 4L * index);
+    }
+
+    private int lowerBound(long id){
+        //Index of the first saved ID >= id, or size if there is none
+        int low = 0;
+        int high = size;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(idAt(mid) < id){
+                low = mid + 1;
+            }else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private T decode(int index){
+        long offset = getLong(offsetsPosition + 8L * index);
+        int length = getInt(offset);
+        if(length == -1){
+            return null;
+        }
+        //Each call reads through its own stream, so concurrent decodes don't share a position
+        try{
+            return codec.decode(new DataInputStream(new WindowInputStream(offset + 4, length)));
+        }catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private AvlNode<T> node(int index){
+        //Copies of an ID are numbered like AvlFileFormat.read() does
+        AvlNode<T> node = new MappedAvlNode<>(this, index, idAt(index));
+        node.seq(index - lowerBound(node.id()));
+        return node;
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public AvlNode<T> get(int id){
+        //Returns a lazy node, or null. Its data is decoded on the first call to data().
+        int index = lowerBound(id);
+        return index < size && idAt(index) == id ? node(index) : null;
+    }
+
+    public AvlNode<T> get(T data){
+        //Returns the first copy of data, skipping nodes that only share its hashcode
+        int id = data.hashCode();
+        for(int index = lowerBound(id); index < size && idAt(index) == id; index++){
+            AvlNode<T> node = node(index);
+            if(Objects.equals(node.data(), data)){
+                return node;
+            }
+        }
+        return null;
+    }
+
+    public boolean contains(int id){
+        int index = lowerBound(id);
+        return index < size && idAt(index) == id;
+    }
+
+    public boolean containsData(T data){
+        return get(data) != null;
+    }
+
+    public int rank(int id){
+        //Number of saved nodes with an ID strictly lower than id
+        return lowerBound(id);
+    }
+
+    public AvlNode<T> select(int k){
+        //Returns the node with the k-th smallest ID, starting at 0
+        if(k < 0 || k >= size){
+            throw new IndexOutOfBoundsException("Index: " + k + ", Size: " + size);
+        }
+        return node(k);
+    }
+
+    @Override
+    public Iterator<AvlNode<T>> iterator(){
+        //Nodes in ascending ID order, with lazy data
+        return new Iterator<AvlNode<T>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext(){
+                return next < size;
+            }
+
+            @Override
+            public AvlNode<T> next(){
+                if(next >= size){
+                    throw new NoSuchElementException();
+                }
+                return node(next++);
+            }
+        };
+    }
+
+    /***************************
+     Helpers
+     ***************************/
+
+    private static class MappedAvlNode <T> extends AvlNode<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private MappedAvlTree<T> tree;
+        //Set to null once data is decoded
+
+        private final int index;
+
+        MappedAvlNode(MappedAvlTree<T> tree, int index, int id){
+            super(null, id);
+            this.tree = tree;
+            this.index = index;
+        }
+
+        private void decode(){
+            if(tree != null){
+                T data = tree.decode(index);
+                tree = null;
+                super.data(data);
+            }
+        }
+
+        @Override
+        public T data(){
+            decode();
+            return super.data();
+        }
+
+        @Override
+        public void data(T data){
+            tree = null;
+            super.data(data);
+        }
+
+        @Override
+        public long digest(){
+            //The digest covers data, so it needs the decoded value
+            decode();
+            return super.digest();
+        }
+    }
+
+    private class WindowInputStream extends InputStream {
+
+        private long position;
+
+        private long remaining;
+
+        private ByteBuffer current;
+        //Duplicate of the window being read, so that streams don't share a buffer position
+
+        WindowInputStream(long position, long length){
+            //Reads length bytes from position, moving on to the next window at each 1 GB boundary
+            this.position = position;
+            this.remaining = length;
+        }
+
+        private boolean advance(){
+            //Whether there is something left to read, moving current to the next window when it is exhausted
+            if(remaining == 0 || position >= fileSize){
+                return false;
+            }
+            if(current == null || !current.hasRemaining()){
+                int start = (int) (position & (WINDOW_SIZE - 1));
+                current = windows[(int) (position >>> WINDOW_BITS)].duplicate();
+                current.position(start);
+                current.limit((int) Math.min(start + remaining, Math.min(WINDOW_SIZE, current.capacity())));
+            }
+            return true;
+        }
+
+        @Override
+        public int read(){
+            if(!advance()){
+                return -1;
+            }
+            position++;
+            remaining--;
+            return current.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length){
+            if(length == 0){
+                return 0;
+            }
+            if(!advance()){
+                return -1;
+            }
+            length = Math.min(length, current.remaining());
+            current.get(bytes, offset, length);
+            position += length;
+            remaining -= length;
+            return length;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package Tree;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ShardedAvlTree <T> implements Iterable<AvlNode<T>> {
+
+    /***********************************************************************************************************
+     Thread-safe tree split into independently locked shards, with the same add/get/contains/remove API as
+     ConcurrentAvlTree. Each ID belongs to one shard, picked by hashing it, so writers on different shards never
+     wait for each other and write throughput grows with the number of shards, up to the number of cores.
+     Every copy of an ID lives in the same shard, so duplicates behave like in a single AvlTree.
+     Whole-tree reads are not atomic : size() adds up the shard sizes, and iterators are weakly consistent, like
+     those of ConcurrentSkipListMap. They read each shard in batches of 256 nodes under its read lock, resuming
+     after the last node returned, so they never block writers for long and never make them copy nodes the way
+     snapshot() does. Nodes come in order and at most once, every node present during the whole iteration is
+     returned, and nodes added or removed meanwhile may or may not be.
+     save() and load() write and read one file per shard, in parallel on the common fork-join pool.
+     A save can only be loaded back into a tree with the same number of shards.
+     ***********************************************************************************************************/
+
+    private final ConcurrentAvlTree<T>[] shards;
+
+    private final int shift;
+    //32 - log2(shard count) : shardIndex() keeps the top bits of the hashed ID
+
+    /***************************
+     Constructors
+     ***************************/
+
+    public ShardedAvlTree(){
+        //One shard per core, rounded up to a power of 2
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedAvlTree(int shardCount){
+        this(shardCount, true);
+    }
+
+    public ShardedAvlTree(int shardCount, boolean areDuplicatesAllowed){
+        this(shardCount, () -> new AvlTree<>(areDuplicatesAllowed));
+    }
+
+    public ShardedAvlTree(int shardCount, Supplier<AvlTree<T>> factory){
+        //factory builds the tree of each shard, to set its codec, balance policy, lazy deletes... the same way for all.
+        //Node recycling is turned off, like for any tree wrapped by ConcurrentAvlTree.
+        //shardCount is rounded up to a power of 2.
+        if(shardCount < 1 || shardCount > 1 << 16){
+            throw new IllegalArgumentException("shardCount must be between 1 and 65536, got " + shardCount);
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(shardCount - 1);
+        shift = 32 - bits;
+        //Java can't create generic arrays. The cast is safe : the array only ever holds trees built from factory.
+        @SuppressWarnings("unchecked")
+        ConcurrentAvlTree<T>[] shards = (ConcurrentAvlTree<T>[]) new ConcurrentAvlTree<?>[1 << bits];
+        this.shards = shards;
+        for(int i = 0; i < shards.length; i++){
+            shards[i] = new ConcurrentAvlTree<>(factory.get());
+        }
+    }
+
+    /***************************
+     Getters & Setters
+     ***************************/
+
+    public int shardCount(){
+        return shards.length;
+    }
+
+    public ConcurrentAvlTree<T> shard(int index){
+        return shards[index];
+    }
+
+    /***************************
+     Private methods
+     ***************************/
+
+    private ConcurrentAvlTree<T> shardOf(int id){
+        return shards[shardIndex(id)];
+    }
+
+    private static final int BATCH_SIZE = 256;
+    //Nodes read per read lock by iterators
+
+    private static String shardFile(String directory, int index){
+        return Paths.get(directory, "shard-" + index + ".avl").toString();
+    }
+
+    /***************************
+     Public methods
+     ***************************/
+
+    public int shardIndex(int id){
+        //Fibonacci hashing : consecutive IDs land on different shards, so sequential writers spread out too.
+        //The shift is done on a long, since ints only shift by 0 to 31 and one shard needs 32.
+        return (int) ((id * 0x9E3779B9L & 0xffffffffL) >>> shift);
+    }
+
+    public AvlNode<T> get(int id){
+        return shardOf(id).get(id);
+    }
+
+    public AvlNode<T> get(T data){
+        return shardOf(data.hashCode()).get(data);
+    }
+
+    public List<AvlNode<T>> getAll(T data){
+        return shardOf(data.hashCode()).getAll(data);
+    }
+
+    public int count(T data){
+        return shardOf(data.hashCode()).count(data);
+    }
+
+    public boolean contains(int id){
+        return get(id) != null;
+    }
+
+    public boolean contains(AvlNode<T> node){
+        return get(node.id()) != null;
+    }
+
+    public boolean containsData(T data){
+        return get(data) != null;
+    }
+
+    public int size(){
+        //Sum of the shard sizes, each one read on its own
+        int size = 0;
+        for(ConcurrentAvlTree<T> shard : shards){
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public int size(int shard){
+        return shards[shard].size();
+    }
+
+    public boolean isEmpty(){
+        for(ConcurrentAvlTree<T> shard : shards){
+            if(!shard.isEmpty()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(T data){
+        shardOf(data.hashCode()).add(data);
+    }
+
+    public void add(AvlNode<T> node){
+        shardOf(node.id()).add(node);
+    }
+
+    public void addAllData(Collection<? extends T> c){
+        //Splits the batch by shard, then adds every part in parallel, taking each shard's write lock once
+        List<List<T>> parts = new ArrayList<>(shards.length);
+        for(int i = 0; i < shards.length; i++){
+            parts.add(new ArrayList<>());
+        }
+        for(T data : c){
+            parts.get(shardIndex(data.hashCode())).add(data);
+        }
+        IntStream.range(0, shards.length).parallel()
+                .filter(i -> !parts.get(i).isEmpty())
+                .forEach(i -> shards[i].addAllData(parts.get(i)));
+    }
+
+    public void remove(int id){
+        shardOf(id).remove(id);
+    }
+
+    public void remove(T data){
+        shardOf(data.hashCode()).remove(data);
+    }
+
+    public void remove(AvlNode<T> target){
+        shardOf(target.id()).remove(target);
+    }
+
+    public void removeAll(T data){
+        shardOf(data.hashCode()).removeAll(data);
+    }
+
+    public void clear(){
+        for(ConcurrentAvlTree<T> shard : shards){
+            shard.clear();
+        }
+    }
+
+    public AvlTree<T>[] snapshot(){
+        //One read-only snapshot per shard, taken one after the other. See AvlTree.snapshot().
+        //Each one takes the shard's write lock for an instant, and the next writes to the shard copy the nodes
+        //on their path as long as the snapshot is in use. Iterate the tree directly when consistency isn't needed.
+        @SuppressWarnings("unchecked") //Same as the shards array : only snapshots of AvlTree<T> go in
+        AvlTree<T>[] snapshots = (AvlTree<T>[]) new AvlTree<?>[shards.length];
+        for(int i = 0; i < shards.length; i++){
+            snapshots[i] = shards[i].snapshot();
+        }
+        return snapshots;
+    }
+
+    public boolean save(String directory){
+        //Saves every shard to directory/shard-<index>.avl, in parallel. Returns false if any of them failed.
+        return IntStream.range(0, shards.length).parallel()
+                .mapToObj(i -> shards[i].save(shardFile(directory, i)))
+                .reduce(true, Boolean::logicalAnd);
+    }
+
+    public boolean load(String directory){
+        //Loads every shard from a directory written by save() with the same shard count, in parallel.
+        //Returns false if any of them failed, the other shards being loaded anyway.
+        return IntStream.range(0, shards.length).parallel()
+                .mapToObj(i -> shards[i].load(shardFile(directory, i)))
+                .reduce(true, Boolean::logicalAnd);
+    }
+
+    /***************************
+     Iterators
+     ***************************/
+
+    @Override
+    public Iterator<AvlNode<T>> iterator(){
+        //In-order across every shard, like AvlTree. See the class comment for consistency.
+        List<Iterator<AvlNode<T>>> iterators = new ArrayList<>(shards.length);
+        for(ConcurrentAvlTree<T> shard : shards){
+            iterators.add(new ShardIterator<>(shard));
+        }
+        return new MergingIterator<>(iterators);
+    }
+
+    @Override
+    public Spliterator<AvlNode<T>> spliterator(){
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    public Stream<AvlNode<T>> stream(){
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    private static class MergingIterator<T> implements Iterator<AvlNode<T>> {
+
+        //k-way merge of the in-order iterators of the shards, in O(log k) per node.
+        //Shards never share an ID, so comparing IDs is enough and ties can't happen.
+        private final PriorityQueue<Head<T>> heads;
+
+        MergingIterator(List<Iterator<AvlNode<T>>> iterators){
+            heads = new PriorityQueue<>(Math.max(1, iterators.size()), Comparator.comparingInt(head -> head.node.id()));
+            for(Iterator<AvlNode<T>> it : iterators){
+                if(it.hasNext()){
+                    heads.add(new Head<>(it));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext(){
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public AvlNode<T> next(){
+            Head<T> head = heads.poll();
+            if(head == null){
+                throw new NoSuchElementException();
+            }
+            AvlNode<T> node = head.node;
+            if(head.it.hasNext()){
+                head.node = head.it.next();
+                heads.add(head);
+            }
+            return node;
+        }
+    }
+
+    private static class ShardIterator<T> implements Iterator<AvlNode<T>> {
+
+        //In-order nodes of one shard, read BATCH_SIZE at a time under its read lock.
+        //Each batch resumes after the (id, seq) of the last node returned, wherever writers moved it since.
+        private final ConcurrentAvlTree<T> shard;
+        private final AvlNode<T>[] batch = AvlNode.newArray(BATCH_SIZE);
+        private int count = 0;
+        private int next = 0;
+        private boolean isLastBatch = false;
+        private int lastId = Integer.MIN_VALUE;
+        private int lastSeq = -1;
+
+        ShardIterator(ConcurrentAvlTree<T> shard){
+            this.shard = shard;
+        }
+
+        @Override
+        public boolean hasNext(){
+            if(next < count){
+                return true;
+            }
+            if(isLastBatch){
+                return false;
+            }
+            count = shard.nodesAfter(lastId, lastSeq, batch);
+            next = 0;
+            isLastBatch = count < batch.length;
+            return count > 0;
+        }
+
+        @Override
+        public AvlNode<T> next(){
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            AvlNode<T> node = batch[next];
+            batch[next++] = null;
+            lastId = node.id();
+            lastSeq = node.seq();
+            return node;
+        }
+    }
+
+    private static class Head<T> {
+
+        //Next node of one shard, and the iterator it came from
+        private final Iterator<AvlNode<T>> it;
+        private AvlNode<T> node;
+
+        Head(Iterator<AvlNode<T>> it){
+            this.it = it;
+            this.node = it.next();
+        }
+    }
+
+    @Override
+    public String toString(){
+        //Same format as AvlTree, in-order : [id1] [id2] [id3]
+        StringBuilder str = new StringBuilder();
+        for(AvlNode<T> node : this){
+            str.append("[").append(node.id()).append("] ");
+        }
+        return str.toString();
+    }
+}
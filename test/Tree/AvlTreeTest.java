@@ -0,0 +1,120 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AvlTreeTest {
+
+    /***********************************************************************************************************
+     Cached heights of AvlTree, checked against a TreeSet and against heights recomputed from scratch,
+     and removes that splice the successor node in place of the removed one.
+     ***********************************************************************************************************/
+
+    private static int recomputedHeight(AvlNode<?> node){
+        return node == null ? 0 : 1 + Math.max(recomputedHeight(node.left()), recomputedHeight(node.right()));
+    }
+
+    private static List<Integer> ids(AvlTree<Integer> tree){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : tree){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(1);
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        TreeSet<Integer> model = new TreeSet<>();
+        for(int i = 0; i < 30_000; i++){
+            int id = random.nextInt(8_000) - 4_000;
+            if(random.nextInt(3) > 0){
+                tree.add(id);
+                model.add(id);
+            }else{
+                tree.remove(id);
+                model.remove(id);
+            }
+            if(i % 1_000 == 0){
+                Invariants.check(tree);
+                Invariants.checkStrict(tree.root());
+                assertEquals(recomputedHeight(tree.root()), tree.height());
+            }
+        }
+        assertEquals(model.size(), tree.size());
+        assertEquals(new ArrayList<>(model), ids(tree));
+        for(int id = -4_000; id < 4_000; id++){
+            assertEquals(model.contains(id), tree.contains(id));
+        }
+        for(Integer id : new ArrayList<>(model)){
+            tree.remove(id);
+        }
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.height());
+    }
+
+    @Test
+    public void sequentialAddsStayLogarithmic(){
+        //Linear heights, or an O(n) height() at every level, would make this take hours
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        int n = 1 << 20;
+        for(int i = 0; i < n; i++){
+            tree.add(i);
+        }
+        assertEquals(n, tree.size());
+        //AVL bound : 1.44 log2(n + 2)
+        assertTrue(tree.height() <= 1.44 * Math.log(n + 2) / Math.log(2));
+        for(int i = 0; i < n; i += 2){
+            tree.remove(i);
+        }
+        assertEquals(n / 2, tree.size());
+        assertTrue(tree.height() <= 1.44 * Math.log(n / 2 + 2) / Math.log(2));
+        assertEquals(recomputedHeight(tree.root()), tree.height());
+    }
+
+    @Test
+    public void removesKeepOtherNodes(){
+        //The successor takes the place of a removed inner node : nodes held by callers stay in the tree
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        Map<Integer, AvlNode<Integer>> held = new HashMap<>();
+        for(int id = 0; id < 500; id++){
+            AvlNode<Integer> node = new AvlNode<>(id);
+            tree.add(node);
+            held.put(id, node);
+        }
+        Random random = new Random(4);
+        List<Integer> order = new ArrayList<>(held.keySet());
+        Collections.shuffle(order, random);
+        for(Integer id : order.subList(0, 250)){
+            tree.remove(id);
+            held.remove(id);
+            Invariants.check(tree);
+            Invariants.checkStrict(tree.root());
+        }
+        for(Map.Entry<Integer, AvlNode<Integer>> entry : held.entrySet()){
+            assertTrue(tree.get((int) entry.getKey()) == entry.getValue());
+            assertEquals(entry.getKey(), entry.getValue().data());
+        }
+    }
+
+    @Test
+    public void heightsWithDuplicates(){
+        AvlTree<Integer> tree = new AvlTree<>(true);
+        for(int i = 0; i < 5_000; i++){
+            tree.add(i % 50);
+        }
+        assertEquals(5_000, tree.size());
+        assertEquals(100, tree.count(7));
+        Invariants.check(tree);
+        Invariants.checkStrict(tree.root());
+        tree.removeAll(7);
+        assertEquals(4_900, tree.size());
+        Invariants.check(tree);
+        Invariants.checkStrict(tree.root());
+        assertEquals(recomputedHeight(tree.root()), tree.height());
+    }
+}
@@ -0,0 +1,151 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class BalancePolicyTest {
+
+    /***********************************************************************************************************
+     Each AvlTree.BalancePolicy, checked against the shape it promises and against plain sequential walks.
+     ***********************************************************************************************************/
+
+    private static AvlTree<Integer> sequential(AvlTree.BalancePolicy policy, int count){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.balancePolicy(policy);
+        for(int i = 0; i < count; i++){
+            tree.add(i);
+        }
+        return tree;
+    }
+
+    private static void checkShape(AvlTree<Integer> tree, boolean removed){
+        //removed : whether the tree went through removes, which loosen the WEAK and RELAXED bounds
+        Invariants.check(tree);
+        int n = tree.size();
+        switch(tree.balancePolicy()){
+            case STRICT:
+                Invariants.checkStrict(tree.root());
+                break;
+            case WEAK:
+                Invariants.checkWeak(tree.root());
+                if(!removed){
+                    //Without removes, a weak AVL tree is an AVL tree
+                    Invariants.checkStrict(tree.root());
+                }
+                assertTrue(tree.height() <= 2 * Invariants.log2Ceil(n));
+                break;
+            case RELAXED:
+                if(!removed){
+                    assertTrue(tree.height() <= 2 * Invariants.log2Ceil(n));
+                }
+                break;
+        }
+    }
+
+    private static void runModel(AvlTree.BalancePolicy policy, long seed){
+        Random random = new Random(seed);
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.balancePolicy(policy);
+        TreeSet<Integer> model = new TreeSet<>();
+        for(int i = 0; i < 3_000; i++){
+            int id = random.nextInt(10_000);
+            tree.add(id);
+            model.add(id);
+        }
+        checkShape(tree, false);
+        for(int i = 0; i < 6_000; i++){
+            int id = random.nextInt(10_000);
+            if(random.nextBoolean()){
+                tree.add(id);
+                model.add(id);
+            }else{
+                tree.remove(id);
+                model.remove(id);
+            }
+            assertEquals(model.contains(id), tree.contains(id));
+            if(i % 1_000 == 0){
+                checkShape(tree, true);
+            }
+        }
+        checkShape(tree, true);
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : tree){
+            ids.add(node.id());
+        }
+        assertEquals(new ArrayList<>(model), ids);
+
+        tree.rebalance();
+        assertEquals(Invariants.log2Ceil(tree.size()), tree.height());
+        checkShape(tree, false);
+    }
+
+    @Test
+    public void strictMatchesModel(){
+        runModel(AvlTree.BalancePolicy.STRICT, 1);
+    }
+
+    @Test
+    public void weakMatchesModel(){
+        runModel(AvlTree.BalancePolicy.WEAK, 2);
+    }
+
+    @Test
+    public void relaxedMatchesModel(){
+        runModel(AvlTree.BalancePolicy.RELAXED, 3);
+    }
+
+    @Test
+    public void sequentialAddsStayShallow(){
+        //The worst case of an unbalanced tree, and the one that makes RELAXED rebuild the most
+        for(AvlTree.BalancePolicy policy : AvlTree.BalancePolicy.values()){
+            AvlTree<Integer> ascending = sequential(policy, 5_000);
+            checkShape(ascending, false);
+            AvlTree<Integer> descending = new AvlTree<>(false);
+            descending.balancePolicy(policy);
+            for(int i = 5_000; i > 0; i--){
+                descending.add(i);
+            }
+            checkShape(descending, false);
+        }
+    }
+
+    @Test
+    public void switchingPolicyRebuilds(){
+        AvlTree<Integer> tree = sequential(AvlTree.BalancePolicy.RELAXED, 4_000);
+        for(int i = 0; i < 4_000; i += 3){
+            tree.remove(i);
+        }
+        for(AvlTree.BalancePolicy policy : new AvlTree.BalancePolicy[]{AvlTree.BalancePolicy.WEAK,
+                AvlTree.BalancePolicy.STRICT, AvlTree.BalancePolicy.RELAXED}){
+            tree.balancePolicy(policy);
+            checkShape(tree, false);
+            tree.add(-1);
+            tree.remove(-1);
+            checkShape(tree, true);
+        }
+    }
+
+    @Test
+    public void parallelOpsOnLopsidedTrees(){
+        //Sequential adds leave RELAXED trees with large subtrees hanging off nodes that miss a child
+        for(AvlTree.BalancePolicy policy : AvlTree.BalancePolicy.values()){
+            AvlTree<Integer> tree = sequential(policy, 200_000);
+            AtomicLong count = new AtomicLong();
+            AtomicLong sum = new AtomicLong();
+            tree.parallelForEach(node -> {
+                count.incrementAndGet();
+                sum.addAndGet(node.id());
+            });
+            long expected = 200_000L * 199_999L / 2;
+            assertEquals(policy.name(), 200_000, count.get());
+            assertEquals(policy.name(), expected, sum.get());
+            assertEquals(policy.name(), expected, (long) tree.reduce(0L, (acc, node) -> acc + node.id(), Long::sum));
+            //Order-sensitive reduction : the last ID seen must be the largest one
+            assertEquals(policy.name(), 199_999, (int) tree.reduce(-1, (acc, node) -> node.id(), (a, b) -> b == -1 ? a : b));
+        }
+    }
+}
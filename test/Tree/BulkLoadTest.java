@@ -0,0 +1,100 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BulkLoadTest {
+
+    /***********************************************************************************************************
+     bulkLoad() and bulkAdd() against the same data added one by one with addAllData(), which is the model :
+     same (id, seq, data) sequence, including ID collisions, but always perfectly balanced.
+     ***********************************************************************************************************/
+
+    private static final String[] COLLIDING = {"Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa"};
+    //"Aa" and "BB" have the same hashcode, and so do the 4 longer ones
+
+    private static List<String> randomData(Random random, int n){
+        List<String> data = new ArrayList<>(n);
+        for(int i = 0; i < n; i++){
+            data.add(random.nextInt(4) == 0 ? COLLIDING[random.nextInt(COLLIDING.length)] : "s" + random.nextInt(n));
+        }
+        return data;
+    }
+
+    private static List<String> content(AvlTree<String> tree){
+        List<String> content = new ArrayList<>();
+        for(AvlNode<String> node : tree){
+            content.add(node.id() + "/" + node.seq() + "/" + node.data());
+        }
+        return content;
+    }
+
+    private static AvlTree<String> oneByOne(List<String> data, boolean areDuplicatesAllowed){
+        AvlTree<String> tree = new AvlTree<>(areDuplicatesAllowed);
+        tree.addAllData(data);
+        return tree;
+    }
+
+    private static void checkBalanced(AvlTree<String> tree){
+        Invariants.check(tree);
+        Invariants.checkStrict(tree.root());
+        assertEquals(Invariants.log2Ceil(tree.size()), tree.height());
+    }
+
+    @Test
+    public void bulkLoadMatchesAddAll(){
+        Random random = new Random(13);
+        for(boolean duplicates : new boolean[]{true, false}){
+            for(int n : new int[]{0, 1, 2, 5, 100, 10_000}){
+                List<String> data = randomData(random, n);
+                AvlTree<String> tree = AvlTree.bulkLoad(data, duplicates);
+                AvlTree<String> model = oneByOne(data, duplicates);
+                assertEquals(content(model), content(tree));
+                assertEquals(model.size(), tree.size());
+                checkBalanced(tree);
+                for(String s : COLLIDING){
+                    assertEquals(model.count(s), tree.count(s));
+                }
+            }
+        }
+        //Duplicates are allowed by default, like new AvlTree<>()
+        assertEquals(3, AvlTree.bulkLoad(Arrays.asList("a", "a", "a")).count("a"));
+    }
+
+    @Test
+    public void bulkAddMatchesAddAll(){
+        Random random = new Random(17);
+        for(boolean duplicates : new boolean[]{true, false}){
+            for(int[] sizes : new int[][]{{0, 100}, {100, 0}, {1_000, 10}, {10, 1_000}, {5_000, 5_000}}){
+                List<String> existing = randomData(random, sizes[0]);
+                List<String> batch = randomData(random, sizes[1]);
+                AvlTree<String> tree = oneByOne(existing, duplicates);
+                tree.bulkAdd(batch);
+                AvlTree<String> model = oneByOne(existing, duplicates);
+                model.addAllData(batch);
+                //Nodes already in the tree win collisions, and copies get their seq in the same order
+                assertEquals(content(model), content(tree));
+                checkBalanced(tree);
+                tree.add("after");
+                tree.remove(existing.isEmpty() ? "after" : existing.get(0));
+                Invariants.check(tree);
+            }
+        }
+    }
+
+    @Test
+    public void bulkAddLeavesSnapshotsAlone(){
+        List<String> data = randomData(new Random(19), 2_000);
+        AvlTree<String> tree = AvlTree.bulkLoad(data);
+        AvlTree<String> snapshot = tree.snapshot();
+        List<String> before = content(snapshot);
+        tree.bulkAdd(randomData(new Random(23), 2_000));
+        assertEquals(before, content(snapshot));
+        Invariants.check(snapshot);
+        assertEquals(4_000, tree.size());
+        checkBalanced(tree);
+    }
+}
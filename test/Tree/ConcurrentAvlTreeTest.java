@@ -0,0 +1,134 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentAvlTreeTest {
+
+    /***********************************************************************************************************
+     ConcurrentAvlTree against a TreeSet, then optimistic readers racing with writers : a key that is always
+     in the tree must always be found, and a lookup never returns a node of another ID.
+     ***********************************************************************************************************/
+
+    private static List<Integer> ids(AvlTree<Integer> tree){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : tree){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(27);
+        ConcurrentAvlTree<Integer> tree = new ConcurrentAvlTree<>(false);
+        TreeSet<Integer> model = new TreeSet<>();
+        for(int i = 0; i < 20_000; i++){
+            int id = random.nextInt(3_000);
+            if(random.nextBoolean()){
+                tree.add(id);
+                model.add(id);
+            }else{
+                tree.remove(id);
+                model.remove(id);
+            }
+            assertEquals(model.contains(id), tree.contains(id));
+            assertEquals(model.size(), tree.size());
+        }
+        AvlTree<Integer> snapshot = tree.snapshot();
+        assertEquals(new ArrayList<>(model), ids(snapshot));
+        Invariants.check(snapshot);
+        Invariants.checkStrict(snapshot.root());
+    }
+
+    @Test
+    public void duplicatesReturnTheFirstCopy(){
+        ConcurrentAvlTree<String> tree = new ConcurrentAvlTree<>(true);
+        tree.add("Aa");
+        tree.add("BB");
+        tree.add("Aa");
+        //Same hashcode : the optimistic walk finds "Aa" first, "BB" needs the locked path
+        assertEquals(0, tree.get("Aa").seq());
+        assertEquals("BB", tree.get("BB").data());
+        assertEquals(2, tree.count("Aa"));
+        assertEquals(3, tree.getAll("Aa").size() + tree.getAll("BB").size());
+        tree.removeAll("Aa");
+        assertNull(tree.get("Aa"));
+        assertEquals("BB", tree.get("Aa".hashCode()).data());
+    }
+
+    @Test
+    public void readersRaceWithWriters() throws InterruptedException{
+        //Even keys stay in the tree, writers add and remove the odd keys around them
+        ConcurrentAvlTree<Integer> tree = new ConcurrentAvlTree<>(false);
+        for(int id = 0; id < 20_000; id += 2){
+            tree.add(id);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> error = new AtomicReference<>();
+        Set<Integer> expected = new ConcurrentSkipListSet<>();
+        Thread[] writers = new Thread[2];
+        for(int w = 0; w < writers.length; w++){
+            int offset = 2 * w + 1;
+            writers[w] = new Thread(() -> {
+                for(int round = 0; round < 3; round++){
+                    for(int id = offset; id < 20_000; id += 2 * writers.length){
+                        tree.add(id);
+                        if(round < 2 || id % 3 == 0){
+                            tree.remove(id);
+                        }
+                    }
+                }
+                for(int id = offset; id < 20_000; id += 2 * writers.length){
+                    if(id % 3 != 0){
+                        expected.add(id);
+                    }
+                }
+            });
+        }
+        Thread[] readers = new Thread[3];
+        for(int r = 0; r < readers.length; r++){
+            long seed = r;
+            readers[r] = new Thread(() -> {
+                Random random = new Random(seed);
+                while(!done.get() && error.get() == null){
+                    int id = random.nextInt(20_000);
+                    AvlNode<Integer> node = tree.get(id);
+                    if(id % 2 == 0 && node == null){
+                        error.compareAndSet(null, "missing " + id);
+                    }else if(node != null && (node.id() != id || node.data() != id)){
+                        error.compareAndSet(null, "asked " + id + ", got " + node.id());
+                    }
+                    if(id % 2 == 0 && !tree.containsData(id)){
+                        error.compareAndSet(null, "no data " + id);
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        for(Thread writer : writers){
+            writer.start();
+        }
+        for(Thread writer : writers){
+            writer.join();
+        }
+        done.set(true);
+        for(Thread reader : readers){
+            reader.join();
+        }
+        assertNull(error.get());
+        for(int id = 0; id < 20_000; id += 2){
+            expected.add(id);
+        }
+        AvlTree<Integer> snapshot = tree.snapshot();
+        assertEquals(new ArrayList<>(expected), ids(snapshot));
+        Invariants.check(snapshot);
+        Invariants.checkStrict(snapshot.root());
+    }
+}
@@ -0,0 +1,259 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CursorTest {
+
+    /***********************************************************************************************************
+     AvlCursor moves checked against a TreeSet of the same IDs, on balanced, lopsided and lazily deleted trees,
+     and the number of levels each move walks down, counted by the cursor.
+     ***********************************************************************************************************/
+
+    private static AvlTree<Integer> chain(int length){
+        //Every node is the right child of the previous one : a tree as deep as it is large
+        AvlNode<Integer> node = null;
+        for(int id = length - 1; id >= 0; id--){
+            node = new AvlNode<>(null, id, null, node);
+        }
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.root(node);
+        return tree;
+    }
+
+    private static List<Integer> forward(AvlCursor<Integer> cursor){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node = cursor.first(); node != null; node = cursor.next()){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    private static List<Integer> backward(AvlCursor<Integer> cursor){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node = cursor.last(); node != null; node = cursor.prev()){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    private static void assertSeek(AvlCursor<Integer> cursor, TreeSet<Integer> model, int id){
+        assertEquals("seek " + id, model.contains(id), cursor.seek(id));
+        Integer expected = model.ceiling(id);
+        AvlNode<Integer> node = cursor.node();
+        assertEquals("seek " + id, expected, node == null ? null : node.id());
+    }
+
+    @Test
+    public void deepTrees(){
+        //Deeper than the initial path arrays
+        AvlTree<Integer> tree = chain(300);
+        AvlCursor<Integer> cursor = tree.cursor();
+        List<Integer> expected = new ArrayList<>();
+        for(int i = 0; i < 300; i++){
+            expected.add(i);
+        }
+        assertEquals(expected, forward(cursor));
+        Collections.reverse(expected);
+        assertEquals(expected, backward(cursor));
+        assertTrue(cursor.seek(299));
+        assertTrue(cursor.seek(0));
+        assertTrue(cursor.seek(150));
+        assertEquals(151, (int) cursor.next().id());
+    }
+
+    @Test
+    public void movesMatchModel(){
+        Random random = new Random(11);
+        for(AvlTree.BalancePolicy policy : AvlTree.BalancePolicy.values()){
+            AvlTree<Integer> tree = new AvlTree<>(false);
+            tree.balancePolicy(policy);
+            TreeSet<Integer> model = new TreeSet<>();
+            AvlCursor<Integer> cursor = tree.cursor();
+            for(int i = 0; i < 3_000; i++){
+                int id = random.nextInt(2_000);
+                switch(random.nextInt(6)){
+                    case 0:
+                        tree.add(id);
+                        model.add(id);
+                        break;
+                    case 1:
+                        tree.remove(id);
+                        model.remove(id);
+                        break;
+                    case 2:
+                        if(cursor.insert(id) != null){
+                            model.add(id);
+                            assertEquals(id, (int) cursor.node().id());
+                        }
+                        break;
+                    case 3:{
+                        AvlNode<Integer> current = cursor.node();
+                        AvlNode<Integer> removed = cursor.remove();
+                        assertSame(current, removed);
+                        if(removed != null){
+                            model.remove(removed.id());
+                            Integer following = model.higher(removed.id());
+                            assertEquals(following, cursor.node() == null ? null : cursor.node().id());
+                        }
+                        break;
+                    }
+                    case 4:{
+                        AvlNode<Integer> before = cursor.node();
+                        Integer expected = before == null ? (model.isEmpty() ? null : model.first()) : model.higher(before.id());
+                        AvlNode<Integer> next = cursor.next();
+                        assertEquals(expected, next == null ? null : next.id());
+                        break;
+                    }
+                    default:
+                        assertSeek(cursor, model, id);
+                }
+            }
+            assertEquals(new ArrayList<>(model), forward(cursor));
+        }
+    }
+
+    @Test
+    public void skipsTombstones(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.lazyDeletes(1);
+        TreeSet<Integer> model = new TreeSet<>();
+        for(int i = 0; i < 1_000; i++){
+            tree.add(i);
+            model.add(i);
+        }
+        Random random = new Random(4);
+        for(int i = 0; i < 600; i++){
+            int id = random.nextInt(1_000);
+            tree.remove(id);
+            model.remove(id);
+        }
+        AvlCursor<Integer> cursor = tree.cursor();
+        assertEquals(new ArrayList<>(model), forward(cursor));
+        assertEquals(new ArrayList<>(model.descendingSet()), backward(cursor));
+        for(int id = -1; id <= 1_000; id++){
+            assertSeek(cursor, model, id);
+        }
+    }
+
+    @Test
+    public void shortSeeksStayLocal(){
+        int n = 1 << 16;
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            ids.add(i);
+        }
+        AvlTree<Integer> tree = AvlTree.bulkLoad(ids, false);
+        for(int step : new int[]{1, 16, 256}){
+            AvlCursor<Integer> cursor = tree.cursor();
+            cursor.seek(0);
+            long before = cursor.descended();
+            int seeks = 0;
+            for(int id = step; id < n; id += step){
+                assertTrue(cursor.seek(id));
+                seeks++;
+            }
+            //A sweep walks each level of the tree about once : a few levels per seek, plus log2(step) to reach the target
+            double average = (cursor.descended() - before) / (double) seeks;
+            assertTrue("step " + step + " : " + average, average <= 3 + 2 * Integer.numberOfTrailingZeros(step));
+        }
+    }
+
+    @Test
+    public void fingerUpdatesSkipTheRoot(){
+        int n = 1 << 16;
+        List<Integer> even = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            even.add(2 * i);
+        }
+        AvlTree<Integer> tree = AvlTree.bulkLoad(even, false);
+        AvlCursor<Integer> cursor = tree.cursor();
+        Random random = new Random(8);
+        long inserts = 0;
+        long removes = 0;
+        int rounds = 2_000;
+        for(int i = 0; i < rounds; i++){
+            int id = 2 * random.nextInt(n);
+            assertTrue(cursor.seek(id));
+            long before = cursor.descended();
+            assertEquals(id + 1, (int) cursor.insert(id + 1).id());
+            inserts += cursor.descended() - before;
+            before = cursor.descended();
+            assertEquals(id + 1, (int) cursor.remove().id());
+            removes += cursor.descended() - before;
+            assertEquals(id + 2 < 2 * n ? (Integer) (id + 2) : null, cursor.node() == null ? null : cursor.node().id());
+        }
+        //A search from the root walks the whole height, about 17 levels here
+        int height = tree.height();
+        assertTrue("insert " + inserts / (double) rounds, inserts < rounds * height / 2);
+        assertTrue("remove " + removes / (double) rounds, removes < rounds * height / 2);
+        assertEquals(n, tree.size());
+        Invariants.check(tree);
+        Invariants.checkStrict(tree.root());
+    }
+
+    @Test
+    public void fingerUpdatesMatchModel(){
+        //Duplicates, snapshots sharing the path, lazy deletes and every balance policy
+        for(AvlTree.BalancePolicy policy : AvlTree.BalancePolicy.values()){
+            for(double ratio : new double[]{0, 0.3}){
+                Random random = new Random(policy.ordinal() * 10 + (ratio > 0 ? 1 : 0));
+                AvlTree<Integer> tree = new AvlTree<>(true);
+                tree.balancePolicy(policy);
+                tree.lazyDeletes(ratio);
+                TreeMap<Integer, Integer> model = new TreeMap<>();
+                Map<AvlTree<Integer>, List<Integer>> snapshots = new HashMap<>();
+                AvlCursor<Integer> cursor = tree.cursor();
+                for(int i = 0; i < 4_000; i++){
+                    int id = random.nextInt(300);
+                    int op = random.nextInt(10);
+                    if(op < 4){
+                        AvlNode<Integer> node = new AvlNode<>(id);
+                        assertSame(node, cursor.insert(node));
+                        assertSame(node, cursor.node());
+                        model.merge(id, 1, Integer::sum);
+                    }else if(op < 7){
+                        AvlNode<Integer> current = cursor.node();
+                        if(current == null){
+                            continue;
+                        }
+                        List<AvlNode<Integer>> copies = tree.getAll(current.data());
+                        boolean isLastCopy = copies.get(copies.size() - 1) == current;
+                        assertSame(current, cursor.remove());
+                        model.merge(current.id(), -1, Integer::sum);
+                        model.remove(current.id(), 0);
+                        Integer following = isLastCopy ? model.higherKey(current.id()) : (Integer) current.id();
+                        assertEquals(following, cursor.node() == null ? null : cursor.node().id());
+                    }else if(op < 9){
+                        assertEquals(model.containsKey(id), cursor.seek(id));
+                        Integer expected = model.ceilingKey(id);
+                        assertEquals(expected, cursor.node() == null ? null : cursor.node().id());
+                    }else if(snapshots.size() < 8){
+                        snapshots.put(tree.snapshot(), ids(tree));
+                    }
+                }
+                Invariants.check(tree);
+                if(policy == AvlTree.BalancePolicy.STRICT){
+                    Invariants.checkStrict(tree.root());
+                }else if(policy == AvlTree.BalancePolicy.WEAK){
+                    Invariants.checkWeak(tree.root());
+                }
+                List<Integer> expected = new ArrayList<>();
+                model.forEach((id, count) -> expected.addAll(Collections.nCopies(count, id)));
+                assertEquals(policy + " " + ratio, expected, ids(tree));
+                snapshots.forEach((snapshot, content) -> assertEquals(content, ids(snapshot)));
+            }
+        }
+    }
+
+    private static List<Integer> ids(AvlTree<Integer> tree){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : tree){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+}
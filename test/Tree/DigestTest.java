@@ -0,0 +1,101 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DigestTest {
+
+    /***********************************************************************************************************
+     Cached digests behind equals(), hashCode() and diff(), checked against plain sets of (id, data) pairs.
+     ***********************************************************************************************************/
+
+    private static Set<Integer> ids(Collection<AvlNode<Integer>> nodes){
+        Set<Integer> ids = new HashSet<>();
+        for(AvlNode<Integer> node : nodes){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void idZeroCounts(){
+        //Integer 0 has ID 0 and data hash 0
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.add(0);
+        AvlTree<Integer> empty = new AvlTree<>(false);
+        assertNotEquals(0, tree.digest());
+        assertNotEquals(empty, tree);
+        assertNotEquals(empty.hashCode(), tree.hashCode());
+        assertEquals(1, tree.diff(empty).size());
+        assertEquals(1, empty.diff(tree).size());
+    }
+
+    @Test
+    public void diffReportsIdZero(){
+        AvlTree<Integer> a = new AvlTree<>(false);
+        AvlTree<Integer> b = new AvlTree<>(false);
+        a.addAllData(Arrays.asList(0, 2, 7));
+        b.add(7);
+        assertEquals(new HashSet<>(Arrays.asList(0, 2)), ids(a.diff(b)));
+    }
+
+    @Test
+    public void equalsComparesSizes(){
+        AvlTree<Integer> a = new AvlTree<>(false);
+        a.add(1);
+        assertNotEquals(new AvlTree<Integer>(), a);
+        assertEquals(1, a.size());
+    }
+
+    @Test
+    public void equalContentEqualTrees(){
+        //Same pairs added in different orders give different shapes but equal trees
+        List<Integer> values = new ArrayList<>();
+        for(int i = -500; i < 500; i++){
+            values.add(i);
+        }
+        AvlTree<Integer> a = new AvlTree<>(false);
+        a.addAllData(values);
+        Collections.shuffle(values, new Random(1));
+        AvlTree<Integer> b = new AvlTree<>(false);
+        b.addAllData(values);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertTrue(a.diff(b).isEmpty());
+    }
+
+    @Test
+    public void diffMatchesModel(){
+        Random random = new Random(3);
+        for(int round = 0; round < 200; round++){
+            Set<Integer> left = new HashSet<>();
+            Set<Integer> right = new HashSet<>();
+            AvlTree<Integer> a = new AvlTree<>(false);
+            AvlTree<Integer> b = new AvlTree<>(false);
+            for(int i = 0; i < random.nextInt(60); i++){
+                int value = random.nextInt(40) - 5;
+                left.add(value);
+                a.add(value);
+                if(random.nextInt(4) > 0){
+                    right.add(value);
+                    b.add(value);
+                }
+            }
+            for(int i = 0; i < random.nextInt(10); i++){
+                int value = random.nextInt(40) - 5;
+                right.add(value);
+                b.add(value);
+            }
+            Set<Integer> expected = new HashSet<>(left);
+            expected.addAll(right);
+            Set<Integer> common = new HashSet<>(left);
+            common.retainAll(right);
+            expected.removeAll(common);
+            assertEquals(expected, ids(a.diff(b)));
+            assertEquals(left.equals(right), a.equals(b));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DuplicatesTest {
+
+    /***********************************************************************************************************
+     Duplicates under their (id, seq) key, against a model keeping every copy of each data object in insertion
+     order. Data is drawn from strings whose hashcodes collide, so equal IDs don't mean equal data.
+     ***********************************************************************************************************/
+
+    private static final String[] DATA = {"Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa", "x", "y", "z"};
+
+    private static void checkAgainst(AvlTree<String> tree, Map<String, Integer> model){
+        int size = 0;
+        for(String data : DATA){
+            int count = model.getOrDefault(data, 0);
+            size += count;
+            assertEquals(data, count, tree.count(data));
+            List<AvlNode<String>> copies = tree.getAll(data);
+            assertEquals(count, copies.size());
+            for(int i = 1; i < copies.size(); i++){
+                //Insertion order, which is seq order
+                assertTrue(copies.get(i - 1).seq() < copies.get(i).seq());
+            }
+            for(AvlNode<String> copy : copies){
+                assertEquals(data, copy.data());
+                assertEquals(data.hashCode(), copy.id());
+            }
+            AvlNode<String> first = tree.get(data);
+            assertEquals(count > 0, tree.containsData(data));
+            assertTrue(count == 0 ? first == null : first == copies.get(0));
+        }
+        assertEquals(size, tree.size());
+    }
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(47);
+        AvlTree<String> tree = new AvlTree<>(true);
+        Map<String, Integer> model = new HashMap<>();
+        for(int i = 0; i < 20_000; i++){
+            String data = DATA[random.nextInt(DATA.length)];
+            switch(random.nextInt(5)){
+                case 0:
+                case 1:
+                case 2:
+                    tree.add(data);
+                    model.merge(data, 1, Integer::sum);
+                    break;
+                case 3:
+                    tree.remove(data);
+                    model.computeIfPresent(data, (k, count) -> count == 1 ? null : count - 1);
+                    break;
+                default:
+                    if(random.nextInt(10) == 0){
+                        tree.removeAll(data);
+                        model.remove(data);
+                    }
+            }
+            if(i % 500 == 0){
+                checkAgainst(tree, model);
+                Invariants.check(tree);
+                Invariants.checkStrict(tree.root());
+            }
+        }
+        checkAgainst(tree, model);
+    }
+
+    @Test
+    public void removeTakesTheFirstCopy(){
+        AvlTree<String> tree = new AvlTree<>(true);
+        tree.add("Aa");
+        tree.add("BB");
+        tree.add("Aa");
+        List<AvlNode<String>> copies = tree.getAll("Aa");
+        tree.remove("Aa");
+        assertEquals(Collections.singletonList(copies.get(1)), tree.getAll("Aa"));
+        //A later copy gets a seq after every copy of its ID, even once earlier ones are gone
+        tree.add("Aa");
+        List<AvlNode<String>> after = tree.getAll("Aa");
+        assertEquals(2, after.size());
+        assertTrue(after.get(0) == copies.get(1));
+        assertTrue(after.get(1).seq() > tree.get("BB").seq());
+        Invariants.check(tree);
+    }
+
+    @Test
+    public void collisionsWithoutDuplicates(){
+        //"BB" collides with "Aa" : without duplicates, the first one holds the ID
+        AvlTree<String> tree = new AvlTree<>(false);
+        tree.add("Aa");
+        tree.add("BB");
+        tree.add("Aa");
+        assertEquals(1, tree.size());
+        assertEquals(1, tree.count("Aa"));
+        assertEquals(0, tree.count("BB"));
+        assertNull(tree.get("BB"));
+        tree.remove("BB");
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void manyCopiesStayBalanced(){
+        //Every copy shares one ID : the tree is ordered by seq alone, and must stay balanced
+        AvlTree<String> tree = new AvlTree<>(true);
+        for(int i = 0; i < 100_000; i++){
+            tree.add(i % 2 == 0 ? "Aa" : "BB");
+        }
+        assertEquals(50_000, tree.count("Aa"));
+        assertEquals(50_000, tree.count("BB"));
+        assertTrue(tree.height() <= 1.44 * Math.log(100_002) / Math.log(2));
+        tree.removeAll("BB");
+        assertEquals(50_000, tree.size());
+        assertEquals(0, tree.count("BB"));
+        Invariants.checkStrict(tree.root());
+    }
+}
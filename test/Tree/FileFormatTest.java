@@ -0,0 +1,158 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FileFormatTest {
+
+    /***********************************************************************************************************
+     Save files written by AvlTree.save() : round trips with each codec, and corrupted headers.
+     ***********************************************************************************************************/
+
+    private static Path saved(AvlTree<?> tree) throws IOException{
+        Path path = Files.createTempFile("tree", ".avl");
+        assertTrue(tree.save(path.toString()));
+        return path;
+    }
+
+    private static void patchCount(Path path, int count) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)){
+            ByteBuffer value = ByteBuffer.allocate(4);
+            value.putInt(0, count);
+            channel.write(value, 8);
+        }
+    }
+
+    private static List<Object> data(AvlTree<?> tree){
+        List<Object> data = new ArrayList<>();
+        for(AvlNode<?> node : tree){
+            data.add(node.data());
+        }
+        return data;
+    }
+
+    @Test
+    public void defaultCodecRoundTrip() throws IOException{
+        //Records of the default codec follow each other in the file, with null data in between.
+        //Common types are written directly, the others through Java serialization.
+        char[] chars = new char[70_000];
+        Arrays.fill(chars, '\u00e9');
+        String longString = new String(chars);
+        AvlTree<Serializable> tree = new AvlTree<>(true);
+        tree.add(new AvlNode<>("a", 1));
+        tree.add(new AvlNode<>(null, 2));
+        tree.add(new AvlNode<>(new ArrayList<>(Arrays.asList(1, 2, 3)), 3));
+        tree.add(new AvlNode<>(new Date(0), 3));
+        tree.add(new AvlNode<>("", 4));
+        tree.add(new AvlNode<>(-7, 5));
+        tree.add(new AvlNode<>(Long.MIN_VALUE, 6));
+        tree.add(new AvlNode<>(0.5, 7));
+        tree.add(new AvlNode<>(longString, 8));
+        Path path = saved(tree);
+
+        AvlTree<Serializable> loaded = new AvlTree<>(true);
+        assertTrue(loaded.load(path.toString()));
+        assertEquals(Arrays.asList("a", null, Arrays.asList(1, 2, 3), new Date(0), "", -7, Long.MIN_VALUE, 0.5, longString),
+                data(loaded));
+
+        MappedAvlTree<Serializable> mapped = new MappedAvlTree<>(path.toString(), AvlCodec.standard());
+        assertEquals(Arrays.asList(1, 2, 3), mapped.get(3).data());
+        assertEquals("", mapped.get(4).data());
+        assertEquals(longString, mapped.get(8).data());
+    }
+
+    @Test
+    public void serializableRoundTrip() throws IOException{
+        AvlTree<Serializable> tree = new AvlTree<>(true);
+        tree.codec(AvlCodec.serializable());
+        tree.add(new AvlNode<>("a", 1));
+        tree.add(new AvlNode<>(null, 2));
+        tree.add(new AvlNode<>(new ArrayList<>(Arrays.asList(1, 2, 3)), 3));
+        Path path = saved(tree);
+
+        AvlTree<Serializable> loaded = new AvlTree<>(true);
+        loaded.codec(AvlCodec.serializable());
+        assertTrue(loaded.load(path.toString()));
+        assertEquals(Arrays.asList("a", null, Arrays.asList(1, 2, 3)), data(loaded));
+
+        MappedAvlTree<Serializable> mapped = new MappedAvlTree<>(path.toString(), AvlCodec.serializable());
+        assertEquals(Arrays.asList(1, 2, 3), mapped.get(3).data());
+    }
+
+    @Test
+    public void codecsStayWithinTheirPayload() throws IOException{
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.codec(AvlCodec.integers());
+        tree.addAllData(Arrays.asList(1, 2, 3));
+        Path path = saved(tree);
+
+        //Reading less than the payload : the next records are still found
+        AvlNode<Integer>[] nodes = AvlFileFormat.read(path, new AvlCodec<Integer>() {
+            @Override
+            public void encode(Integer data, DataOutput out){
+            }
+
+            @Override
+            public Integer decode(DataInput in) throws IOException {
+                return (int) in.readShort();
+            }
+        });
+        assertEquals(3, nodes.length);
+        for(int i = 0; i < 3; i++){
+            assertEquals(i + 1, nodes[i].id());
+            assertEquals(0, (int) nodes[i].data());
+        }
+
+        //Reading more than the payload is an error, not the start of the next record
+        try{
+            AvlFileFormat.read(path, AvlCodec.longs());
+            fail();
+        }catch (StreamCorruptedException e){
+            //Expected
+        }
+    }
+
+    @Test
+    public void countTooLargeForFile() throws IOException{
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.codec(AvlCodec.integers());
+        tree.addAllData(Arrays.asList(1, 2, 3));
+        for(int count : new int[]{Integer.MAX_VALUE, -1, 4}){
+            Path path = saved(tree);
+            patchCount(path, count);
+            try{
+                AvlFileFormat.read(path, AvlCodec.integers());
+                fail("count " + count);
+            }catch (StreamCorruptedException e){
+                //Expected
+            }
+            try{
+                new MappedAvlTree<>(path.toString(), AvlCodec.integers());
+                fail("count " + count);
+            }catch (StreamCorruptedException e){
+                //Expected
+            }
+            AvlTree<Integer> loaded = new AvlTree<>(false);
+            loaded.codec(AvlCodec.integers());
+            assertFalse(loaded.load(path.toString()));
+        }
+    }
+
+    @Test
+    public void emptyTreeRoundTrip() throws IOException{
+        Path path = saved(new AvlTree<Integer>(false));
+        AvlTree<Integer> loaded = new AvlTree<>(false);
+        loaded.add(1);
+        assertTrue(loaded.load(path.toString()));
+        assertTrue(loaded.isEmpty());
+    }
+}
@@ -0,0 +1,63 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FrozenAvlTreeTest {
+
+    /***********************************************************************************************************
+     FrozenAvlTree lookups and in-order walks checked against a TreeMap counting the copies of each ID,
+     for every size up to a few complete levels of the implicit tree.
+     ***********************************************************************************************************/
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(9);
+        for(int size = 0; size <= 300; size++){
+            AvlTree<Integer> tree = new AvlTree<>(true);
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            for(int i = 0; i < size; i++){
+                int id = random.nextInt(2 * size + 1) - size;
+                tree.add(new AvlNode<>(null, id));
+                model.merge(id, 1, Integer::sum);
+            }
+            FrozenAvlTree<Integer> frozen = tree.freeze();
+            assertEquals(size, frozen.size());
+
+            List<Integer> expected = new ArrayList<>();
+            for(Map.Entry<Integer, Integer> e : model.entrySet()){
+                for(int i = 0; i < e.getValue(); i++){
+                    expected.add(e.getKey());
+                }
+            }
+            List<Integer> ids = new ArrayList<>();
+            for(AvlNode<Integer> node : frozen){
+                ids.add(node.id());
+            }
+            assertEquals(expected, ids);
+
+            for(int id = -size - 2; id <= size + 2; id++){
+                assertEquals(model.containsKey(id), frozen.contains(id));
+                assertEquals((int) model.getOrDefault(id, 0), frozen.count(id));
+                AvlNode<Integer> node = frozen.get(id);
+                assertEquals(model.containsKey(id) ? (Integer) id : null, node == null ? null : node.id());
+            }
+            assertFalse(frozen.contains(Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void thawMatchesTree(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(int i = 0; i < 1_000; i++){
+            tree.add(i * 7 % 1_009);
+        }
+        AvlTree<Integer> thawed = tree.freeze().thaw();
+        assertEquals(tree, thawed);
+        thawed.add(5_000);
+        assertEquals(1_000, tree.size());
+    }
+}
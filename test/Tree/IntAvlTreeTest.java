@@ -0,0 +1,164 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IntAvlTreeTest {
+
+    /***********************************************************************************************************
+     IntAvlTree and IntObjAvlTree against a TreeSet and a TreeMap, with the slot arrays checked for order,
+     heights and AVL balance.
+     ***********************************************************************************************************/
+
+    private static int check(IntAvlTree tree, int node, long low, long high){
+        //Returns the subtree height, checking keys stay within (low, high)
+        if(node == IntAvlTree.NIL){
+            return 0;
+        }
+        int k = tree.key[node];
+        assertTrue("order at " + k, low < k && k < high);
+        int leftHeight = check(tree, tree.left[node], low, k);
+        int rightHeight = check(tree, tree.right[node], k, high);
+        assertEquals("height at " + k, 1 + Math.max(leftHeight, rightHeight), tree.height[node]);
+        assertTrue("balance at " + k, Math.abs(leftHeight - rightHeight) <= 1);
+        return tree.height[node];
+    }
+
+    private static void check(IntAvlTree tree){
+        check(tree, tree.root, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(0, tree.height[IntAvlTree.NIL]);
+    }
+
+    private static int[] toArray(Collection<Integer> ids){
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(4);
+        IntAvlTree tree = new IntAvlTree();
+        TreeSet<Integer> model = new TreeSet<>();
+        for(int i = 0; i < 50_000; i++){
+            int id = random.nextInt(6_000) - 3_000;
+            if(random.nextInt(3) > 0){
+                assertEquals(model.add(id), tree.add(id));
+            }else{
+                assertEquals(model.remove(id), tree.remove(id));
+            }
+            assertEquals(model.size(), tree.size());
+            if(i % 2_000 == 0){
+                check(tree);
+            }
+        }
+        check(tree);
+        assertArrayEquals(toArray(model), tree.toArray());
+        for(int id = -3_000; id < 3_000; id++){
+            assertEquals(model.contains(id), tree.contains(id));
+        }
+    }
+
+    @Test
+    public void extremeKeys(){
+        IntAvlTree tree = new IntAvlTree(1);
+        int[] ids = {Integer.MAX_VALUE, 0, Integer.MIN_VALUE, -1, 1, Integer.MAX_VALUE - 1};
+        for(int id : ids){
+            assertTrue(tree.add(id));
+        }
+        assertFalse(tree.add(Integer.MIN_VALUE));
+        check(tree);
+        assertArrayEquals(new int[]{Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE - 1, Integer.MAX_VALUE}, tree.toArray());
+        assertEquals("[-2147483648] [-1] [0] [1] [2147483646] [2147483647] ", tree.toString());
+    }
+
+    @Test
+    public void slotsAreReused(){
+        //Once the arrays fit the tree, add & remove churn never grows them
+        IntAvlTree tree = new IntAvlTree(1_000);
+        for(int id = 0; id < 1_000; id++){
+            tree.add(id);
+        }
+        int[] keys = tree.key;
+        int capacity = tree.capacity();
+        Random random = new Random(7);
+        List<Integer> present = new ArrayList<>();
+        for(int id = 0; id < 1_000; id++){
+            present.add(id);
+        }
+        for(int i = 0; i < 20_000; i++){
+            //Swaps a key of the tree for an absent one, so the tree keeps its 1000 keys
+            int index = random.nextInt(present.size());
+            assertTrue(tree.remove(present.get(index)));
+            int id;
+            do{
+                id = random.nextInt(3_000);
+            }while(tree.contains(id));
+            assertTrue(tree.add(id));
+            present.set(index, id);
+        }
+        assertSame(keys, tree.key);
+        assertEquals(capacity, tree.capacity());
+        check(tree);
+
+        tree.clear();
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.height());
+        assertSame(keys, tree.key);
+        for(int id = 0; id < 1_000; id++){
+            tree.add(-id);
+        }
+        assertSame(keys, tree.key);
+        check(tree);
+    }
+
+    @Test
+    public void valuesMatchModel(){
+        Random random = new Random(11);
+        IntObjAvlTree<String> tree = new IntObjAvlTree<>();
+        TreeMap<Integer, String> model = new TreeMap<>();
+        for(int i = 0; i < 30_000; i++){
+            int id = random.nextInt(2_000);
+            if(random.nextInt(3) > 0){
+                String value = "v" + i;
+                assertEquals(!model.containsKey(id), tree.add(id, value));
+                model.put(id, value);
+            }else{
+                assertEquals(model.remove(id) != null, tree.remove(id));
+            }
+        }
+        check(tree);
+        assertArrayEquals(toArray(model.keySet()), tree.toArray());
+        for(int id = 0; id < 2_000; id++){
+            //Values follow their key when a removed node's successor moves into its slot
+            assertEquals(model.get(id), tree.get(id));
+        }
+        tree.clear();
+        assertNull(tree.get(model.firstKey()));
+        assertTrue(tree.add(5, "five"));
+        assertEquals("five", tree.get(5));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serializationRoundTrip() throws Exception{
+        IntObjAvlTree<String> tree = new IntObjAvlTree<>();
+        for(int id = 0; id < 100; id++){
+            tree.add(id * 3, "v" + id);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            out.writeObject(tree);
+        }
+        IntObjAvlTree<String> copy;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+            copy = (IntObjAvlTree<String>) in.readObject();
+        }
+        assertArrayEquals(tree.toArray(), copy.toArray());
+        assertEquals("v7", copy.get(21));
+        assertTrue(copy.add(1, "one"));
+        check(copy);
+    }
+}
@@ -0,0 +1,80 @@
+package Tree;
+
+import static org.junit.Assert.*;
+
+final class Invariants {
+
+    /***********************************************************************************************************
+     Structural checks shared by the tests : search order and cached values of every node, and the shape
+     promised by each balance policy. Recursive, so only for trees of a reasonable height.
+     ***********************************************************************************************************/
+
+    private Invariants(){
+    }
+
+    static void check(AvlTree<?> tree){
+        //Search order by (id, seq), and height, size, tombstones & digest caches matching the children
+        check(tree.root(), null);
+    }
+
+    private static <T> AvlNode<T> check(AvlNode<T> node, AvlNode<T> previous){
+        //Returns the last node of the subtree in-order, to compare it with the next one
+        if(node == null){
+            return previous;
+        }
+        previous = check(node.left(), previous);
+        if(previous != null){
+            assertTrue("order at " + node.id(), previous.id() < node.id()
+                    || previous.id() == node.id() && previous.seq() < node.seq());
+        }
+        AvlNode<T> last = check(node.right(), node);
+        int leftHeight = node.left() == null ? 0 : node.left().height();
+        int rightHeight = node.right() == null ? 0 : node.right().height();
+        assertEquals("height at " + node.id(), 1 + Math.max(leftHeight, rightHeight), node.height());
+        int size = (node.deleted() ? 0 : 1) + (node.left() == null ? 0 : node.left().size())
+                + (node.right() == null ? 0 : node.right().size());
+        assertEquals("size at " + node.id(), size, node.size());
+        int tombstones = (node.deleted() ? 1 : 0) + (node.left() == null ? 0 : node.left().tombstones())
+                + (node.right() == null ? 0 : node.right().tombstones());
+        assertEquals("tombstones at " + node.id(), tombstones, node.tombstones());
+        long digest = (node.deleted() ? 0 : node.ownDigest()) + (node.left() == null ? 0 : node.left().digest())
+                + (node.right() == null ? 0 : node.right().digest());
+        assertEquals("digest at " + node.id(), digest, node.digest());
+        return last;
+    }
+
+    static void checkStrict(AvlNode<?> node){
+        //Classic AVL : subtree heights differ by 1 at most
+        if(node == null){
+            return;
+        }
+        int leftHeight = node.left() == null ? 0 : node.left().height();
+        int rightHeight = node.right() == null ? 0 : node.right().height();
+        assertTrue("balance at " + node.id(), Math.abs(leftHeight - rightHeight) <= 1);
+        checkStrict(node.left());
+        checkStrict(node.right());
+    }
+
+    static void checkWeak(AvlNode<?> node){
+        //Weak AVL : rank differences of 1 or 2 with each child, missing children having rank 0, and leaves rank 1
+        if(node == null){
+            return;
+        }
+        int leftRank = node.left() == null ? 0 : node.left().rank();
+        int rightRank = node.right() == null ? 0 : node.right().rank();
+        int leftDiff = node.rank() - leftRank;
+        int rightDiff = node.rank() - rightRank;
+        assertTrue("rank at " + node.id(), leftDiff == 1 || leftDiff == 2);
+        assertTrue("rank at " + node.id(), rightDiff == 1 || rightDiff == 2);
+        if(node.left() == null && node.right() == null){
+            assertEquals("leaf rank at " + node.id(), 1, node.rank());
+        }
+        checkWeak(node.left());
+        checkWeak(node.right());
+    }
+
+    static int log2Ceil(int n){
+        //Height of a perfectly balanced tree of n nodes
+        return 32 - Integer.numberOfLeadingZeros(n);
+    }
+}
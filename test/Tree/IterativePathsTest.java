@@ -0,0 +1,96 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class IterativePathsTest {
+
+    /***********************************************************************************************************
+     The loop-based add, remove and get of AvlTree : same shapes as the recursive IntAvlTree after the same
+     operations, bounded stack use, and trees deeper than the initial path stack.
+     ***********************************************************************************************************/
+
+    private static List<Integer> preOrder(AvlTree<Integer> tree){
+        List<Integer> ids = new ArrayList<>();
+        Iterator<AvlNode<Integer>> it = tree.preOrderIterator();
+        while(it.hasNext()){
+            ids.add(it.next().id());
+        }
+        return ids;
+    }
+
+    private static void preOrder(IntAvlTree tree, int node, List<Integer> ids){
+        if(node != IntAvlTree.NIL){
+            ids.add(tree.key[node]);
+            preOrder(tree, tree.left[node], ids);
+            preOrder(tree, tree.right[node], ids);
+        }
+    }
+
+    @Test
+    public void sameShapesAsRecursiveTree(){
+        //IntAvlTree balances with the classic recursive insertion & deletion : both trees must match node for node
+        Random random = new Random(53);
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        IntAvlTree reference = new IntAvlTree();
+        for(int i = 0; i < 30_000; i++){
+            int id = random.nextInt(4_000);
+            if(random.nextInt(3) > 0){
+                tree.add(id);
+                reference.add(id);
+            }else{
+                tree.remove(id);
+                reference.remove(id);
+            }
+            if(i % 500 == 0){
+                List<Integer> expected = new ArrayList<>();
+                preOrder(reference, reference.root, expected);
+                assertEquals(expected, preOrder(tree));
+            }
+        }
+    }
+
+    @Test
+    public void smallThreadStacks() throws InterruptedException{
+        //A recursive walk of a degenerate tree would need thousands of frames
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try{
+                AvlTree<Integer> tree = new AvlTree<>(false);
+                AvlNode<Integer> root = null;
+                for(int id = 20_000; id > 0; id--){
+                    //A right-leaning chain, as root() lets anyone build
+                    AvlNode<Integer> node = new AvlNode<>(id);
+                    node.right(root);
+                    node.update();
+                    root = node;
+                }
+                tree.root(root);
+                assertEquals(20_000, tree.height());
+                assertEquals(20_000, tree.size());
+                assertTrue(tree.contains(20_000));
+                assertEquals(15_000, (int) tree.get(15_000).data());
+                tree.add(20_001);
+                tree.remove(19_999);
+                assertFalse(tree.contains(19_999));
+                assertTrue(tree.contains(20_001));
+                assertEquals(20_000, tree.size());
+                assertEquals(10_000, tree.rank(10_001));
+                int count = 0;
+                for(AvlNode<Integer> ignored : tree){
+                    count++;
+                }
+                assertEquals(20_000, count);
+            }catch (Throwable e){
+                error.set(e);
+            }
+        }, "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+        assertNull(String.valueOf(error.get()), error.get());
+    }
+}
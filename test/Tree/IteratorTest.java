@@ -0,0 +1,186 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class IteratorTest {
+
+    /***********************************************************************************************************
+     In-order, pre-order and level-order iterators and the Spliterator, checked against a TreeSet and against
+     recursive walks of the same tree.
+     ***********************************************************************************************************/
+
+    private static final class Counted {
+
+        static int hashCodes = 0;
+
+        final int value;
+
+        Counted(int value){
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode(){
+            hashCodes++;
+            return value;
+        }
+    }
+
+    private static AvlTree<Integer> randomTree(Random random, int n, TreeSet<Integer> model){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(int i = 0; i < n; i++){
+            int id = random.nextInt(4 * n + 1);
+            tree.add(id);
+            model.add(id);
+        }
+        return tree;
+    }
+
+    private static void preOrder(AvlNode<Integer> node, List<Integer> ids){
+        if(node != null){
+            ids.add(node.id());
+            preOrder(node.left(), ids);
+            preOrder(node.right(), ids);
+        }
+    }
+
+    private static List<Integer> levelOrder(AvlNode<Integer> root){
+        List<Integer> ids = new ArrayList<>();
+        for(int depth = 1; depth <= (root == null ? 0 : root.height()); depth++){
+            level(root, depth, ids);
+        }
+        return ids;
+    }
+
+    private static void level(AvlNode<Integer> node, int depth, List<Integer> ids){
+        if(node == null){
+            return;
+        }
+        if(depth == 1){
+            ids.add(node.id());
+        }else{
+            level(node.left(), depth - 1, ids);
+            level(node.right(), depth - 1, ids);
+        }
+    }
+
+    private static List<Integer> ids(Iterator<AvlNode<Integer>> it){
+        List<Integer> ids = new ArrayList<>();
+        while(it.hasNext()){
+            ids.add(it.next().id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void ordersMatchModel(){
+        Random random = new Random(2);
+        for(int n : new int[]{0, 1, 2, 3, 10, 1_000, 20_000}){
+            TreeSet<Integer> model = new TreeSet<>();
+            AvlTree<Integer> tree = randomTree(random, n, model);
+            assertEquals(new ArrayList<>(model), ids(tree.iterator()));
+            assertEquals(new ArrayList<>(model), ids(tree.inOrderIterator()));
+            List<Integer> pre = new ArrayList<>();
+            preOrder(tree.root(), pre);
+            assertEquals(pre, ids(tree.preOrderIterator()));
+            List<Integer> level = levelOrder(tree.root());
+            assertEquals(level, ids(tree.levelOrderIterator()));
+            assertEquals(level, tree.getIterators());
+            assertEquals(level, tree.toArrayList().stream().map(AvlNode::id).collect(Collectors.toList()));
+            assertEquals(level, tree.toLinkedList().stream().map(AvlNode::id).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void exhaustedIterators(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.add(1);
+        for(Iterator<AvlNode<Integer>> it : Arrays.asList(tree.inOrderIterator(), tree.preOrderIterator(), tree.levelOrderIterator())){
+            assertTrue(it.hasNext());
+            it.next();
+            assertFalse(it.hasNext());
+            try{
+                it.next();
+                fail();
+            }catch (NoSuchElementException e){
+                //Expected
+            }
+        }
+    }
+
+    @Test
+    public void walksDontHashNodes(){
+        //Iterators, lists and toString() never call equals() or hashCode()
+        AvlTree<Counted> tree = new AvlTree<>(false);
+        for(int i = 0; i < 5_000; i++){
+            tree.add(new Counted(i * 7));
+        }
+        Counted.hashCodes = 0;
+        int count = 0;
+        for(AvlNode<Counted> ignored : tree){
+            count++;
+        }
+        tree.preOrderIterator().forEachRemaining(node -> {});
+        assertEquals(5_000, tree.toArrayList().size());
+        assertEquals(5_000, tree.toLinkedList().size());
+        assertEquals(5_000, tree.getIterators().size());
+        assertEquals(5_000, tree.stream().count());
+        assertFalse(tree.toString().isEmpty());
+        assertEquals(5_000, count);
+        assertEquals(0, Counted.hashCodes);
+    }
+
+    @Test
+    public void spliteratorMatchesModel(){
+        Random random = new Random(6);
+        for(int n : new int[]{0, 1, 7, 10_000}){
+            TreeSet<Integer> model = new TreeSet<>();
+            AvlTree<Integer> tree = randomTree(random, n, model);
+            Spliterator<AvlNode<Integer>> spliterator = tree.spliterator();
+            assertEquals(model.size(), spliterator.estimateSize());
+            assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+            assertEquals(new ArrayList<>(model), tree.stream().map(AvlNode::id).collect(Collectors.toList()));
+            assertEquals(new ArrayList<>(model), tree.parallelStream().map(AvlNode::id).collect(Collectors.toList()));
+            assertEquals(model.stream().mapToLong(id -> id).sum(), tree.parallelStream().mapToLong(AvlNode::id).sum());
+        }
+    }
+
+    @Test
+    public void splitsCoverEveryNodeOnce(){
+        TreeSet<Integer> model = new TreeSet<>();
+        AvlTree<Integer> tree = randomTree(new Random(9), 3_000, model);
+        List<Spliterator<AvlNode<Integer>>> parts = new ArrayList<>();
+        parts.add(tree.spliterator());
+        //Split every part again until they are small, keeping them in order
+        for(int round = 0; round < 6; round++){
+            List<Spliterator<AvlNode<Integer>>> next = new ArrayList<>();
+            for(Spliterator<AvlNode<Integer>> part : parts){
+                Spliterator<AvlNode<Integer>> prefix = part.trySplit();
+                if(prefix != null){
+                    next.add(prefix);
+                }
+                next.add(part);
+            }
+            parts = next;
+        }
+        assertEquals(64, parts.size());
+        List<Integer> ids = new ArrayList<>();
+        for(Spliterator<AvlNode<Integer>> part : parts){
+            long estimate = part.estimateSize();
+            int before = ids.size();
+            //Half by tryAdvance, the rest by forEachRemaining
+            for(long i = 0; i < estimate / 2; i++){
+                assertTrue(part.tryAdvance(node -> ids.add(node.id())));
+            }
+            part.forEachRemaining(node -> ids.add(node.id()));
+            assertFalse(part.tryAdvance(node -> fail()));
+            assertEquals(estimate, ids.size() - before);
+        }
+        assertEquals(new ArrayList<>(model), ids);
+    }
+}
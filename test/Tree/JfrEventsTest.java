@@ -0,0 +1,60 @@
+package Tree;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class JfrEventsTest {
+
+    /***********************************************************************************************************
+     JFR events of AvlMetrics, read back from a recording. Left out of builds against the JDK 8 API
+     (mvn -P release8), like AvlEvents itself.
+     ***********************************************************************************************************/
+
+    @Test
+    public void slowOperationsAndPersistence() throws Exception{
+        Path directory = Files.createTempDirectory("jfr-test");
+        Path dump = directory.resolve("events.jfr");
+        String savePath = directory.resolve("tree.avl").toString();
+        try(Recording recording = new Recording()){
+            recording.enable("Tree.SlowOperation");
+            recording.enable("Tree.Persistence");
+            recording.start();
+            AvlTree<Integer> tree = new AvlTree<>(false);
+            AvlMetrics metrics = new AvlMetrics(0);
+            tree.metrics(metrics);
+            tree.addAllData(Arrays.asList(1, 2, 3));
+            tree.get(2);
+            assertTrue(tree.save(savePath));
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> slow = new ArrayList<>();
+        List<RecordedEvent> persistence = new ArrayList<>();
+        for(RecordedEvent event : RecordingFile.readAllEvents(dump)){
+            String name = event.getEventType().getName();
+            if(name.equals("Tree.SlowOperation")){
+                slow.add(event);
+            }else if(name.equals("Tree.Persistence")){
+                persistence.add(event);
+            }
+        }
+        assertEquals(4, slow.size());
+        Set<String> operations = new HashSet<>();
+        for(RecordedEvent event : slow){
+            operations.add(event.getString("operation"));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("ADD", "LOOKUP")), operations);
+        assertEquals(1, persistence.size());
+        assertEquals("save", persistence.get(0).getString("operation"));
+        assertEquals(3, persistence.get(0).getInt("nodes"));
+        assertTrue(persistence.get(0).getBoolean("success"));
+    }
+}
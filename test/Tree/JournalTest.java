@@ -0,0 +1,97 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class JournalTest {
+
+    /***********************************************************************************************************
+     AvlJournal recovery after checkpoints taken while other threads keep writing.
+     ***********************************************************************************************************/
+
+    private static List<Integer> ids(AvlTree<Integer> tree){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : tree){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    private static Thread[] startWriters(ConcurrentAvlTree<Integer> tree, int from){
+        //Each writer adds its own IDs and removes some of the older ones
+        Thread[] writers = new Thread[4];
+        for(int w = 0; w < writers.length; w++){
+            int offset = from + w;
+            writers[w] = new Thread(() -> {
+                for(int i = offset; i < from + 20_000; i += writers.length){
+                    tree.add(i);
+                    if(i % 3 == 0){
+                        tree.remove(i - 3 * writers.length);
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        return writers;
+    }
+
+    @Test
+    public void checkpointsDontLoseConcurrentWrites() throws Exception{
+        //Each round compacts once while writers run, then recovers : no later checkpoint covers the writes
+        Path directory = Files.createTempDirectory("journal");
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(int round = 0; round < 10; round++){
+            AvlJournal<Integer> journal = new AvlJournal<>(directory.toString(), AvlCodec.integers(), 0, 0);
+            tree = journal.recover(tree);
+            ConcurrentAvlTree<Integer> concurrent = new ConcurrentAvlTree<>(tree);
+            Thread[] writers = startWriters(concurrent, round * 20_000);
+            while(concurrent.size() < round * 13_000 + 6_000 && Arrays.stream(writers).anyMatch(Thread::isAlive)){
+                Thread.yield();
+            }
+            Future<?> checkpoint = concurrent.compactAsync();
+            for(Thread writer : writers){
+                writer.join();
+            }
+            checkpoint.get();
+            List<Integer> expected = ids(concurrent.snapshot());
+            journal.close();
+
+            tree = new AvlTree<>(false);
+            try(AvlJournal<Integer> reopened = new AvlJournal<>(directory.toString(), AvlCodec.integers(), 0, 0)){
+                assertEquals(expected, ids(reopened.recover(new AvlTree<>(false))));
+            }
+        }
+    }
+
+    @Test
+    public void checkpointThenRecover() throws Exception{
+        Path directory = Files.createTempDirectory("journal");
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        AvlJournal<Integer> journal = new AvlJournal<>(directory.toString(), AvlCodec.integers(), 0, 0);
+        tree.journal(journal);
+        ConcurrentAvlTree<Integer> concurrent = new ConcurrentAvlTree<>(tree);
+        for(int i = 0; i < 1_000; i++){
+            concurrent.add(i);
+        }
+        concurrent.checkpoint();
+        concurrent.remove(5);
+        concurrent.add(-1);
+        List<Integer> expected = ids(concurrent.snapshot());
+        journal.close();
+        try(AvlJournal<Integer> reopened = new AvlJournal<>(directory.toString(), AvlCodec.integers(), 0, 0)){
+            assertEquals(expected, ids(reopened.recover(new AvlTree<>(false))));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void checkpointNeedsJournal() throws IOException{
+        new ConcurrentAvlTree<Integer>().checkpoint();
+    }
+}
@@ -0,0 +1,108 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class KeyedAvlTreeTest {
+
+    /***********************************************************************************************************
+     KeyedAvlTree against a TreeMap keyed the same way, including keys whose int hashcodes collide.
+     ***********************************************************************************************************/
+
+    private static final class Record {
+
+        final long id;
+        final String name;
+
+        Record(long id, String name){
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public int hashCode(){
+            //Every record collides, only the long key tells them apart
+            return 0;
+        }
+    }
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(21);
+        KeyedAvlTree<Long, Record> tree = KeyedAvlTree.longKeyed(record -> record.id);
+        TreeMap<Long, Record> model = new TreeMap<>();
+        for(int i = 0; i < 20_000; i++){
+            //Keys 2^32 apart have the same Long.hashCode()
+            long key = ((long) random.nextInt(64) << 32) | random.nextInt(64);
+            Record record = new Record(key, "r" + i);
+            switch(random.nextInt(3)){
+                case 0:
+                    assertEquals(!model.containsKey(key), tree.add(record));
+                    model.putIfAbsent(key, record);
+                    break;
+                case 1:
+                    assertSame(model.put(key, record), tree.put(record));
+                    break;
+                default:
+                    assertSame(model.remove(key), tree.remove(key));
+            }
+            assertEquals(model.size(), tree.size());
+        }
+        assertEquals(new ArrayList<>(model.values()), tree.toArrayList());
+        for(Map.Entry<Long, Record> entry : model.entrySet()){
+            assertSame(entry.getValue(), tree.get(entry.getKey()));
+            assertTrue(tree.contains(entry.getValue()));
+        }
+        long key = model.firstKey() + 1;
+        assertSame(model.ceilingEntry(key).getValue(), tree.ceiling(key));
+        assertSame(model.floorEntry(key).getValue(), tree.floor(key));
+        assertSame(model.firstEntry().getValue(), tree.first());
+        assertSame(model.lastEntry().getValue(), tree.last());
+    }
+
+    @Test
+    public void addKeepsTheFirstData(){
+        KeyedAvlTree<String, String> tree = new KeyedAvlTree<>(data -> data.substring(0, 1));
+        assertTrue(tree.add("apple"));
+        assertFalse(tree.add("avocado"));
+        assertEquals("apple", tree.get("a"));
+        assertEquals("apple", tree.put("apricot"));
+        assertEquals("apricot", tree.get("a"));
+        assertFalse(tree.removeData("apple"));
+        assertTrue(tree.removeData("apricot"));
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void addDescendsOnce(){
+        int[] comparisons = new int[1];
+        KeyedAvlTree<Integer, Integer> tree = new KeyedAvlTree<>(data -> data, (a, b) -> {
+            comparisons[0]++;
+            return Integer.compare(a, b);
+        });
+        Random random = new Random(3);
+        for(int i = 0; i < 10_000; i++){
+            int height = tree.height();
+            comparisons[0] = 0;
+            tree.add(random.nextInt(5_000));
+            //A new key compares once per level, an existing one stops on its level. The first one is type checked.
+            assertTrue(comparisons[0] <= Math.max(height, 1));
+        }
+    }
+
+    @Test
+    public void putIfAbsentKeepsTheMappedValue(){
+        AvlMap<String, Integer> map = new AvlMap<>();
+        assertNull(map.putIfAbsent("a", 1));
+        assertEquals(Integer.valueOf(1), map.putIfAbsent("a", 2));
+        assertEquals(Integer.valueOf(1), map.get("a"));
+        //Like TreeMap, a key mapped to null counts as absent
+        map.put("b", null);
+        assertNull(map.putIfAbsent("b", 3));
+        assertEquals(Integer.valueOf(3), map.get("b"));
+        assertEquals(2, map.size());
+    }
+}
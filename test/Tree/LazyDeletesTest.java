@@ -0,0 +1,157 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LazyDeletesTest {
+
+    /***********************************************************************************************************
+     Lazy deletes checked against a TreeSet : tombstones must never show through lookups, order statistics,
+     iterators, size or digest, and compaction must keep the tombstone ratio under its bound.
+     ***********************************************************************************************************/
+
+    private static List<Integer> ids(Iterable<AvlNode<Integer>> nodes){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : nodes){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    private static void assertMatches(TreeSet<Integer> model, AvlTree<Integer> tree){
+        assertEquals(model.size(), tree.size());
+        assertEquals(model.isEmpty(), tree.isEmpty());
+        assertEquals(new ArrayList<>(model), ids(tree));
+        Invariants.check(tree);
+    }
+
+    private static void run(double ratio, AvlTree.BalancePolicy policy, long seed){
+        Random random = new Random(seed);
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.balancePolicy(policy);
+        tree.lazyDeletes(ratio);
+        TreeSet<Integer> model = new TreeSet<>();
+        for(int i = 0; i < 5_000; i++){
+            int id = random.nextInt(800);
+            int operation = random.nextInt(10);
+            if(operation < 4){
+                tree.add(id);
+                model.add(id);
+            }else if(operation < 8){
+                tree.remove(id);
+                model.remove(id);
+            }else{
+                assertEquals(model.contains(id), tree.contains(id));
+                AvlNode<Integer> node = tree.get(id);
+                assertEquals(model.contains(id), node != null && node.id() == id);
+                assertEquals(model.headSet(id).size(), tree.rank(id));
+                assertEquals(model.subSet(id, true, id + 50, true).size(), tree.countBetween(id, id + 50));
+                if(!model.isEmpty()){
+                    int k = random.nextInt(model.size());
+                    assertEquals((int) new ArrayList<>(model).get(k), tree.select(k).id());
+                }
+            }
+            if(ratio < 1){
+                //Compaction runs as soon as tombstones go over ratio of the linked nodes
+                assertTrue(tree.tombstones() <= ratio * (tree.size() + tree.tombstones()) + 1);
+            }
+            if(i % 500 == 0){
+                assertMatches(model, tree);
+            }
+        }
+        assertMatches(model, tree);
+
+        //Same content, so same digest and equality as a tree that never had a tombstone
+        AvlTree<Integer> eager = new AvlTree<>(false);
+        eager.addAllData(model);
+        assertEquals(eager.digest(), tree.digest());
+        assertEquals(eager, tree);
+        assertTrue(tree.diff(eager).isEmpty());
+
+        tree.compact();
+        assertEquals(0, tree.tombstones());
+        assertMatches(model, tree);
+        Invariants.checkStrict(tree.root());
+    }
+
+    @Test
+    public void modelWithCompaction(){
+        run(0.3, AvlTree.BalancePolicy.STRICT, 1);
+    }
+
+    @Test
+    public void modelWithoutCompaction(){
+        run(1, AvlTree.BalancePolicy.STRICT, 2);
+    }
+
+    @Test
+    public void modelWithEachPolicy(){
+        run(0.5, AvlTree.BalancePolicy.WEAK, 3);
+        run(0.5, AvlTree.BalancePolicy.RELAXED, 4);
+    }
+
+    @Test
+    public void readdingTombstonedIds(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.lazyDeletes(1);
+        for(int i = 0; i < 100; i++){
+            tree.add(i);
+        }
+        for(int i = 0; i < 100; i += 2){
+            tree.remove(i);
+        }
+        assertEquals(50, tree.tombstones());
+        for(int i = 0; i < 100; i += 4){
+            tree.add(i);
+        }
+        assertEquals(75, tree.size());
+        assertTrue(tree.contains(0));
+        assertFalse(tree.contains(2));
+        Invariants.check(tree);
+    }
+
+    @Test
+    public void turningOffCompacts(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.lazyDeletes(1);
+        for(int i = 0; i < 1_000; i++){
+            tree.add(i);
+        }
+        for(int i = 0; i < 900; i++){
+            tree.remove(i);
+        }
+        assertEquals(900, tree.tombstones());
+        tree.lazyDeletes(0);
+        assertEquals(0, tree.tombstones());
+        assertEquals(100, tree.size());
+        assertTrue(tree.height() <= Invariants.log2Ceil(100));
+        //Eager deletes from now on
+        tree.remove(950);
+        assertEquals(0, tree.tombstones());
+        assertEquals(99, tree.size());
+    }
+
+    @Test
+    public void duplicateCopies(){
+        AvlTree<Integer> tree = new AvlTree<>(true);
+        tree.lazyDeletes(1);
+        tree.add(new AvlNode<>(1, 5));
+        tree.add(new AvlNode<>(2, 5));
+        tree.add(new AvlNode<>(3, 5));
+        tree.remove(5);
+        //The first live copy is the next one in insertion order
+        assertEquals(Integer.valueOf(2), tree.get(5).data());
+        assertEquals(2, tree.size());
+        tree.compact();
+        assertEquals(Integer.valueOf(2), tree.get(5).data());
+        Invariants.check(tree);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ratioOutOfRange(){
+        new AvlTree<Integer>().lazyDeletes(1.5);
+    }
+}
@@ -0,0 +1,129 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MappedAvlTreeTest {
+
+    /***********************************************************************************************************
+     MappedAvlTree lookups checked against the tree that was saved, and a sparse file larger than 2 GB whose
+     values straddle the 1 GB mapping windows.
+     ***********************************************************************************************************/
+
+    @Test
+    public void matchesSavedTree() throws IOException{
+        Random random = new Random(5);
+        AvlTree<String> tree = new AvlTree<>(true);
+        for(int i = 0; i < 3_000; i++){
+            tree.add(new AvlNode<>("v" + i, random.nextInt(500)));
+        }
+        //"Aa" and "BB" share their hashcode, so they are copies of the same ID
+        tree.add("Aa");
+        tree.add("BB");
+        tree.add(new AvlNode<>(null, 1_000));
+        Path path = Files.createTempFile("mapped", ".avl");
+        try{
+            assertTrue(tree.save(path.toString()));
+            MappedAvlTree<String> mapped = new MappedAvlTree<>(path.toString(), AvlCodec.standard());
+            assertEquals(tree.size(), mapped.size());
+
+            Iterator<AvlNode<String>> expected = tree.iterator();
+            for(AvlNode<String> node : mapped){
+                AvlNode<String> saved = expected.next();
+                assertEquals(saved.id(), node.id());
+                assertEquals(saved.seq(), node.seq());
+                assertEquals(saved.data(), node.data());
+                assertNull(node.left());
+            }
+            assertFalse(expected.hasNext());
+
+            for(int id = -1; id <= 1_001; id++){
+                AvlNode<String> first = tree.get(id);
+                AvlNode<String> node = mapped.get(id);
+                assertEquals(first == null, node == null);
+                assertEquals(first != null, mapped.contains(id));
+                if(first != null){
+                    assertEquals(first.data(), node.data());
+                    assertEquals(first.ownDigest(), node.digest());
+                }
+                assertEquals(tree.rank(id), mapped.rank(id));
+            }
+            for(int k = 0; k < tree.size(); k += 97){
+                assertEquals(tree.select(k).data(), mapped.select(k).data());
+            }
+            assertEquals("BB", mapped.get("BB").data());
+            assertEquals(1, mapped.get("BB").seq());
+            assertTrue(mapped.containsData("Aa"));
+            assertFalse(mapped.containsData("v-1"));
+            assertNull(mapped.get(1_000).data());
+        }finally{
+            Files.delete(path);
+        }
+    }
+
+    private static void write(FileChannel channel, long position, ByteBuffer bytes) throws IOException{
+        bytes.flip();
+        while(bytes.hasRemaining()){
+            position += channel.write(bytes, position);
+        }
+    }
+
+    private static ByteBuffer record(String data) throws IOException{
+        //Payload length, then the payload of AvlCodec.strings()
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new DataOutputStream(payload).writeUTF(data);
+        ByteBuffer record = ByteBuffer.allocate(4 + payload.size());
+        record.putInt(payload.size());
+        record.put(payload.toByteArray());
+        return record;
+    }
+
+    @Test
+    public void filesLargerThan2GB() throws IOException{
+        //Sparse file : records are placed by hand across the window boundaries, the offset table is written last
+        long window = 1L << 30;
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+        long[] offsets = {window - 2, 2 * window + 64, 3 * window - 100};
+        String[] data = {"straddles its length", "beyond 2 GB", large};
+        long offsetsPosition = 2 * window - 5;
+
+        Path path = Files.createTempFile("mapped-large", ".avl");
+        try{
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)){
+                ByteBuffer header = ByteBuffer.allocate(AvlFileFormat.HEADER_SIZE + 12);
+                header.putInt(AvlFileFormat.MAGIC).putInt(AvlFileFormat.VERSION).putInt(3).putLong(offsetsPosition);
+                header.putInt(10).putInt(20).putInt(30);
+                write(channel, 0, header);
+                for(int i = 0; i < 3; i++){
+                    write(channel, offsets[i], record(data[i]));
+                }
+                ByteBuffer table = ByteBuffer.allocate(24);
+                for(long offset : offsets){
+                    table.putLong(offset);
+                }
+                write(channel, offsetsPosition, table);
+            }
+            assertTrue(Files.size(path) > 3 * window);
+
+            MappedAvlTree<String> mapped = new MappedAvlTree<>(path.toString(), AvlCodec.strings());
+            assertEquals(3, mapped.size());
+            assertEquals(data[0], mapped.get(10).data());
+            assertEquals(data[1], mapped.get(20).data());
+            assertEquals(data[2], mapped.get(30).data());
+            assertNull(mapped.get(40));
+        }finally{
+            Files.delete(path);
+        }
+    }
+}
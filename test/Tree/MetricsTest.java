@@ -0,0 +1,179 @@
+package Tree;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    /***********************************************************************************************************
+     AvlMetrics counters : operations and their path lengths, each rotation case, duplicates, rebuilds,
+     slow operations and the JMX export. JFR events are checked apart, in JfrEventsTest.
+     ***********************************************************************************************************/
+
+    private static AvlMetrics rotations(boolean duplicates, int... ids){
+        AvlTree<Integer> tree = new AvlTree<>(duplicates);
+        AvlMetrics metrics = new AvlMetrics();
+        tree.metrics(metrics);
+        for(int id : ids){
+            tree.add(id);
+        }
+        return metrics;
+    }
+
+    @Test
+    public void insertRotationCases(){
+        assertEquals(1, rotations(false, 3, 2, 1).insertRotations(AvlMetrics.Rotation.LL));
+        assertEquals(1, rotations(false, 3, 1, 2).insertRotations(AvlMetrics.Rotation.LR));
+        assertEquals(1, rotations(false, 1, 2, 3).insertRotations(AvlMetrics.Rotation.RR));
+        assertEquals(1, rotations(false, 1, 3, 2).insertRotations(AvlMetrics.Rotation.RL));
+        AvlMetrics balanced = rotations(false, 2, 1, 3);
+        for(AvlMetrics.Rotation rotation : AvlMetrics.Rotation.values()){
+            assertEquals(0, balanced.insertRotations(rotation));
+        }
+    }
+
+    @Test
+    public void deleteRotationCases(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.addAllData(Arrays.asList(2, 1, 3, 4));
+        AvlMetrics metrics = new AvlMetrics();
+        tree.metrics(metrics);
+        tree.remove(1);
+        assertEquals(1, metrics.deleteRotations(AvlMetrics.Rotation.RR));
+
+        tree = new AvlTree<>(false);
+        tree.addAllData(Arrays.asList(3, 1, 4, 2));
+        metrics = new AvlMetrics();
+        tree.metrics(metrics);
+        tree.remove(4);
+        assertEquals(1, metrics.deleteRotations(AvlMetrics.Rotation.LR));
+        assertEquals(0, metrics.insertRotations(AvlMetrics.Rotation.LR));
+    }
+
+    @Test
+    public void operationsAndPathLengths(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        AvlMetrics metrics = new AvlMetrics(Long.MAX_VALUE);
+        tree.metrics(metrics);
+        Random random = new Random(3);
+        int adds = 0;
+        int removes = 0;
+        int lookups = 0;
+        for(int i = 0; i < 5_000; i++){
+            int id = random.nextInt(1_000);
+            switch(random.nextInt(3)){
+                case 0:
+                    tree.add(id);
+                    adds++;
+                    break;
+                case 1:
+                    //Only removes of a present ID reach the tree. contains() is a lookup too.
+                    if(tree.contains(id)){
+                        removes++;
+                    }
+                    lookups++;
+                    tree.remove(id);
+                    break;
+                default:
+                    tree.get(id);
+                    lookups++;
+            }
+        }
+        assertEquals(adds, metrics.getAdds());
+        assertEquals(removes, metrics.getRemoves());
+        assertEquals(lookups, metrics.getLookups());
+        long[] histogram = metrics.getPathLengthHistogram();
+        long operations = 0;
+        long comparisons = 0;
+        for(int length = 0; length < histogram.length; length++){
+            operations += histogram[length];
+            comparisons += length * histogram[length];
+        }
+        assertEquals(adds + removes + lookups, operations);
+        assertEquals(comparisons, metrics.getComparisons());
+        assertEquals((double) comparisons / operations, metrics.getMeanPathLength(), 1e-9);
+        //A strict AVL tree of 1000 nodes is at most 14 levels deep
+        for(int length = 15; length < histogram.length; length++){
+            assertEquals("length " + length, 0, histogram[length]);
+        }
+        assertEquals(0, metrics.getSlowOperations());
+        assertEquals(adds - removes - tree.size(), metrics.getRejectedDuplicates());
+    }
+
+    @Test
+    public void duplicates(){
+        AvlMetrics allowed = rotations(true, 5, 5, 5, 6);
+        assertEquals(2, allowed.getDuplicates());
+        assertEquals(0, allowed.getRejectedDuplicates());
+        AvlMetrics rejected = rotations(false, 5, 5, 5, 6);
+        assertEquals(0, rejected.getDuplicates());
+        assertEquals(2, rejected.getRejectedDuplicates());
+        assertEquals(4, rejected.getAdds());
+    }
+
+    @Test
+    public void rebuilds(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.balancePolicy(AvlTree.BalancePolicy.RELAXED);
+        AvlMetrics metrics = new AvlMetrics();
+        tree.metrics(metrics);
+        for(int id = 0; id < 1_000; id++){
+            tree.add(id);
+        }
+        //Sorted adds keep growing the rightmost path, which gets rebuilt over and over
+        assertTrue(metrics.getRebuilds() > 0);
+        assertTrue(metrics.getRebuiltNodes() >= 2 * metrics.getRebuilds());
+        long before = metrics.getRebuilds();
+        tree.rebalance();
+        assertEquals(before + 1, metrics.getRebuilds());
+    }
+
+    @Test
+    public void slowOperationsAndReset(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        AvlMetrics metrics = new AvlMetrics(0);
+        tree.metrics(metrics);
+        tree.addAllData(Arrays.asList(1, 2, 3));
+        tree.get(2);
+        assertEquals(4, metrics.getSlowOperations());
+        metrics.setSlowThresholdNanos(Long.MAX_VALUE);
+        tree.get(2);
+        assertEquals(4, metrics.getSlowOperations());
+        assertEquals(Long.MAX_VALUE, metrics.getSlowThresholdNanos());
+
+        metrics.reset();
+        assertEquals(0, metrics.getAdds() + metrics.getLookups() + metrics.getComparisons() + metrics.getSlowOperations());
+        assertEquals(0, Arrays.stream(metrics.getPathLengthHistogram()).sum());
+        assertEquals(0, metrics.getInsertRotationsRR());
+
+        //Without metrics, nothing is counted
+        tree.metrics(null);
+        tree.add(4);
+        assertEquals(0, metrics.getAdds());
+    }
+
+    @Test
+    public void jmxExport() throws Exception{
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        AvlMetrics metrics = new AvlMetrics();
+        tree.metrics(metrics);
+        tree.addAllData(Arrays.asList(1, 2, 3));
+        ObjectName name = metrics.register("metrics-test");
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(3L, server.getAttribute(name, "Adds"));
+            assertEquals(1L, server.getAttribute(name, "InsertRotationsRR"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0, metrics.getAdds());
+        }finally{
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
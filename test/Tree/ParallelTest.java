@@ -0,0 +1,104 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ParallelTest {
+
+    /***********************************************************************************************************
+     Parallel streams, parallelForEach() and reduce() checked against sequential walks of a TreeSet, on trees
+     large enough to be split across several fork-join tasks, with and without tombstones.
+     ***********************************************************************************************************/
+
+    private static AvlTree<Integer> randomTree(TreeSet<Integer> model, int count, boolean lazy, long seed){
+        Random random = new Random(seed);
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        if(lazy){
+            tree.lazyDeletes(1);
+        }
+        for(int i = 0; i < count; i++){
+            int id = random.nextInt(4 * count);
+            tree.add(id);
+            model.add(id);
+        }
+        for(int i = 0; i < count / 3; i++){
+            int id = random.nextInt(4 * count);
+            tree.remove(id);
+            model.remove(id);
+        }
+        return tree;
+    }
+
+    private static void checkAll(AvlTree<Integer> tree, TreeSet<Integer> model){
+        List<Integer> expected = new ArrayList<>(model);
+        long sum = 0;
+        for(int id : model){
+            sum += id;
+        }
+
+        //Ordered stream : results keep the in-order sequence even when processed in parallel
+        assertEquals(expected, tree.parallelStream().map(AvlNode::id).collect(Collectors.toList()));
+        assertEquals(expected, tree.stream().map(AvlNode::id).collect(Collectors.toList()));
+        assertEquals(model.size(), tree.parallelStream().count());
+        assertEquals(sum, tree.parallelStream().mapToLong(AvlNode::id).sum());
+
+        Map<Integer, Integer> seen = new ConcurrentHashMap<>();
+        tree.parallelForEach(node -> seen.merge(node.id(), 1, Integer::sum));
+        assertEquals(model, new TreeSet<>(seen.keySet()));
+        assertTrue(seen.values().stream().allMatch(times -> times == 1));
+
+        assertEquals(sum, (long) tree.reduce(0L, (acc, node) -> acc + node.id(), Long::sum));
+        //Order-sensitive : reduce() combines results in-order
+        List<Integer> ordered = tree.reduce(Collections.<Integer>emptyList(), (acc, node) -> {
+            List<Integer> list = new ArrayList<>(acc);
+            list.add(node.id());
+            return list;
+        }, (a, b) -> {
+            List<Integer> list = new ArrayList<>(a);
+            list.addAll(b);
+            return list;
+        });
+        assertEquals(expected, ordered);
+    }
+
+    @Test
+    public void emptyAndSmallTrees(){
+        for(int count : new int[]{0, 1, 2, 100}){
+            TreeSet<Integer> model = new TreeSet<>();
+            checkAll(randomTree(model, count, false, count), model);
+        }
+        assertEquals("x", new AvlTree<Integer>().reduce("x", (acc, node) -> acc + node.id(), String::concat));
+    }
+
+    @Test
+    public void largeTrees(){
+        TreeSet<Integer> model = new TreeSet<>();
+        checkAll(randomTree(model, 60_000, false, 1), model);
+    }
+
+    @Test
+    public void largeTreesWithTombstones(){
+        TreeSet<Integer> model = new TreeSet<>();
+        AvlTree<Integer> tree = randomTree(model, 60_000, true, 2);
+        assertTrue(tree.tombstones() > 0);
+        checkAll(tree, model);
+    }
+
+    @Test
+    public void snapshotsStayStable(){
+        //A snapshot is read-only : scanning it in parallel is safe while the live tree changes
+        TreeSet<Integer> model = new TreeSet<>();
+        AvlTree<Integer> tree = randomTree(model, 20_000, false, 3);
+        AvlTree<Integer> snapshot = tree.snapshot();
+        for(int i = 0; i < 1_000; i++){
+            tree.add(-i - 1);
+            tree.remove(model.first() + i);
+        }
+        checkAll(snapshot, model);
+    }
+}
@@ -0,0 +1,135 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RankTest {
+
+    /***********************************************************************************************************
+     Order statistics (rank, select, countBetween, size) against a sorted list of IDs, duplicates included,
+     with and without lazy deletes, and sizes after root() and load().
+     ***********************************************************************************************************/
+
+    private static int lowerBound(List<Integer> sorted, long id){
+        //Number of elements strictly lower than id
+        int low = 0;
+        int high = sorted.size();
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(sorted.get(mid) < id){
+                low = mid + 1;
+            }else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void checkAgainst(AvlTree<Integer> tree, List<Integer> sorted, Random random){
+        assertEquals(sorted.size(), tree.size());
+        for(int k = 0; k < sorted.size(); k++){
+            assertEquals((int) sorted.get(k), tree.select(k).id());
+        }
+        for(int i = 0; i < 500; i++){
+            int id = random.nextInt(1_200) - 100;
+            assertEquals(lowerBound(sorted, id), tree.rank(id));
+            int high = id + random.nextInt(300) - 50;
+            int expected = high < id ? 0 : lowerBound(sorted, (long) high + 1) - lowerBound(sorted, id);
+            assertEquals(expected, tree.countBetween(id, high));
+        }
+        assertEquals(sorted.size(), tree.countBetween(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(sorted.size(), tree.rank(Integer.MAX_VALUE) + tree.countBetween(Integer.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+    private static void runModel(double lazyDeletes, long seed){
+        Random random = new Random(seed);
+        AvlTree<Integer> tree = new AvlTree<>(true);
+        tree.lazyDeletes(lazyDeletes);
+        List<Integer> sorted = new ArrayList<>();
+        for(int i = 0; i < 8_000; i++){
+            int id = random.nextInt(1_000);
+            if(random.nextInt(3) > 0){
+                tree.add(id);
+                sorted.add(lowerBound(sorted, (long) id + 1), id);
+            }else{
+                tree.remove(id);
+                int index = lowerBound(sorted, id);
+                if(index < sorted.size() && sorted.get(index) == id){
+                    sorted.remove(index);
+                }
+            }
+            if(i % 2_000 == 0){
+                checkAgainst(tree, sorted, random);
+                Invariants.check(tree);
+            }
+        }
+        checkAgainst(tree, sorted, random);
+        Invariants.check(tree);
+    }
+
+    @Test
+    public void matchesModel(){
+        runModel(0, 41);
+    }
+
+    @Test
+    public void matchesModelWithTombstones(){
+        //Tombstones are still linked but never counted
+        runModel(0.5, 43);
+    }
+
+    @Test
+    public void selectOutOfRange(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(int k : new int[]{-1, 0}){
+            try{
+                tree.select(k);
+                fail();
+            }catch (IndexOutOfBoundsException e){
+                //Expected
+            }
+        }
+        tree.add(3);
+        assertEquals(3, tree.select(0).id());
+        try{
+            tree.select(1);
+            fail();
+        }catch (IndexOutOfBoundsException e){
+            //Expected
+        }
+        assertEquals(0, tree.countBetween(5, 4));
+    }
+
+    @Test
+    public void sizeFollowsRootAndLoad() throws IOException{
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(int id = 0; id < 1_000; id++){
+            tree.add(id);
+        }
+        AvlTree<Integer> subtree = new AvlTree<>(false);
+        subtree.root(tree.root().left());
+        assertEquals(tree.root().left().size(), subtree.size());
+        assertEquals(tree.rank(tree.root().id()), subtree.size());
+        assertEquals(0, subtree.select(0).id());
+
+        Path path = Files.createTempFile("rank", ".avl");
+        try{
+            assertTrue(tree.save(path.toString()));
+            AvlTree<Integer> loaded = new AvlTree<>(false);
+            loaded.add(-5);
+            assertTrue(loaded.load(path.toString()));
+            assertEquals(1_000, loaded.size());
+            assertEquals(500, loaded.select(500).id());
+            assertEquals(250, loaded.rank(250));
+            assertEquals(1_000, loaded.countBetween(0, 999));
+        }finally{
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RecyclingTest {
+
+    /***********************************************************************************************************
+     Node recycling : removed nodes are reused by later adds, checked against a TreeSet, but never while a
+     snapshot or another thread may still hold them.
+     ***********************************************************************************************************/
+
+    private static List<Integer> ids(Iterable<AvlNode<Integer>> nodes){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : nodes){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void removedNodesAreReused(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.recycleNodes(4);
+        tree.addAllData(Arrays.asList(1, 2, 3, 4, 5, 6));
+        Set<AvlNode<Integer>> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(int id = 1; id <= 5; id++){
+            removed.add(tree.get(id));
+            tree.remove(id);
+        }
+        //Capacity 4 : the fifth removed node is left to the garbage collector
+        assertEquals(4, tree.pooledNodes());
+        tree.add(10);
+        assertEquals(3, tree.pooledNodes());
+        AvlNode<Integer> reused = tree.get(10);
+        assertTrue(removed.contains(reused));
+        assertEquals(Integer.valueOf(10), reused.data());
+        assertEquals(0, reused.seq());
+        assertFalse(reused.deleted());
+        //A rejected duplicate goes back to the pool
+        tree.add(10);
+        assertEquals(3, tree.pooledNodes());
+        Invariants.check(tree);
+        assertEquals(Arrays.asList(6, 10), ids(tree));
+
+        tree.recycleNodes(0);
+        assertEquals(0, tree.pooledNodes());
+    }
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(12);
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.recycleNodes(32);
+        TreeSet<Integer> model = new TreeSet<>();
+        for(int i = 0; i < 20_000; i++){
+            int id = random.nextInt(500);
+            if(random.nextBoolean()){
+                tree.add(id);
+                model.add(id);
+            }else{
+                tree.remove(id);
+                model.remove(id);
+            }
+            if(i % 1_000 == 0){
+                Invariants.check(tree);
+                Invariants.checkStrict(tree.root());
+            }
+        }
+        assertEquals(new ArrayList<>(model), ids(tree));
+        for(AvlNode<Integer> node : tree){
+            assertEquals(node.id(), (int) node.data());
+        }
+    }
+
+    @Test
+    public void snapshotNodesAreNotReused(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.recycleNodes(64);
+        for(int id = 0; id < 50; id++){
+            tree.add(id);
+        }
+        AvlTree<Integer> snapshot = tree.snapshot();
+        List<Integer> content = ids(snapshot);
+        for(int id = 0; id < 50; id += 2){
+            tree.remove(id);
+        }
+        assertEquals(0, tree.pooledNodes());
+        for(int id = 100; id < 150; id++){
+            tree.add(id);
+        }
+        assertEquals(content, ids(snapshot));
+        for(AvlNode<Integer> node : snapshot){
+            assertEquals(node.id(), (int) node.data());
+        }
+        Invariants.check(snapshot);
+
+        //Nodes added after the snapshot belong to the tree alone, and can be recycled
+        tree.remove(100);
+        assertEquals(1, tree.pooledNodes());
+    }
+
+    @Test
+    public void wrappedTreesDontRecycle(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.recycleNodes(64);
+        ConcurrentAvlTree<Integer> concurrent = new ConcurrentAvlTree<>(tree);
+        for(int id = 0; id < 20; id++){
+            concurrent.add(id);
+        }
+        //A reader still holding a removed node keeps seeing it unchanged
+        AvlNode<Integer> held = concurrent.get(7);
+        concurrent.remove(7);
+        concurrent.add(30);
+        assertEquals(0, tree.pooledNodes());
+        assertEquals(7, held.id());
+        assertEquals(Integer.valueOf(7), held.data());
+        try{
+            tree.recycleNodes(64);
+            fail();
+        }catch (IllegalStateException e){
+            //Expected
+        }
+        tree.recycleNodes(0);
+
+        List<AvlTree<Integer>> shards = new ArrayList<>();
+        ShardedAvlTree<Integer> sharded = new ShardedAvlTree<>(4, () -> {
+            AvlTree<Integer> shard = new AvlTree<>(false);
+            shard.recycleNodes(64);
+            shards.add(shard);
+            return shard;
+        });
+        for(int id = 0; id < 100; id++){
+            sharded.add(id);
+        }
+        for(int id = 0; id < 100; id += 3){
+            sharded.remove(id);
+        }
+        for(AvlTree<Integer> shard : shards){
+            assertEquals(0, shard.pooledNodes());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SerializationTest {
+
+    /***********************************************************************************************************
+     Java serialization round trips of AvlMap and AvlSet, checked against TreeMap and TreeSet.
+     ***********************************************************************************************************/
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T object) throws IOException, ClassNotFoundException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            out.writeObject(object);
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))){
+            return (T) in.readObject();
+        }
+    }
+
+    @Test
+    public void mapRoundTrip() throws Exception{
+        Random random = new Random(5);
+        for(int n : new int[]{0, 1, 2, 3, 7, 100, 5_000}){
+            AvlMap<Integer, String> map = new AvlMap<>();
+            TreeMap<Integer, String> model = new TreeMap<>();
+            for(int i = 0; i < n; i++){
+                int key = random.nextInt(4 * n + 1) - n;
+                map.put(key, "v" + key);
+                model.put(key, "v" + key);
+            }
+            AvlMap<Integer, String> copy = roundTrip(map);
+            assertEquals(model, copy);
+            assertEquals(new ArrayList<>(model.entrySet()), new ArrayList<>(copy.entrySet()));
+            //The copy is a working map, independent of the original
+            copy.put(Integer.MAX_VALUE, "max");
+            assertEquals(model, map);
+            assertEquals(model.size() + 1, copy.size());
+            assertEquals("max", copy.lastEntry().getValue());
+        }
+    }
+
+    @Test
+    public void mapKeepsComparatorAndNullValues() throws Exception{
+        AvlMap<String, Integer> map = new AvlMap<>(Comparator.reverseOrder());
+        map.put("a", 1);
+        map.put("c", null);
+        map.put("b", 2);
+        AvlMap<String, Integer> copy = roundTrip(map);
+        assertEquals(Arrays.asList("c", "b", "a"), new ArrayList<>(copy.keySet()));
+        assertNull(copy.get("c"));
+        assertTrue(copy.containsKey("c"));
+        copy.put("d", 4);
+        assertEquals("d", copy.firstKey());
+    }
+
+    @Test
+    public void setRoundTrip() throws Exception{
+        AvlSet<Integer> set = new AvlSet<>();
+        TreeSet<Integer> model = new TreeSet<>();
+        Random random = new Random(8);
+        for(int i = 0; i < 2_000; i++){
+            int value = random.nextInt(10_000);
+            set.add(value);
+            model.add(value);
+        }
+        AvlSet<Integer> copy = roundTrip(set);
+        assertEquals(new ArrayList<>(model), new ArrayList<>(copy));
+        assertTrue(copy.add(-1));
+        assertEquals(Integer.valueOf(-1), copy.first());
+    }
+
+    @Test
+    public void viewsReadBackAsPlainSets() throws Exception{
+        AvlMap<Integer, String> map = new AvlMap<>();
+        for(int i = 0; i < 20; i++){
+            map.put(i, "v" + i);
+        }
+        NavigableSet<Integer> keys = roundTrip((AvlSet<Integer>) map.navigableKeySet().subSet(5, true, 9, true).descendingSet());
+        assertEquals(Arrays.asList(9, 8, 7, 6, 5), new ArrayList<>(keys));
+        //No longer a key view : add() works and the original map is untouched
+        assertTrue(keys.add(100));
+        assertEquals(Integer.valueOf(100), keys.first());
+        assertEquals(20, map.size());
+    }
+
+    private static final class CountingComparator implements Comparator<Integer>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        static int calls = 0;
+
+        @Override
+        public int compare(Integer a, Integer b){
+            calls++;
+            return Integer.compare(a, b);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void setReadsBackWithoutComparing() throws Exception{
+        AvlSet<Integer> set = new AvlSet<>(new CountingComparator());
+        for(int i = 0; i < 1_000; i++){
+            set.add(i * 3);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(ObjectOutputStream stream = new ObjectOutputStream(out)){
+            stream.writeObject(set);
+        }
+        byte[] bytes = out.toByteArray();
+        CountingComparator.calls = 0;
+        AvlSet<Integer> copy;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+            copy = (AvlSet<Integer>) in.readObject();
+        }
+        //Built from the sorted stream in linear time, not by 1000 insertions
+        assertEquals(0, CountingComparator.calls);
+        assertEquals(new ArrayList<>(set), new ArrayList<>(copy));
+        assertTrue(copy.contains(2_997));
+        assertFalse(copy.contains(1));
+        assertTrue(copy.add(1));
+        assertEquals(Arrays.asList(0, 1, 3), new ArrayList<>(copy.headSet(3, true)));
+    }
+
+    @Test
+    public void firstPutChecksTheKeyType(){
+        AvlMap<Object, String> map = new AvlMap<>();
+        try{
+            map.put(new Object(), "a");
+            fail();
+        }catch (ClassCastException e){
+            //Expected : Object isn't Comparable, like TreeMap
+        }
+        assertTrue(map.isEmpty());
+        AvlSet<Object> set = new AvlSet<>();
+        try{
+            set.add(new Object());
+            fail();
+        }catch (ClassCastException e){
+            //Expected
+        }
+        assertTrue(set.isEmpty());
+    }
+}
@@ -0,0 +1,144 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SetOperationsTest {
+
+    /***********************************************************************************************************
+     split(), join(), union(), intersection() and difference() checked against TreeSets of the same IDs.
+     Results must be valid AVL trees with exact caches, and the inputs must be left as they were.
+     ***********************************************************************************************************/
+
+    private static AvlTree<Integer> tree(Collection<Integer> ids){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(int id : ids){
+            tree.add(id);
+        }
+        return tree;
+    }
+
+    private static TreeSet<Integer> randomIds(Random random, int count, int range){
+        TreeSet<Integer> ids = new TreeSet<>();
+        for(int i = 0; i < count; i++){
+            ids.add(random.nextInt(range));
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(AvlTree<Integer> tree){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : tree){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    private static void assertTree(Collection<Integer> expected, AvlTree<Integer> tree){
+        assertEquals(new ArrayList<>(expected), ids(tree));
+        assertEquals(expected.size(), tree.size());
+        Invariants.check(tree);
+        Invariants.checkStrict(tree.root());
+    }
+
+    @Test
+    public void operationsMatchModel(){
+        Random random = new Random(21);
+        //Sizes from empty to past the parallel threshold, with lopsided pairs
+        int[][] sizes = {{0, 0}, {0, 10}, {10, 0}, {1, 1}, {50, 3}, {3, 50}, {500, 500}, {20_000, 300}, {15_000, 15_000}};
+        for(int[] size : sizes){
+            TreeSet<Integer> a = randomIds(random, size[0], 3 * Math.max(size[0], size[1]) + 1);
+            TreeSet<Integer> b = randomIds(random, size[1], 3 * Math.max(size[0], size[1]) + 1);
+            AvlTree<Integer> left = tree(a);
+            AvlTree<Integer> right = tree(b);
+
+            TreeSet<Integer> union = new TreeSet<>(a);
+            union.addAll(b);
+            TreeSet<Integer> intersection = new TreeSet<>(a);
+            intersection.retainAll(b);
+            TreeSet<Integer> difference = new TreeSet<>(a);
+            difference.removeAll(b);
+
+            assertTree(union, left.union(right));
+            assertTree(intersection, left.intersection(right));
+            assertTree(difference, left.difference(right));
+            assertTree(a, left);
+            assertTree(b, right);
+        }
+    }
+
+    @Test
+    public void resultsAreIndependent(){
+        //Results share nodes with their inputs : changing one tree must not show in the others
+        AvlTree<Integer> left = tree(Arrays.asList(1, 3, 5, 7, 9));
+        AvlTree<Integer> right = tree(Arrays.asList(2, 3, 4));
+        AvlTree<Integer> union = left.union(right);
+        union.add(100);
+        union.remove(3);
+        left.remove(9);
+        right.add(0);
+        assertTree(Arrays.asList(1, 2, 4, 5, 7, 9, 100), union);
+        assertTree(Arrays.asList(1, 3, 5, 7), left);
+        assertTree(Arrays.asList(0, 2, 3, 4), right);
+    }
+
+    @Test
+    public void tombstonesAreLeftOut(){
+        AvlTree<Integer> left = tree(Arrays.asList(1, 2, 3, 4, 5, 6));
+        left.lazyDeletes(1);
+        left.remove(2);
+        left.remove(5);
+        AvlTree<Integer> right = tree(Arrays.asList(2, 5, 6, 8));
+        right.lazyDeletes(1);
+        right.remove(6);
+        assertTree(Arrays.asList(1, 2, 3, 4, 5, 6, 8), left.union(right));
+        assertTree(Collections.singletonList(6), left.intersection(tree(Arrays.asList(2, 6))));
+        assertTree(Arrays.asList(1, 3, 4, 6), left.difference(right));
+        assertEquals(Arrays.asList(1, 3, 4, 6), ids(left));
+    }
+
+    @Test
+    public void splitJoinMatchModel(){
+        Random random = new Random(22);
+        for(int round = 0; round < 200; round++){
+            TreeSet<Integer> model = randomIds(random, random.nextInt(300), 1_000);
+            AvlTree<Integer> tree = tree(model);
+            int at = random.nextInt(1_100) - 50;
+            AvlTree<Integer> higher = tree.split(at);
+            assertTree(model.headSet(at, false), tree);
+            assertTree(model.tailSet(at, true), higher);
+
+            AvlTree<Integer> joined = AvlTree.join(tree, higher);
+            assertTree(model, joined);
+            //The joined tree keeps working like any other
+            joined.add(-1);
+            joined.remove(model.isEmpty() ? 0 : model.last());
+            Invariants.check(joined);
+            Invariants.checkStrict(joined.root());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void joinRejectsOverlap(){
+        AvlTree.join(tree(Arrays.asList(1, 5)), tree(Arrays.asList(5, 9)));
+    }
+
+    @Test
+    public void unionKeepsCopiesOfThisTree(){
+        //With duplicates, an ID of both trees keeps the copies of the receiver only
+        AvlTree<Integer> left = new AvlTree<>(true);
+        left.add(new AvlNode<>(10, 1));
+        left.add(new AvlNode<>(11, 1));
+        AvlTree<Integer> right = new AvlTree<>(true);
+        right.add(new AvlNode<>(20, 1));
+        right.add(new AvlNode<>(21, 2));
+        List<Integer> data = new ArrayList<>();
+        for(AvlNode<Integer> node : left.union(right)){
+            data.add(node.data());
+        }
+        assertEquals(Arrays.asList(10, 11, 21), data);
+    }
+}
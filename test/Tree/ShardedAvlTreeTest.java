@@ -0,0 +1,223 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class ShardedAvlTreeTest {
+
+    /***********************************************************************************************************
+     ShardedAvlTree checked against a TreeSet : routing by ID, merged in-order iteration, concurrent writers,
+     and save/load round trips. Iterators read the shards in batches, without snapshots.
+     ***********************************************************************************************************/
+
+    private static List<Integer> ids(Iterable<AvlNode<Integer>> nodes){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : nodes){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    @Test
+    public void shardCountIsRoundedUp(){
+        assertEquals(1, new ShardedAvlTree<Integer>(1).shardCount());
+        assertEquals(8, new ShardedAvlTree<Integer>(5).shardCount());
+        assertEquals(16, new ShardedAvlTree<Integer>(16).shardCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroShards(){
+        new ShardedAvlTree<Integer>(0);
+    }
+
+    @Test
+    public void matchesModel(){
+        Random random = new Random(31);
+        for(int shards : new int[]{1, 2, 8}){
+            ShardedAvlTree<Integer> tree = new ShardedAvlTree<>(shards, false);
+            TreeSet<Integer> model = new TreeSet<>();
+            for(int i = 0; i < 5_000; i++){
+                //Negative IDs included : they must hash to a valid shard too
+                int id = random.nextInt(4_000) - 2_000;
+                if(random.nextInt(3) > 0){
+                    tree.add(id);
+                    model.add(id);
+                }else{
+                    tree.remove(id);
+                    model.remove(id);
+                }
+                assertEquals(model.contains(id), tree.contains(id));
+            }
+            assertEquals(model.size(), tree.size());
+            assertEquals(new ArrayList<>(model), ids(tree));
+            assertEquals(model.size(), tree.stream().count());
+            for(int id : model){
+                int shard = tree.shardIndex(id);
+                assertTrue(shard >= 0 && shard < tree.shardCount());
+                assertNotNull(tree.shard(shard).get(id));
+            }
+            int total = 0;
+            for(int i = 0; i < tree.shardCount(); i++){
+                total += tree.size(i);
+            }
+            assertEquals(model.size(), total);
+            tree.clear();
+            assertTrue(tree.isEmpty());
+        }
+    }
+
+    @Test
+    public void batchAddMatchesSingleAdds(){
+        List<Integer> data = new ArrayList<>();
+        for(int i = 0; i < 10_000; i++){
+            data.add(i * 31 % 10_007);
+        }
+        ShardedAvlTree<Integer> batch = new ShardedAvlTree<>(8, false);
+        batch.addAllData(data);
+        ShardedAvlTree<Integer> single = new ShardedAvlTree<>(8, false);
+        for(int value : data){
+            single.add(value);
+        }
+        assertEquals(ids(single), ids(batch));
+        assertEquals(new ArrayList<>(new TreeSet<>(data)), ids(batch));
+    }
+
+    @Test
+    public void concurrentWriters() throws InterruptedException{
+        ShardedAvlTree<Integer> tree = new ShardedAvlTree<>(4, false);
+        Set<Integer> expected = new ConcurrentSkipListSet<>();
+        Thread[] writers = new Thread[4];
+        for(int w = 0; w < writers.length; w++){
+            int offset = w;
+            writers[w] = new Thread(() -> {
+                for(int i = offset; i < 40_000; i += writers.length){
+                    tree.add(i);
+                    if(i % 5 == 0){
+                        tree.remove(i);
+                    }else{
+                        expected.add(i);
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        for(Thread writer : writers){
+            writer.join();
+        }
+        assertEquals(new ArrayList<>(expected), ids(tree));
+        for(AvlTree<Integer> snapshot : tree.snapshot()){
+            Invariants.check(snapshot);
+            Invariants.checkStrict(snapshot.root());
+        }
+    }
+
+    @Test
+    public void saveLoadRoundTrip() throws Exception{
+        Supplier<AvlTree<Integer>> factory = () -> {
+            AvlTree<Integer> shard = new AvlTree<>(false);
+            shard.codec(AvlCodec.integers());
+            return shard;
+        };
+        ShardedAvlTree<Integer> tree = new ShardedAvlTree<>(4, factory);
+        for(int i = 0; i < 3_000; i++){
+            tree.add(i * 7);
+        }
+        String directory = Files.createTempDirectory("sharded").toString();
+        assertTrue(tree.save(directory));
+
+        ShardedAvlTree<Integer> loaded = new ShardedAvlTree<>(4, factory);
+        assertTrue(loaded.load(directory));
+        assertEquals(ids(tree), ids(loaded));
+        assertEquals(Integer.valueOf(21), loaded.get(21).data());
+
+        //A save only loads back with the same shard count : the files of shards 4 to 7 are missing
+        assertFalse(new ShardedAvlTree<>(8, factory).load(directory));
+    }
+
+    @Test
+    public void iterationDoesNotCopyNodes(){
+        //A snapshot would make the next writes copy every node on their path
+        ShardedAvlTree<Integer> tree = new ShardedAvlTree<>(4, false);
+        for(int i = 0; i < 5_000; i++){
+            tree.add(i * 2);
+        }
+        List<AvlNode<Integer>> nodes = new ArrayList<>();
+        tree.forEach(nodes::add);
+        assertEquals(5_000, nodes.size());
+        for(int i = 0; i < 1_000; i++){
+            tree.add(i * 2 + 1);
+        }
+        for(AvlNode<Integer> node : nodes){
+            assertSame(node, tree.get(node.id()));
+        }
+    }
+
+    @Test
+    public void duplicatesAcrossBatches(){
+        //More copies of an ID than a batch holds : each batch resumes after the seq of the last copy returned
+        ShardedAvlTree<Integer> tree = new ShardedAvlTree<>(2, true);
+        List<Integer> expected = new ArrayList<>();
+        for(int id = 0; id < 4; id++){
+            for(int copy = 0; copy < 700; copy++){
+                tree.add(new AvlNode<>(copy, id));
+                expected.add(id);
+            }
+        }
+        assertEquals(expected, ids(tree));
+        int previous = -1;
+        int seq = -1;
+        for(AvlNode<Integer> node : tree){
+            if(node.id() == previous){
+                assertEquals(seq + 1, node.seq());
+            }
+            previous = node.id();
+            seq = node.seq();
+        }
+    }
+
+    @Test
+    public void iterationDuringWrites() throws InterruptedException{
+        //Even IDs stay in the tree the whole time and must all be returned, odd ones come and go
+        ShardedAvlTree<Integer> tree = new ShardedAvlTree<>(4, false);
+        for(int i = 0; i < 20_000; i += 2){
+            tree.add(i);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            Random random = new Random(9);
+            while(!stop.get()){
+                int id = random.nextInt(10_000) * 2 + 1;
+                if(random.nextBoolean()){
+                    tree.add(id);
+                }else{
+                    tree.remove(id);
+                }
+            }
+        });
+        writer.start();
+        try{
+            for(int round = 0; round < 20; round++){
+                int previous = Integer.MIN_VALUE;
+                int even = 0;
+                for(AvlNode<Integer> node : tree){
+                    assertTrue(node.id() > previous);
+                    previous = node.id();
+                    if(node.id() % 2 == 0){
+                        even++;
+                    }
+                }
+                assertEquals(10_000, even);
+            }
+        }finally{
+            stop.set(true);
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package Tree;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    /***********************************************************************************************************
+     Snapshots taken along a random run, each one checked against a copy of the TreeSet model taken at the
+     same time, and the path copying behind them : a write copies O(log n) nodes and shares all the others.
+     ***********************************************************************************************************/
+
+    private static List<Integer> ids(AvlTree<Integer> tree){
+        List<Integer> ids = new ArrayList<>();
+        for(AvlNode<Integer> node : tree){
+            ids.add(node.id());
+        }
+        return ids;
+    }
+
+    private static Set<AvlNode<Integer>> nodes(AvlNode<Integer> root){
+        //Every linked node by identity
+        Set<AvlNode<Integer>> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        Iterator<AvlNode<Integer>> it = new AvlTree<>(root).preOrderIterator();
+        while(it.hasNext()){
+            nodes.add(it.next());
+        }
+        return nodes;
+    }
+
+    @Test
+    public void snapshotsMatchModel(){
+        Random random = new Random(31);
+        AvlTree<Integer> tree = new AvlTree<>(true);
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        List<AvlTree<Integer>> snapshots = new ArrayList<>();
+        List<List<Integer>> expected = new ArrayList<>();
+        for(int i = 0; i < 30_000; i++){
+            int id = random.nextInt(2_000);
+            if(random.nextInt(3) > 0){
+                tree.add(id);
+                model.merge(id, 1, Integer::sum);
+            }else if(model.containsKey(id)){
+                tree.remove(id);
+                model.computeIfPresent(id, (k, count) -> count == 1 ? null : count - 1);
+            }
+            if(i % 3_000 == 0){
+                snapshots.add(tree.snapshot());
+                List<Integer> ids = new ArrayList<>();
+                model.forEach((k, count) -> ids.addAll(Collections.nCopies(count, k)));
+                expected.add(ids);
+            }
+        }
+        for(int s = 0; s < snapshots.size(); s++){
+            AvlTree<Integer> snapshot = snapshots.get(s);
+            assertEquals(expected.get(s), ids(snapshot));
+            assertEquals(expected.get(s).size(), snapshot.size());
+            Invariants.check(snapshot);
+            Invariants.checkStrict(snapshot.root());
+        }
+        Invariants.check(tree);
+        assertEquals(model.values().stream().mapToInt(Integer::intValue).sum(), tree.size());
+    }
+
+    @Test
+    public void writesCopyOnlyTheirPath(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        for(int id = 0; id < 10_000; id++){
+            tree.add(id);
+        }
+        AvlTree<Integer> snapshot = tree.snapshot();
+        Set<AvlNode<Integer>> before = nodes(snapshot.root());
+        tree.add(20_000);
+        tree.remove(5_000);
+        Set<AvlNode<Integer>> after = nodes(tree.root());
+        int copied = 0;
+        for(AvlNode<Integer> node : after){
+            if(!before.contains(node)){
+                copied++;
+            }
+        }
+        //Two paths and their rotations, plus the added node
+        assertTrue("copied " + copied, copied <= 4 * tree.height());
+        assertEquals(10_000, before.size());
+        assertEquals(10_000, ids(snapshot).size());
+        assertFalse(snapshot.contains(20_000));
+        assertTrue(snapshot.contains(5_000));
+        assertEquals(tree.size(), after.size());
+
+        //Nodes added after the snapshot are edited in place again
+        Set<AvlNode<Integer>> copies = nodes(tree.root());
+        tree.add(20_001);
+        int more = 0;
+        for(AvlNode<Integer> node : nodes(tree.root())){
+            if(!copies.contains(node)){
+                more++;
+            }
+        }
+        assertTrue("copied " + more, more <= 2 * tree.height());
+    }
+
+    @Test
+    public void snapshotsAreReadOnly(){
+        AvlTree<Integer> tree = new AvlTree<>(false);
+        tree.add(1);
+        AvlTree<Integer> snapshot = tree.snapshot();
+        assertTrue(snapshot.isReadOnly());
+        assertFalse(tree.isReadOnly());
+        for(Runnable write : Arrays.<Runnable>asList(() -> snapshot.add(2), () -> snapshot.remove(1), snapshot::clear,
+                () -> snapshot.allowDuplicates(true))){
+            try{
+                write.run();
+                fail();
+            }catch (UnsupportedOperationException e){
+                //Expected
+            }
+        }
+        assertEquals(Collections.singletonList(1), ids(snapshot));
+        //A snapshot of a snapshot is the same content
+        assertEquals(ids(snapshot), ids(snapshot.snapshot()));
+    }
+}